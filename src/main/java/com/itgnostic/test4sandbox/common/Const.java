@@ -1,9 +1,17 @@
 package com.itgnostic.test4sandbox.common;
 
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 public class Const {
     public static final String DB_TABLE_NAME = "employee";
+    public static final String DB_CHANGES_TABLE_NAME = "employee_change";
+    public static final String DB_IDEMPOTENCY_TABLE_NAME = "idempotency_key";
     public static final String DB_TABLE_INIT_QUERY_FILE = "dbinit.sql";
-    public static final SimpleDateFormat DT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    // binary API format, JSON stays the default
+    public static final String MEDIA_TYPE_CBOR = "application/cbor";
+    // whole table export, NDJSON is the default
+    public static final String MEDIA_TYPE_CSV = "text/csv";
+    // immutable, shared by request and background threads; dates are formatted as instants: DT.format(date.toInstant())
+    public static final DateTimeFormatter DT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
 }
@@ -1,5 +1,7 @@
 package com.itgnostic.test4sandbox.db;
 
+import com.itgnostic.test4sandbox.db.replica.EmployeeReplica;
+import com.itgnostic.test4sandbox.db.snapshot.EmployeeSnapshotService;
 import com.itgnostic.test4sandbox.service.EmployeeService;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,15 +11,28 @@ import org.springframework.stereotype.Component;
 public class DbInit {
     @Autowired
     private EmployeeService employeeService;
+    @Autowired
+    private EmployeeSnapshotService snapshotService;
+    @Autowired
+    private EmployeeReplica replica;
 
+    // stays before the web server start: EmployeeService session must not be shared with requests yet
     @PostConstruct
     public void init() {
+        snapshotService.restoreOnStartup();
+        // tables created before the PATH or TOTAL_SUBORDINATES column
+        employeeService.rebuildPaths(false);
+        // the total below may come from the replica
+        replica.syncOnStartup();
+
         Long total = employeeService.getTotal();
-        if (total == null || total == 0) {
+        if ((total == null || total == 0) && !snapshotService.generateOnStartup()) {
             employeeService.add("John", "Doe", "Manager", null);
             employeeService.add("Jane", "Smith", "Assistant Manager", 1L);
             employeeService.add("Alice", "Johnson", "Team Leader", 1L);
         }
+
+        replica.syncOnStartup();
     }
 
 }
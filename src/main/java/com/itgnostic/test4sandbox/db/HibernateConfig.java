@@ -0,0 +1,31 @@
+package com.itgnostic.test4sandbox.db;
+
+import com.itgnostic.test4sandbox.utils.HibernateUtils;
+import org.hibernate.SessionFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * The only ORM bootstrap of the app: Spring's DataSource + hibernate.cfg.xml + employee.hibernate.properties.
+ */
+@Configuration
+public class HibernateConfig {
+
+    @Bean(destroyMethod = "close")
+    public SessionFactory sessionFactory(DataSource dataSource, Environment environment) {
+        return HibernateUtils.buildSessionFactory(dataSource, hibernateSettings(environment));
+    }
+
+    // employee.hibernate.properties of the active profiles
+    public static Map<String, String> hibernateSettings(Environment environment) {
+        return Binder.get(environment)
+                .bind("employee.hibernate.properties", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of());
+    }
+}
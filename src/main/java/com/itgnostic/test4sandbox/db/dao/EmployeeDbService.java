@@ -3,26 +3,88 @@ package com.itgnostic.test4sandbox.db.dao;
 import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 
 @Component
-public interface EmployeeDbService {
+public interface EmployeeDbService extends AutoCloseable {
+    // what happens to the subordinates of a deleted employee
+    enum DeleteMode {
+        ORPHAN("orphan"),
+        REPARENT("reparent-to-grandparent"),
+        SUBTREE("delete-subtree");
+
+        private final String param;
+
+        DeleteMode(String param) {
+            this.param = param;
+        }
+
+        public String getParam() {
+            return param;
+        }
+
+        public static DeleteMode byParam(String param) {
+            for (DeleteMode mode : values())
+                if (mode.param.equals(param))
+                    return mode;
+
+            return null;
+        }
+    }
+
     Long add(EmployeeEntity e);
     EmployeeEntity get(long id);
-    List<EmployeeEntity> get(long page, long limit);
-    List<EmployeeEntity> getPossibleSupervisors(Long subId);
-
     List<EmployeeEntity> getList(long[] ids);
     List<EmployeeEntity> getList(Collection<Long> ids);
 
+    // read endpoints: projections with the supervisor's name, in short read-only sessions
+    EmployeeView getView(long id);
+    // keep the order of ids, missing ones are skipped
+    List<EmployeeView> getViews(Collection<Long> ids);
+    List<EmployeeView> get(long page, long limit);
+    List<EmployeeView> getPossibleSupervisors(Long subId);
+    // direct subordinates by their SUPERVISOR, ordered by id
+    List<EmployeeView> getSubordinates(long id);
+    // every employee ordered by id, one row at a time: memory doesn't grow with the table; returns count of employees
+    long scanViews(ViewConsumer consumer);
+
     EmployeeEntity modify(EmployeeEntity e);
 
+    // hierarchy by the materialized path: ids from the root down to the employee, null - not found
+    List<Long> getPath(long id);
+    // DEPTH as stored: count of supervisors above the employee, null - not found or not reachable from a root
+    Integer getDepth(long id);
+    // everyone below the employee, at any depth
+    List<EmployeeView> getDescendants(long id);
+    // PATH, DEPTH and TOTAL_SUBORDINATES of the whole table from SUPERVISOR, not forced - only if
+    // a root has no path or a row no total yet;
+    // returns count of employees reachable from roots
+    Long rebuildPaths(boolean force);
+
     Boolean del(EmployeeEntity e);
     Boolean del(int id);
+    // number of deleted employees, 0 - not found
+    Long del(long id, DeleteMode mode);
+
+    // moves employees (with their subordinates) under supervisor, null - supervisor is in the moved subtrees
+    Long reassign(Collection<Long> ids, Long supervisor);
 
     Long getLastIndex();
     Long getTotal();
 
+    void clear();
+    // the employees were changed past this service (another node): cached entities of them are dropped
+    void evict(Collection<Long> ids);
+    // threads of the service, on shutdown
+    @Override
+    default void close() {
+    }
+
+    interface ViewConsumer {
+        void accept(EmployeeView view) throws IOException;
+    }
+
 }
 
@@ -0,0 +1,25 @@
+package com.itgnostic.test4sandbox.db.dao;
+
+import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+
+import java.util.Date;
+
+/**
+ * Read-only employee row with the supervisor's name, selected by a projection query:
+ * no managed entity, no subordinates array and no second lookup for the supervisor.
+ * Supervisor names are null if there is no supervisor (or it is missing).
+ */
+public record EmployeeView(long id,
+                           String firstName,
+                           String lastName,
+                           String position,
+                           Long supervisor,
+                           String supervisorFirstName,
+                           String supervisorLastName,
+                           Date created) {
+
+    public static EmployeeView of(EmployeeEntity e, String supervisorFirstName, String supervisorLastName) {
+        return new EmployeeView(e.getId(), e.getFirstName(), e.getLastName(), e.getPosition(), e.getSupervisor(),
+                supervisorFirstName, supervisorLastName, e.getCreated());
+    }
+}
@@ -1,32 +1,184 @@
 package com.itgnostic.test4sandbox.db.dao.impl;
 
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.itgnostic.test4sandbox.db.dao.EmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
+import com.itgnostic.test4sandbox.db.entity.EmployeeChangeEntity;
 import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import com.itgnostic.test4sandbox.trace.CacheLookupEvent;
 import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.persister.entity.EntityPersister;
 import org.hibernate.query.Query;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Objects;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 
+import static com.itgnostic.test4sandbox.common.Const.DB_CHANGES_TABLE_NAME;
+import static com.itgnostic.test4sandbox.common.Const.DB_TABLE_NAME;
+import static com.itgnostic.test4sandbox.utils.HibernateUtils.setLazyQueryExecution;
+
 
 public class EmployeeDbServiceImpl implements EmployeeDbService {
+    private static final String LIST_QUERY = "SELECT e FROM %s e WHERE e.id IN :ids";
+
+    // read endpoints: only the shown columns and the supervisor's name by a self-join, no entities
+    private static final String VIEW_QUERY = ("SELECT new %s(e.id, e.firstName, e.lastName, e.position, e.supervisor, "
+            + "s.firstName, s.lastName, e.created) FROM %2$s e LEFT JOIN %2$s s ON s.id = e.supervisor")
+            .formatted(EmployeeView.class.getName(), EmployeeEntity.class.getName());
+    private static final String VIEW_BY_ID_QUERY = VIEW_QUERY + " WHERE e.id = :id";
+    private static final String VIEW_LIST_QUERY = VIEW_QUERY + " WHERE e.id IN :ids";
+    private static final String VIEW_PAGE_QUERY = VIEW_QUERY + " ORDER BY e.id";
+    private static final String VIEW_SUBORDINATES_QUERY = VIEW_QUERY + " WHERE e.supervisor = :id ORDER BY e.id";
+    // rows per round trip of a whole table scan
+    private static final int SCAN_FETCH_SIZE = 1000;
+    private static final String TOTAL_QUERY = "SELECT COUNT(*) FROM " + EmployeeEntity.class.getName();
+
+    // materialized path: PATH of an employee is PATH of its supervisor plus its own id
+    private static final String PATH_QUERY = "SELECT e.id, e.path FROM %s e WHERE e.id = :id".formatted(EmployeeEntity.class.getName());
+    private static final String DEPTH_QUERY = "SELECT e.depth FROM %s e WHERE e.id = :id".formatted(EmployeeEntity.class.getName());
+    private static final String DESCENDANTS_QUERY = VIEW_QUERY + " WHERE e.path LIKE :prefix AND e.id <> :id";
+    private static final String POSSIBLE_SUPERVISORS_QUERY = VIEW_QUERY + " WHERE e.path IS NULL OR e.path NOT LIKE :prefix";
+    private static final String PATH_OF = "SELECT PATH, DEPTH FROM %s WHERE ID = ?".formatted(DB_TABLE_NAME);
+    // a root only without a supervisor: under a supervisor without a path (not reachable from a root) there is no path either
+    private static final String NEW_PATH = ("SELECT e.PATH, e.DEPTH, "
+            + "CASE WHEN e.SUPERVISOR IS NULL THEN '/' || e.ID || '/' ELSE p.PATH || e.ID || '/' END, "
+            + "CASE WHEN e.SUPERVISOR IS NULL THEN 0 ELSE p.DEPTH + 1 END, "
+            + "COALESCE(e.TOTAL_SUBORDINATES, 0) FROM %1$s e LEFT JOIN %1$s p ON p.ID = e.SUPERVISOR WHERE e.ID = ?").formatted(DB_TABLE_NAME);
+    private static final String SET_PATH =
+            "UPDATE %s SET PATH = ?, DEPTH = ?, TOTAL_SUBORDINATES = COALESCE(TOTAL_SUBORDINATES, 0) WHERE ID = ?".formatted(DB_TABLE_NAME);
+    // the employee and everyone below it, one index range
+    private static final String MOVE_PATHS =
+            "UPDATE %s SET PATH = ? || SUBSTRING(PATH, ?), DEPTH = DEPTH + ? WHERE PATH LIKE ?".formatted(DB_TABLE_NAME);
+    private static final String CLEAR_SUBTREE_PATHS =
+            "UPDATE %s SET PATH = NULL, DEPTH = NULL WHERE PATH LIKE ?".formatted(DB_TABLE_NAME);
+    private static final String DESCENDANT_IDS = "SELECT ID FROM %s WHERE PATH LIKE ?".formatted(DB_TABLE_NAME);
+    // sharded mode, see ShardedEmployeeDbService: the supervisors and subordinates of a row may be in other shards
+    private static final String SUBORDINATE_IDS =
+            "SELECT e.SUPERVISOR, e.ID FROM UNNEST(?) d(ID) JOIN %s e ON e.SUPERVISOR = d.ID ORDER BY e.ID".formatted(DB_TABLE_NAME);
+    private static final String SET_SUBORDINATES = "UPDATE %s SET SUBORDINATES = ? WHERE ID = ?".formatted(DB_TABLE_NAME);
+    private static final String SET_ROOT_PATHS =
+            "UPDATE %s SET PATH = '/' || ID || '/', DEPTH = 0 WHERE SUPERVISOR IS NULL".formatted(DB_TABLE_NAME);
+    private static final String SET_CHILD_PATHS = ("MERGE INTO %s e USING UNNEST(?, ?, ?) p(ID, PATH, DEPTH) ON e.SUPERVISOR = p.ID "
+            + "WHEN MATCHED THEN UPDATE SET PATH = p.PATH || e.ID || '/', DEPTH = p.DEPTH + 1").formatted(DB_TABLE_NAME);
+    private static final String ROOT_PATHS = "SELECT ID, PATH, DEPTH FROM %s WHERE SUPERVISOR IS NULL".formatted(DB_TABLE_NAME);
+    private static final String CHILD_PATHS =
+            "SELECT e.ID, e.PATH, e.DEPTH FROM UNNEST(?) d(ID) JOIN %s e ON e.SUPERVISOR = d.ID".formatted(DB_TABLE_NAME);
+    private static final String BUILT_PATHS = "SELECT PATH FROM %s WHERE PATH IS NOT NULL".formatted(DB_TABLE_NAME);
+    private static final String CLEAR_TOTALS =
+            "UPDATE %s SET TOTAL_SUBORDINATES = 0 WHERE PATH IS NOT NULL".formatted(DB_TABLE_NAME);
+    private static final String SET_TOTAL =
+            "UPDATE %s SET TOTAL_SUBORDINATES = ? WHERE ID = ? AND PATH IS NOT NULL".formatted(DB_TABLE_NAME);
+    // tables created before the PATH or TOTAL_SUBORDINATES column
+    private static final String NOT_BUILT = ("SELECT COUNT(*) FROM %s WHERE SUPERVISOR IS NULL AND PATH IS NULL "
+            + "OR PATH IS NOT NULL AND TOTAL_SUBORDINATES IS NULL").formatted(DB_TABLE_NAME);
+    private static final String CLEAR_PATHS =
+            "UPDATE %s SET PATH = NULL, DEPTH = NULL, TOTAL_SUBORDINATES = NULL".formatted(DB_TABLE_NAME);
+    // employees in a cycle are not reachable from a root and keep no path
+    private static final String REBUILD_PATHS = ("MERGE INTO %1$s e USING (WITH RECURSIVE t(ID, PATH, DEPTH) AS ("
+            + "SELECT ID, '/' || ID || '/', 0 FROM %1$s WHERE SUPERVISOR IS NULL "
+            + "UNION ALL SELECT s.ID, t.PATH || s.ID || '/', t.DEPTH + 1 FROM %1$s s JOIN t ON s.SUPERVISOR = t.ID) "
+            + "SELECT ID, PATH, DEPTH FROM t) t ON e.ID = t.ID "
+            + "WHEN MATCHED THEN UPDATE SET PATH = t.PATH, DEPTH = t.DEPTH").formatted(DB_TABLE_NAME);
+    // descendants of "/1/2/" are the paths between it and "/1/20": one index range per employee
+    private static final String REBUILD_TOTALS = ("UPDATE %1$s e SET TOTAL_SUBORDINATES = (SELECT COUNT(*) FROM %1$s d "
+            + "WHERE d.PATH > e.PATH AND d.PATH < SUBSTRING(e.PATH, 1, CHAR_LENGTH(e.PATH) - 1) || '0') "
+            + "WHERE e.PATH IS NOT NULL").formatted(DB_TABLE_NAME);
+    // totals of the supervisors above a moved, added or deleted subtree, a path has a few ids only
+    private static final String ADD_TO_TOTALS =
+            "UPDATE %s SET TOTAL_SUBORDINATES = TOTAL_SUBORDINATES + ? WHERE ID = ANY(?)".formatted(DB_TABLE_NAME);
+
+    // reassign: a constant number of statements whatever the number of moved employees, plus the path
+    // update of every moved subtree; recursive walks are left for employees without a path, the
+    // depth limit only stops on a cycle already in the data
+    private static final String IN_SUBTREE = ("WITH RECURSIVE sub(ID, LVL) AS ("
+            + "SELECT ID, 0 FROM %1$s WHERE ID = ANY(?) "
+            + "UNION ALL SELECT e.ID, sub.LVL + 1 FROM %1$s e JOIN sub ON e.SUPERVISOR = sub.ID "
+            + "WHERE sub.LVL < (SELECT COUNT(*) FROM %1$s)) "
+            + "SELECT COUNT(*) FROM sub WHERE ID = ?").formatted(DB_TABLE_NAME);
+    private static final String OLD_SUPERVISORS =
+            "SELECT DISTINCT SUPERVISOR FROM %s WHERE ID = ANY(?) AND SUPERVISOR IS NOT NULL AND SUPERVISOR IS DISTINCT FROM ?"
+                    .formatted(DB_TABLE_NAME);
+    private static final String LOG_MOVED = ("INSERT INTO %s (EMPLOYEE_ID, OPERATION, FIELDS, CHANGED_DATE) "
+            + "SELECT ID, 'MODIFY', 'supervisor', CURRENT_TIMESTAMP FROM %s WHERE ID = ANY(?) AND SUPERVISOR IS DISTINCT FROM ?")
+            .formatted(DB_CHANGES_TABLE_NAME, DB_TABLE_NAME);
+    private static final String MOVE =
+            "UPDATE %s SET SUPERVISOR = ? WHERE ID = ANY(?) AND SUPERVISOR IS DISTINCT FROM ?".formatted(DB_TABLE_NAME);
+    private static final String REBUILD_SUBORDINATES = ("UPDATE %1$s e SET SUBORDINATES = "
+            + "COALESCE((SELECT ARRAY_AGG(s.ID ORDER BY s.ID) FROM %1$s s WHERE s.SUPERVISOR = e.ID), ARRAY[]) "
+            + "WHERE e.ID = ANY(?)").formatted(DB_TABLE_NAME);
+    private static final String LOG_SUPERVISORS = ("INSERT INTO %s (EMPLOYEE_ID, OPERATION, FIELDS, CHANGED_DATE) "
+            + "SELECT ID, 'MODIFY', 'subordinates', CURRENT_TIMESTAMP FROM %s WHERE ID = ANY(?)")
+            .formatted(DB_CHANGES_TABLE_NAME, DB_TABLE_NAME);
+
+    // delete modes: a constant number of statements too, all subordinates are updated at once
+    private static final String SUPERVISOR_OF =
+            "SELECT SUPERVISOR, PATH, DEPTH, COALESCE(TOTAL_SUBORDINATES, 0) FROM %s WHERE ID = ?".formatted(DB_TABLE_NAME);
+    private static final String SUBTREE = ("WITH RECURSIVE sub(ID, LVL) AS ("
+            + "SELECT ID, 0 FROM %1$s WHERE ID = ? "
+            + "UNION ALL SELECT e.ID, sub.LVL + 1 FROM %1$s e JOIN sub ON e.SUPERVISOR = sub.ID "
+            + "WHERE sub.LVL < (SELECT COUNT(*) FROM %1$s)) "
+            + "SELECT DISTINCT ID FROM sub").formatted(DB_TABLE_NAME);
+    private static final String LOG_DETACHED = ("INSERT INTO %s (EMPLOYEE_ID, OPERATION, FIELDS, CHANGED_DATE) "
+            + "SELECT ID, 'MODIFY', 'supervisor', CURRENT_TIMESTAMP FROM %s WHERE SUPERVISOR = ? AND ID <> ?")
+            .formatted(DB_CHANGES_TABLE_NAME, DB_TABLE_NAME);
+    private static final String DETACH =
+            "UPDATE %s SET SUPERVISOR = ? WHERE SUPERVISOR = ? AND ID <> ?".formatted(DB_TABLE_NAME);
+    // a join with the id array uses the primary key, ID = ANY(?) checks every row against the whole array
+    private static final String LOG_DELETED = ("INSERT INTO %s (EMPLOYEE_ID, OPERATION, FIELDS, CHANGED_DATE) "
+            + "SELECT e.ID, 'DELETE', NULL, CURRENT_TIMESTAMP FROM UNNEST(?) d(ID) JOIN %s e ON e.ID = d.ID")
+            .formatted(DB_CHANGES_TABLE_NAME, DB_TABLE_NAME);
+    private static final String DELETE =
+            "MERGE INTO %s e USING UNNEST(?) d(ID) ON e.ID = d.ID WHEN MATCHED THEN DELETE".formatted(DB_TABLE_NAME);
 
     @PersistenceContext
     private final Session session;
     private final String entityName = EmployeeEntity.class.getName();
 
+    private final int listChunkSize;
+    private final ExecutorService listExecutor;
+    // changed past the main session, see evict()
+    private final Set<Long> stale = ConcurrentHashMap.newKeySet();
+    // false in a shard of ShardedEmployeeDbService: the supervisor may be in another shard, it keeps
+    // PATH, DEPTH and TOTAL_SUBORDINATES after add and modify
+    private volatile boolean keepsPaths = true;
 
 
     public EmployeeDbServiceImpl(Session session) {
+        this(session, Integer.MAX_VALUE, 1);
+    }
+
+    public EmployeeDbServiceImpl(Session session, int listChunkSize, int listParallelism) {
         this.session = session;
+        this.listChunkSize = Math.max(1, listChunkSize);
+        this.listExecutor = listParallelism > 1
+                ? Executors.newFixedThreadPool(listParallelism,
+                        new ThreadFactoryBuilder().setNameFormat("employee-list-%d").setDaemon(true).build())
+                : null;
     }
 
     @Override
@@ -40,6 +192,10 @@ public class EmployeeDbServiceImpl implements EmployeeDbService {
         Long out = (Long) session.save(e);
         //session.persist(e);
         //session.flush();
+        session.persist(new EmployeeChangeEntity(out, EmployeeChangeEntity.Operation.ADD, null));
+        session.flush();
+        if (keepsPaths)
+            session.doWork(connection -> movePaths(connection, List.of(out)));
         transaction.commit();
 
         return out;
@@ -51,30 +207,125 @@ public class EmployeeDbServiceImpl implements EmployeeDbService {
         if (!session.isOpen())
             return null;
 
+        evictStale();
+        CacheLookupEvent lookup = new CacheLookupEvent();
+        if (lookup.shouldCommit())
+            lookup.set("session", isCached(id)).commit();
+
         return session.get(EmployeeEntity.class, id);
     }
 
+    // the main session has the entity: get(id) doesn't go to the database
+    private boolean isCached(long id) {
+        SessionImplementor sessionImplementor = session.unwrap(SessionImplementor.class);
+        EntityPersister persister = sessionImplementor.getEntityPersister(EmployeeEntity.class.getName(), null);
+        return sessionImplementor.getPersistenceContextInternal().getEntity(sessionImplementor.generateEntityKey(id, persister)) != null;
+    }
+
     @Override
-    @Transactional
-    public List<EmployeeEntity> get(long page, long limit) {
-        String jpql = "FROM " + entityName;
+    public EmployeeView getView(long id) {
+        return read(readSession -> readSession.createQuery(VIEW_BY_ID_QUERY, EmployeeView.class)
+                .setParameter("id", id)
+                .uniqueResult());
+    }
 
-        Query query = session.createQuery(jpql);
-        query.setFirstResult((int) (page * limit));
-        query.setMaxResults((int) limit);
+    @Override
+    public List<EmployeeView> get(long page, long limit) {
+        return read(readSession -> readSession.createQuery(VIEW_PAGE_QUERY, EmployeeView.class)
+                .setFirstResult((int) (page * limit))
+                .setMaxResults((int) limit)
+                .getResultList());
+    }
 
-        return query.list();
+    @Override
+    public List<EmployeeView> getPossibleSupervisors(Long subId) {
+        return getPossibleSupervisorsByPath(subId == null ? null : getPathString(subId));
     }
 
+    // not the employee with the path and no one below it, everyone for null
+    List<EmployeeView> getPossibleSupervisorsByPath(String path) {
+        return read(readSession -> path == null
+                ? readSession.createQuery(VIEW_QUERY, EmployeeView.class).getResultList()
+                : readSession.createQuery(POSSIBLE_SUPERVISORS_QUERY, EmployeeView.class)
+                        .setParameter("prefix", path + "%")
+                        .getResultList());
+    }
+
+    @Override
+    public List<EmployeeView> getSubordinates(long id) {
+        return read(readSession -> readSession.createQuery(VIEW_SUBORDINATES_QUERY, EmployeeView.class)
+                .setParameter("id", id)
+                .getResultList());
+    }
+
+    /**
+     * Forward-only scroll of projections: rows come from the database in {@code SCAN_FETCH_SIZE} batches
+     * and none of them is kept by the session, so memory doesn't depend on the number of employees.
+     * Holds a connection until the consumer has seen the last row.
+     */
     @Override
-    public List<EmployeeEntity> getPossibleSupervisors(Long subId) {
-        return executeQuery("SELECT e FROM %s e".formatted(entityName));
+    public long scanViews(ViewConsumer consumer) {
+        return read(readSession -> {
+            readSession.doWork(connection -> setLazyQueryExecution(connection, true));
+
+            long rows = 0;
+            try (ScrollableResults<EmployeeView> views = readSession.createQuery(VIEW_PAGE_QUERY, EmployeeView.class)
+                    .setFetchSize(SCAN_FETCH_SIZE)
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (views.next()) {
+                    consumer.accept(views.get());
+                    rows++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                // the connection goes back to the pool
+                readSession.doWork(connection -> setLazyQueryExecution(connection, false));
+            }
+
+            return rows;
+        });
+    }
+
+    @Override
+    public List<EmployeeView> getViews(Collection<Long> ids) {
+        List<Long> idList = ids.stream().filter(Objects::nonNull).distinct().toList();
+        Map<Long, EmployeeView> found = new HashMap<>(idList.size() * 2);
+
+        if (idList.size() <= listChunkSize || listExecutor == null) {
+            read(readSession -> {
+                for (List<Long> chunk : Lists.partition(idList, listChunkSize))
+                    getViews(readSession, chunk).forEach(e -> found.put(e.id(), e));
+                return null;
+            });
+        }
+        else {
+            List<CompletableFuture<List<EmployeeView>>> futures = Lists.partition(idList, listChunkSize).stream()
+                    .map(chunk -> CompletableFuture.supplyAsync(() -> read(readSession -> getViews(readSession, chunk)), listExecutor))
+                    .toList();
+
+            for (CompletableFuture<List<EmployeeView>> future : futures)
+                future.join().forEach(e -> found.put(e.id(), e));
+        }
+
+        // keep input order of ids
+        return idList.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private static List<EmployeeView> getViews(Session readSession, List<Long> ids) {
+        return readSession.createQuery(VIEW_LIST_QUERY, EmployeeView.class)
+                .setParameter("ids", ids)
+                .getResultList();
     }
 
     @Override
     @Transactional
     public List<EmployeeEntity> getList(long[] ids) {
-        return getList(LongStream.of(ids).boxed().collect(Collectors.toSet()));
+        return getList(LongStream.of(ids).boxed().collect(Collectors.toCollection(LinkedHashSet::new)));
     }
 
     @Override
@@ -83,7 +334,51 @@ public class EmployeeDbServiceImpl implements EmployeeDbService {
         if (!session.isOpen())
             return null;
 
-        return executeQuery("SELECT e FROM %s e WHERE e.id IN :ids".formatted(entityName), "ids", ids);
+        List<Long> idList = ids.stream().filter(Objects::nonNull).distinct().toList();
+        Map<Long, EmployeeEntity> found = new HashMap<>(idList.size() * 2);
+
+        // detached entities whatever the size: a read session for a few ids, one per chunk for big id sets
+        if (idList.size() <= listChunkSize || listExecutor == null) {
+            read(readSession -> {
+                for (List<Long> chunk : Lists.partition(idList, listChunkSize))
+                    getList(readSession, chunk).forEach(e -> found.put(e.getId(), e));
+                return null;
+            });
+        }
+        else {
+            // sessions are not thread-safe: every chunk goes in its own one
+            List<CompletableFuture<List<EmployeeEntity>>> futures = Lists.partition(idList, listChunkSize).stream()
+                    .map(chunk -> CompletableFuture.supplyAsync(() -> read(readSession -> getList(readSession, chunk)), listExecutor))
+                    .toList();
+
+            for (CompletableFuture<List<EmployeeEntity>> future : futures)
+                future.join().forEach(e -> found.put(e.getId(), e));
+        }
+
+        // keep input order of ids
+        return idList.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private List<EmployeeEntity> getList(Session readSession, List<Long> ids) {
+        return readSession.createQuery(LIST_QUERY.formatted(entityName), EmployeeEntity.class)
+                .setParameter("ids", ids)
+                .getResultList();
+    }
+
+    /**
+     * Runs a query in a new session of its own: nothing is kept managed or dirty-checked after it, and
+     * it doesn't touch the main session, which is not thread-safe. Sees what the main session committed.
+     */
+    private <T> T read(Function<Session, T> work) {
+        try (Session readSession = session.getSessionFactory().openSession()) {
+            readSession.setDefaultReadOnly(true);
+            readSession.setHibernateFlushMode(FlushMode.MANUAL);
+
+            return work.apply(readSession);
+        }
     }
 
     @Override
@@ -93,31 +388,193 @@ public class EmployeeDbServiceImpl implements EmployeeDbService {
             return null;
 
         EmployeeEntity existed = get(e.getId());
-        if (existed == null || existed.equals(e) || !existed.getCreated().equals(e.getCreated()))
+        // by millis: a reloaded entity has a Timestamp and Timestamp.equals(Date) is always false
+        if (existed == null || existed.equals(e) || existed.getCreated().getTime() != e.getCreated().getTime())
             return null;
 
-        if (!Objects.equals(existed.getSupervisor(), e.getSupervisor()))
+        List<String> changedFields = applyChanges(existed, e);
+
+        Transaction transaction = session.beginTransaction();
+
+        session.merge(existed);
+        session.persist(new EmployeeChangeEntity(existed.getId(), EmployeeChangeEntity.Operation.MODIFY, changedFields));
+        session.flush();
+        if (keepsPaths && changedFields.contains("supervisor"))
+            session.doWork(connection -> movePaths(connection, List.of(existed.getId())));
+        transaction.commit();
+        return existed;
+    }
+
+    @Override
+    @Transactional
+    public List<Long> getPath(long id) {
+        if (!session.isOpen())
+            return null;
+
+        Object[] found = findPath(id);
+        if (found == null)
+            return null;
+
+        String path = (String) found[1];
+        if (path == null)
+            // in a cycle: no root above it
+            return List.of();
+
+        return Arrays.stream(path.split("/"))
+                .filter(part -> !part.isEmpty())
+                .map(Long::valueOf)
+                .toList();
+    }
+
+    @Override
+    @Transactional
+    public Integer getDepth(long id) {
+        if (!session.isOpen())
+            return null;
+
+        return read(readSession -> readSession.createQuery(DEPTH_QUERY, Integer.class)
+                .setParameter("id", id)
+                .uniqueResult());
+    }
+
+    @Override
+    @Transactional
+    public List<EmployeeView> getDescendants(long id) {
+        if (!session.isOpen())
+            return null;
+
+        String path = getPathString(id);
+        if (path == null)
+            return List.of();
+
+        return getDescendants(path, id);
+    }
+
+    // everyone below the employee with the path
+    List<EmployeeView> getDescendants(String path, long id) {
+        return read(readSession -> readSession.createQuery(DESCENDANTS_QUERY, EmployeeView.class)
+                .setParameter("prefix", path + "%")
+                .setParameter("id", id)
+                .getResultList());
+    }
+
+    @Override
+    @Transactional
+    public Long rebuildPaths(boolean force) {
+        if (!session.isOpen())
+            return null;
+
+        return inTransaction(connection -> {
+            if (!force) {
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery(NOT_BUILT)) {
+                    if (rs.next() && rs.getLong(1) == 0)
+                        return 0L;
+                }
+            }
+
+            return rebuildPaths(connection);
+        });
+    }
+
+    /**
+     * PATH, DEPTH and TOTAL_SUBORDINATES of the whole table from SUPERVISOR, in the caller's transaction.
+     *
+     * @return count of employees reachable from roots
+     */
+    public static long rebuildPaths(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(CLEAR_PATHS);
+            long out = statement.executeUpdate(REBUILD_PATHS);
+            statement.executeUpdate(REBUILD_TOTALS);
+            return out;
+        }
+    }
+
+    /**
+     * Saves many modifications in one transaction of a new session (write-behind flush),
+     * so it can run next to requests using the main session.
+     * Entities deleted in the meantime are skipped.
+     *
+     * @return count of employees changed
+     */
+    public int modifyAll(Collection<EmployeeEntity> entities) {
+        Map<Long, EmployeeEntity> byId = new LinkedHashMap<>();
+        entities.stream().filter(e -> e.getId() != null).forEach(e -> byId.put(e.getId(), e));
+
+        try (Session batchSession = session.getSessionFactory().openSession()) {
+            Transaction transaction = batchSession.beginTransaction();
+            List<Long> moved = new ArrayList<>();
+            int out = 0;
+
+            try {
+                for (List<Long> chunk : Lists.partition(new ArrayList<>(byId.keySet()), Math.min(listChunkSize, 1000))) {
+                    List<EmployeeEntity> existedList = batchSession.createQuery(LIST_QUERY.formatted(entityName), EmployeeEntity.class)
+                            .setParameter("ids", chunk)
+                            .getResultList();
+
+                    for (EmployeeEntity existed : existedList) {
+                        EmployeeEntity e = byId.get(existed.getId());
+                        if (existed.getCreated().getTime() != e.getCreated().getTime())
+                            continue;
+
+                        List<String> changedFields = applyChanges(existed, e);
+                        if (changedFields.isEmpty())
+                            continue;
+
+                        batchSession.persist(new EmployeeChangeEntity(existed.getId(), EmployeeChangeEntity.Operation.MODIFY, changedFields));
+                        if (changedFields.contains("supervisor"))
+                            moved.add(existed.getId());
+                        out++;
+                    }
+                }
+
+                if (keepsPaths && !moved.isEmpty()) {
+                    batchSession.flush();
+                    batchSession.doWork(connection -> movePaths(connection, moved));
+                }
+
+                transaction.commit();
+            }
+            catch (RuntimeException ex) {
+                transaction.rollback();
+                throw ex;
+            }
+
+            return out;
+        }
+    }
+
+    // copies values of e into the managed entity, returns names of changed fields
+    private static List<String> applyChanges(EmployeeEntity existed, EmployeeEntity e) {
+        List<String> changedFields = new ArrayList<>();
+
+        if (!Objects.equals(existed.getSupervisor(), e.getSupervisor())) {
             existed.setSupervisor(e.getSupervisor());
+            changedFields.add("supervisor");
+        }
 
-        if (!Objects.equals(existed.getPosition(), e.getPosition()))
+        if (!Objects.equals(existed.getPosition(), e.getPosition())) {
             existed.setPosition(e.getPosition());
+            changedFields.add("position");
+        }
 
-        if (!Objects.equals(existed.getFirstName(), e.getFirstName()))
+        if (!Objects.equals(existed.getFirstName(), e.getFirstName())) {
             existed.setFirstName(e.getFirstName());
+            changedFields.add("firstName");
+        }
 
-        if (!Objects.equals(existed.getLastName(), e.getLastName()))
+        if (!Objects.equals(existed.getLastName(), e.getLastName())) {
             existed.setLastName(e.getLastName());
+            changedFields.add("lastName");
+        }
 
-        if (!Objects.equals(existed.getSubordinates(), e.getSubordinates()))
-            existed.setSubordinates(e.getSubordinates() == null
-                    ? new HashSet<>() : e.getSubordinates());
-
-        Transaction transaction = session.beginTransaction();
+        if (!Objects.equals(existed.getSubordinates(), e.getSubordinates())) {
+            existed.setSubordinates(e.getSubordinates());
+            changedFields.add("subordinates");
+        }
 
-        session.merge(existed);
-        session.flush();
-        transaction.commit();
-        return existed;
+        return changedFields;
     }
 
     @Override
@@ -131,6 +588,7 @@ public class EmployeeDbServiceImpl implements EmployeeDbService {
 
         Transaction transaction = session.beginTransaction();
         session.remove(e);
+        session.persist(new EmployeeChangeEntity(e.getId(), EmployeeChangeEntity.Operation.DELETE, null));
         session.flush();
         transaction.commit();
 
@@ -143,6 +601,145 @@ public class EmployeeDbServiceImpl implements EmployeeDbService {
         return del(get(id));
     }
 
+    @Override
+    @Transactional
+    public Long reassign(Collection<Long> ids, Long supervisor) {
+        if (!session.isOpen() || ids.isEmpty())
+            return null;
+
+        Long[] moved = ids.toArray(Long[]::new);
+
+        return inTransaction(connection -> {
+            if (supervisor != null && isInSubtrees(connection, supervisor, moved))
+                return null;
+
+            Set<Long> supervisors = new HashSet<>();
+            if (supervisor != null)
+                supervisors.add(supervisor);
+
+            try (PreparedStatement select = connection.prepareStatement(OLD_SUPERVISORS)) {
+                select.setObject(1, moved);
+                select.setObject(2, supervisor, Types.BIGINT);
+
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next())
+                        supervisors.add(rs.getLong(1));
+                }
+            }
+
+            try (PreparedStatement log = connection.prepareStatement(LOG_MOVED)) {
+                log.setObject(1, moved);
+                log.setObject(2, supervisor, Types.BIGINT);
+                log.executeUpdate();
+            }
+
+            long count;
+            try (PreparedStatement move = connection.prepareStatement(MOVE)) {
+                move.setObject(1, supervisor, Types.BIGINT);
+                move.setObject(2, moved);
+                move.setObject(3, supervisor, Types.BIGINT);
+                count = move.executeUpdate();
+            }
+
+            if (count > 0) {
+                rebuildSubordinates(connection, supervisors);
+                movePaths(connection, ids);
+            }
+
+            return count;
+        });
+    }
+
+    @Override
+    @Transactional
+    public Long del(long id, DeleteMode mode) {
+        if (!session.isOpen())
+            return null;
+
+        return inTransaction(connection -> {
+            Long supervisor;
+            String path;
+            int depth;
+            long total;
+            try (PreparedStatement select = connection.prepareStatement(SUPERVISOR_OF)) {
+                select.setLong(1, id);
+
+                try (ResultSet rs = select.executeQuery()) {
+                    if (!rs.next())
+                        return 0L;
+
+                    supervisor = rs.getObject(1, Long.class);
+                    path = rs.getString(2);
+                    depth = rs.getInt(3);
+                    total = rs.getLong(4);
+                }
+            }
+
+            // the supervisors above lose the whole subtree, or just the employee when its subordinates stay under them
+            if (path != null)
+                addToTotals(connection, ancestorsOf(path), mode == DeleteMode.REPARENT ? -1 : -(total + 1));
+
+            Set<Long> deleted = new HashSet<>();
+            if (mode == DeleteMode.SUBTREE) {
+                try (PreparedStatement select = connection.prepareStatement(path == null ? SUBTREE : DESCENDANT_IDS)) {
+                    if (path == null)
+                        select.setLong(1, id);
+                    else
+                        select.setString(1, path + "%");
+
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next())
+                            deleted.add(rs.getLong(1));
+                    }
+                }
+            }
+            else {
+                deleted.add(id);
+
+                try (PreparedStatement log = connection.prepareStatement(LOG_DETACHED);
+                     PreparedStatement detach = connection.prepareStatement(DETACH)) {
+                    log.setLong(1, id);
+                    log.setLong(2, id);
+                    log.executeUpdate();
+
+                    // the deleted row takes its SUBORDINATES with it, the new supervisor's one is rebuilt below
+                    detach.setObject(1, mode == DeleteMode.REPARENT ? supervisor : null, Types.BIGINT);
+                    detach.setLong(2, id);
+                    detach.setLong(3, id);
+                    detach.executeUpdate();
+                }
+
+                // the subtrees move up a level or become roots, the deleted row gets a path too but goes next
+                if (path != null) {
+                    boolean reparent = mode == DeleteMode.REPARENT && supervisor != null;
+
+                    try (PreparedStatement move = connection.prepareStatement(MOVE_PATHS)) {
+                        move.setString(1, reparent ? path.substring(0, path.length() - (id + "/").length()) : "/");
+                        move.setInt(2, path.length() + 1);
+                        move.setInt(3, reparent ? -1 : -(depth + 1));
+                        move.setString(4, path + "%");
+                        move.executeUpdate();
+                    }
+                }
+            }
+
+            Long[] deleteIds = deleted.toArray(Long[]::new);
+            long count;
+            try (PreparedStatement log = connection.prepareStatement(LOG_DELETED);
+                 PreparedStatement delete = connection.prepareStatement(DELETE)) {
+                log.setObject(1, deleteIds);
+                log.executeUpdate();
+                delete.setObject(1, deleteIds);
+                count = delete.executeUpdate();
+            }
+
+            if (supervisor != null && !deleted.contains(supervisor))
+                rebuildSubordinates(connection, Set.of(supervisor));
+
+            return count;
+        });
+    }
+
     @Override
     @Transactional
     public Long getLastIndex() {
@@ -160,8 +757,318 @@ public class EmployeeDbServiceImpl implements EmployeeDbService {
     @Override
     @Transactional
     public Long getTotal() {
-        Query<Long> query = session.createQuery("select count(*) from " + entityName, Long.class);
-        return query.getSingleResult();
+        return read(readSession -> readSession.createQuery(TOTAL_QUERY, Long.class).getSingleResult());
+    }
+
+    @Override
+    public void clear() {
+        if (session.isOpen())
+            session.clear();
+    }
+
+    @Override
+    public void close() {
+        if (listExecutor != null)
+            listExecutor.shutdownNow();
+    }
+
+    // the main session is used by request threads: entities are evicted by the next of them, not by the caller
+    @Override
+    public void evict(Collection<Long> ids) {
+        stale.addAll(ids);
+    }
+
+    private void evictStale() {
+        for (Iterator<Long> it = stale.iterator(); it.hasNext(); ) {
+            Long id = it.next();
+            it.remove();
+            // the managed instance if there is one, otherwise an uninitialized proxy: no query either way
+            session.evict(session.getReference(EmployeeEntity.class, id));
+        }
+    }
+
+    // sharded mode: PATH, DEPTH and TOTAL_SUBORDINATES of the rows of this shard, SUBORDINATES from the
+    // SUPERVISOR column of all shards - each call in a transaction of its own, see ShardedEmployeeDbService
+
+    void setKeepsPaths(boolean keepsPaths) {
+        this.keepsPaths = keepsPaths;
+    }
+
+    // a row of the hierarchy: depth null - not reachable from a root
+    record Node(long id, Long supervisor, String path, Integer depth, long total) {
+    }
+
+    // null - not found
+    Node getNode(long id) {
+        return read(readSession -> readSession.doReturningWork(connection -> {
+            try (PreparedStatement select = connection.prepareStatement(SUPERVISOR_OF)) {
+                select.setLong(1, id);
+
+                try (ResultSet rs = select.executeQuery()) {
+                    return rs.next()
+                            ? new Node(id, rs.getObject(1, Long.class), rs.getString(2), rs.getObject(3, Integer.class), rs.getLong(4))
+                            : null;
+                }
+            }
+        }));
+    }
+
+    // an employee without a path yet, nobody below it
+    void setPath(long id, String path, int depth) {
+        inTransaction(connection -> {
+            try (PreparedStatement set = connection.prepareStatement(SET_PATH)) {
+                set.setString(1, path);
+                set.setInt(2, depth);
+                set.setLong(3, id);
+                return (long) set.executeUpdate();
+            }
+        });
+    }
+
+    // the rows of this shard at and below the path go under newPrefix
+    void movePaths(String path, String newPrefix, int depthChange) {
+        inTransaction(connection -> {
+            try (PreparedStatement move = connection.prepareStatement(MOVE_PATHS)) {
+                move.setString(1, newPrefix);
+                move.setInt(2, path.length() + 1);
+                move.setInt(3, depthChange);
+                move.setString(4, path + "%");
+                return (long) move.executeUpdate();
+            }
+        });
+    }
+
+    void clearPaths(String path) {
+        inTransaction(connection -> {
+            try (PreparedStatement clear = connection.prepareStatement(CLEAR_SUBTREE_PATHS)) {
+                clear.setString(1, path + "%");
+                return (long) clear.executeUpdate();
+            }
+        });
+    }
+
+    void addToTotals(List<Long> ids, long delta) {
+        inTransaction(connection -> {
+            addToTotals(connection, ids, delta);
+            return 0L;
+        });
+    }
+
+    // the employee with the path and everyone below it
+    List<Long> getDescendantIds(String path) {
+        return read(readSession -> readSession.doReturningWork(connection -> {
+            List<Long> out = new ArrayList<>();
+
+            try (PreparedStatement select = connection.prepareStatement(DESCENDANT_IDS)) {
+                select.setString(1, path + "%");
+
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next())
+                        out.add(rs.getLong(1));
+                }
+            }
+
+            return out;
+        }));
+    }
+
+    // ids of the rows with these supervisors, ascending
+    Map<Long, List<Long>> getSubordinateIds(Collection<Long> supervisors) {
+        return read(readSession -> readSession.doReturningWork(connection -> {
+            Map<Long, List<Long>> out = new HashMap<>();
+
+            try (PreparedStatement select = connection.prepareStatement(SUBORDINATE_IDS)) {
+                select.setObject(1, supervisors.toArray(Long[]::new));
+
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next())
+                        out.computeIfAbsent(rs.getLong(1), supervisor -> new ArrayList<>()).add(rs.getLong(2));
+                }
+            }
+
+            return out;
+        }));
+    }
+
+    // SUBORDINATES of the supervisors, ids ascending, with a log entry
+    void setSubordinates(Map<Long, List<Long>> subordinates) {
+        inTransaction(connection -> {
+            try (PreparedStatement set = connection.prepareStatement(SET_SUBORDINATES);
+                 PreparedStatement log = connection.prepareStatement(LOG_SUPERVISORS)) {
+                for (var e : subordinates.entrySet()) {
+                    set.setObject(1, e.getValue().toArray(Long[]::new));
+                    set.setLong(2, e.getKey());
+                    set.addBatch();
+                }
+                set.executeBatch();
+
+                log.setObject(1, subordinates.keySet().toArray(Long[]::new));
+                return (long) log.executeUpdate();
+            }
+        });
+    }
+
+    // the employees go under supervisor, their old supervisors are added to oldSupervisors; returns count moved
+    long moveAll(Collection<Long> ids, Long supervisor, Set<Long> oldSupervisors) {
+        Long[] moved = ids.toArray(Long[]::new);
+
+        return inTransaction(connection -> {
+            try (PreparedStatement select = connection.prepareStatement(OLD_SUPERVISORS)) {
+                select.setObject(1, moved);
+                select.setObject(2, supervisor, Types.BIGINT);
+
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next())
+                        oldSupervisors.add(rs.getLong(1));
+                }
+            }
+
+            try (PreparedStatement log = connection.prepareStatement(LOG_MOVED);
+                 PreparedStatement move = connection.prepareStatement(MOVE)) {
+                log.setObject(1, moved);
+                log.setObject(2, supervisor, Types.BIGINT);
+                log.executeUpdate();
+
+                move.setObject(1, supervisor, Types.BIGINT);
+                move.setObject(2, moved);
+                move.setObject(3, supervisor, Types.BIGINT);
+                return (long) move.executeUpdate();
+            }
+        });
+    }
+
+    // the subordinates of a deleted employee go under supervisor, null - become roots; returns count moved
+    long detach(long id, Long supervisor) {
+        return inTransaction(connection -> {
+            try (PreparedStatement log = connection.prepareStatement(LOG_DETACHED);
+                 PreparedStatement detach = connection.prepareStatement(DETACH)) {
+                log.setLong(1, id);
+                log.setLong(2, id);
+                log.executeUpdate();
+
+                detach.setObject(1, supervisor, Types.BIGINT);
+                detach.setLong(2, id);
+                detach.setLong(3, id);
+                return (long) detach.executeUpdate();
+            }
+        });
+    }
+
+    // returns count deleted
+    long deleteAll(Collection<Long> ids) {
+        Long[] deleteIds = ids.toArray(Long[]::new);
+
+        return inTransaction(connection -> {
+            try (PreparedStatement log = connection.prepareStatement(LOG_DELETED);
+                 PreparedStatement delete = connection.prepareStatement(DELETE)) {
+                log.setObject(1, deleteIds);
+                log.executeUpdate();
+                delete.setObject(1, deleteIds);
+                return (long) delete.executeUpdate();
+            }
+        });
+    }
+
+    // a root without a path or a row without a total: rebuildPaths(false) has work to do
+    boolean isPathsBuilt() {
+        return read(readSession -> readSession.doReturningWork(connection -> {
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(NOT_BUILT)) {
+                return !rs.next() || rs.getLong(1) == 0;
+            }
+        }));
+    }
+
+    // the first step of a rebuild: no paths, roots get theirs
+    List<Node> setRootPaths() {
+        inTransaction(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(CLEAR_PATHS);
+                return (long) statement.executeUpdate(SET_ROOT_PATHS);
+            }
+        });
+
+        return read(readSession -> readSession.doReturningWork(connection -> {
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(ROOT_PATHS)) {
+                return readNodes(rs);
+            }
+        }));
+    }
+
+    // the next step of a rebuild: the rows below the parents (of any shard) get paths and are returned
+    List<Node> setChildPaths(List<Node> parents) {
+        Long[] ids = parents.stream().map(Node::id).toArray(Long[]::new);
+
+        inTransaction(connection -> {
+            try (PreparedStatement merge = connection.prepareStatement(SET_CHILD_PATHS)) {
+                merge.setObject(1, ids);
+                merge.setObject(2, parents.stream().map(Node::path).toArray(String[]::new));
+                merge.setObject(3, parents.stream().map(Node::depth).toArray(Integer[]::new));
+                return (long) merge.executeUpdate();
+            }
+        });
+
+        return read(readSession -> readSession.doReturningWork(connection -> {
+            try (PreparedStatement select = connection.prepareStatement(CHILD_PATHS)) {
+                select.setObject(1, ids);
+
+                try (ResultSet rs = select.executeQuery()) {
+                    return readNodes(rs);
+                }
+            }
+        }));
+    }
+
+    private static List<Node> readNodes(ResultSet rs) throws SQLException {
+        List<Node> out = new ArrayList<>();
+        while (rs.next())
+            out.add(new Node(rs.getLong(1), null, rs.getString(2), rs.getInt(3), 0));
+        return out;
+    }
+
+    // every path of the shard, one row at a time
+    void scanPaths(Consumer<String> consumer) {
+        read(readSession -> readSession.doReturningWork(connection -> {
+            setLazyQueryExecution(connection, true);
+            try (Statement statement = connection.createStatement()) {
+                statement.setFetchSize(SCAN_FETCH_SIZE);
+
+                try (ResultSet rs = statement.executeQuery(BUILT_PATHS)) {
+                    while (rs.next())
+                        consumer.accept(rs.getString(1));
+                }
+            } finally {
+                setLazyQueryExecution(connection, false);
+            }
+            return null;
+        }));
+    }
+
+    // the last step of a rebuild: TOTAL_SUBORDINATES of the rows with a path, 0 if not in totals
+    void setTotals(Map<Long, Long> totals) {
+        inTransaction(connection -> {
+            try (Statement statement = connection.createStatement();
+                 PreparedStatement set = connection.prepareStatement(SET_TOTAL)) {
+                statement.executeUpdate(CLEAR_TOTALS);
+
+                int batch = 0;
+                for (var e : totals.entrySet()) {
+                    set.setLong(1, e.getValue());
+                    set.setLong(2, e.getKey());
+                    set.addBatch();
+
+                    if (++batch == SCAN_FETCH_SIZE) {
+                        set.executeBatch();
+                        batch = 0;
+                    }
+                }
+                if (batch > 0)
+                    set.executeBatch();
+
+                return 0L;
+            }
+        });
     }
 
     @Transactional
@@ -175,13 +1082,170 @@ public class EmployeeDbServiceImpl implements EmployeeDbService {
         return query.getResultList();
     }
 
-    @Transactional
-    protected List<EmployeeEntity> executeQuery(String sql) {
-        if (!session.isOpen())
-            return null;
+    // PATH and DEPTH of the employees and everyone below them follow their current SUPERVISOR,
+    // TOTAL_SUBORDINATES of the supervisors above the old and the new place follow the subtree size.
+    // One employee at a time with fresh reads: nested moves give the same result in any order
+    private static void movePaths(Connection connection, Collection<Long> ids) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(NEW_PATH);
+             PreparedStatement set = connection.prepareStatement(SET_PATH);
+             PreparedStatement move = connection.prepareStatement(MOVE_PATHS);
+             PreparedStatement clear = connection.prepareStatement(CLEAR_SUBTREE_PATHS)) {
+            for (Long id : ids) {
+                String oldPath;
+                String newPath;
+                int oldDepth;
+                int newDepth;
+                long size;
 
-        Query<EmployeeEntity> query = session.createQuery(sql, EmployeeEntity.class);
+                select.setLong(1, id);
+                try (ResultSet rs = select.executeQuery()) {
+                    if (!rs.next())
+                        continue;
 
-        return query.getResultList();
+                    oldPath = rs.getString(1);
+                    oldDepth = rs.getInt(2);
+                    newPath = rs.getString(3);
+                    newDepth = rs.getInt(4);
+                    size = rs.getLong(5) + 1;
+                }
+
+                if (newPath == null) {
+                    // under a supervisor not reachable from a root: no path, as rebuildPaths leaves it
+                    if (oldPath != null) {
+                        clear.setString(1, oldPath + "%");
+                        clear.executeUpdate();
+                        addToTotals(connection, ancestorsOf(oldPath), -size);
+                    }
+                }
+                else if (oldPath == null) {
+                    // a new employee, nobody below it yet
+                    set.setString(1, newPath);
+                    set.setInt(2, newDepth);
+                    set.setLong(3, id);
+                    set.executeUpdate();
+                    addToTotals(connection, ancestorsOf(newPath), size);
+                }
+                else if (newPath.startsWith(oldPath) && !newPath.equals(oldPath)) {
+                    // moved under its own subordinate (callers check it before): a cycle has no root and no path
+                    clear.setString(1, oldPath + "%");
+                    clear.executeUpdate();
+                    addToTotals(connection, ancestorsOf(oldPath), -size);
+                }
+                else if (!newPath.equals(oldPath)) {
+                    move.setString(1, newPath);
+                    move.setInt(2, oldPath.length() + 1);
+                    move.setInt(3, newDepth - oldDepth);
+                    move.setString(4, oldPath + "%");
+                    move.executeUpdate();
+
+                    // supervisors above both places keep their totals
+                    List<Long> oldAncestors = ancestorsOf(oldPath);
+                    List<Long> newAncestors = ancestorsOf(newPath);
+                    addToTotals(connection, oldAncestors.stream().filter(a -> !newAncestors.contains(a)).toList(), -size);
+                    addToTotals(connection, newAncestors.stream().filter(a -> !oldAncestors.contains(a)).toList(), size);
+                }
+            }
+        }
+    }
+
+    // ids of the supervisors on the path, without the employee itself
+    static List<Long> ancestorsOf(String path) {
+        String[] parts = path.split("/");
+        List<Long> out = new ArrayList<>(parts.length);
+
+        for (int i = 0; i < parts.length - 1; i++)
+            if (!parts[i].isEmpty())
+                out.add(Long.valueOf(parts[i]));
+
+        return out;
+    }
+
+    private static void addToTotals(Connection connection, List<Long> ids, long delta) throws SQLException {
+        if (ids.isEmpty() || delta == 0)
+            return;
+
+        try (PreparedStatement add = connection.prepareStatement(ADD_TO_TOTALS)) {
+            add.setLong(1, delta);
+            add.setObject(2, ids.toArray(Long[]::new));
+            add.executeUpdate();
+        }
+    }
+
+    // supervisor is one of the employees or below them
+    private static boolean isInSubtrees(Connection connection, long supervisor, Long[] ids) throws SQLException {
+        String path;
+        try (PreparedStatement select = connection.prepareStatement(PATH_OF)) {
+            select.setLong(1, supervisor);
+
+            try (ResultSet rs = select.executeQuery()) {
+                path = rs.next() ? rs.getString(1) : null;
+            }
+        }
+
+        if (path != null) {
+            for (Long id : ids)
+                if (path.contains("/" + id + "/"))
+                    return true;
+
+            return false;
+        }
+
+        try (PreparedStatement check = connection.prepareStatement(IN_SUBTREE)) {
+            check.setObject(1, ids);
+            check.setLong(2, supervisor);
+
+            try (ResultSet rs = check.executeQuery()) {
+                return rs.next() && rs.getLong(1) > 0;
+            }
+        }
+    }
+
+    private String getPathString(long id) {
+        Object[] found = findPath(id);
+        return found == null ? null : (String) found[1];
+    }
+
+    // {id, path}, null - not found
+    private Object[] findPath(long id) {
+        return read(readSession -> readSession.createQuery(PATH_QUERY, Object[].class)
+                .setParameter("id", id)
+                .uniqueResult());
+    }
+
+    // rebuilds SUBORDINATES from the SUPERVISOR column and logs the change
+    private static void rebuildSubordinates(Connection connection, Set<Long> supervisors) throws SQLException {
+        Long[] ids = supervisors.toArray(Long[]::new);
+
+        try (PreparedStatement rebuild = connection.prepareStatement(REBUILD_SUBORDINATES);
+             PreparedStatement log = connection.prepareStatement(LOG_SUPERVISORS)) {
+            rebuild.setObject(1, ids);
+            rebuild.executeUpdate();
+            log.setObject(1, ids);
+            log.executeUpdate();
+        }
+    }
+
+    // set-based statements in one transaction on the main session: null from work - rollback
+    private Long inTransaction(ReturningWork<Long> work) {
+        Transaction transaction = session.beginTransaction();
+
+        try {
+            Long out = session.doReturningWork(work);
+
+            if (out == null)
+                transaction.rollback();
+            else
+                transaction.commit();
+
+            return out;
+        }
+        catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        }
+        finally {
+            // entities of the session are older than the rows now
+            session.clear();
+        }
     }
 }
@@ -0,0 +1,188 @@
+package com.itgnostic.test4sandbox.db.dao.impl;
+
+import com.itgnostic.test4sandbox.db.dao.EmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
+import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import com.itgnostic.test4sandbox.db.replica.EmployeeReplica;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Read replica mode: reads of the read endpoints (views, pages, subordinates, hierarchy, totals) go to
+ * the replica, changes go to the primary.
+ * <p>
+ * Entities ({@link #get(long)}, {@link #getList}) are read from the primary: they are what changes are
+ * checked against and made from, a lagging copy would lose or undo writes.
+ * <p>
+ * With read-your-writes, reads stay on the primary from a write until the replica has it: a client sees
+ * its own changes at once, other reads wait for no one. Without it replica reads may be up to
+ * {@code employee.replica.sync.interval} ms behind.
+ */
+public class ReadRoutingEmployeeDbService implements EmployeeDbService {
+    private final EmployeeDbService primary;
+    private final EmployeeDbService replica;
+    private final EmployeeReplica replicaState;
+
+
+    public ReadRoutingEmployeeDbService(EmployeeDbService primary, EmployeeDbService replica, EmployeeReplica replicaState) {
+        this.primary = primary;
+        this.replica = replica;
+        this.replicaState = replicaState;
+    }
+
+    private EmployeeDbService reader() {
+        return !replicaState.isReadYourWrites() || replicaState.isCurrent() ? replica : primary;
+    }
+
+    @Override
+    public Long add(EmployeeEntity e) {
+        try {
+            return primary.add(e);
+        } finally {
+            replicaState.written();
+        }
+    }
+
+    @Override
+    public EmployeeEntity get(long id) {
+        return primary.get(id);
+    }
+
+    @Override
+    public List<EmployeeEntity> getList(long[] ids) {
+        return primary.getList(ids);
+    }
+
+    @Override
+    public List<EmployeeEntity> getList(Collection<Long> ids) {
+        return primary.getList(ids);
+    }
+
+    @Override
+    public EmployeeView getView(long id) {
+        return reader().getView(id);
+    }
+
+    @Override
+    public List<EmployeeView> getViews(Collection<Long> ids) {
+        return reader().getViews(ids);
+    }
+
+    @Override
+    public List<EmployeeView> get(long page, long limit) {
+        return reader().get(page, limit);
+    }
+
+    @Override
+    public List<EmployeeView> getPossibleSupervisors(Long subId) {
+        return reader().getPossibleSupervisors(subId);
+    }
+
+    @Override
+    public List<EmployeeView> getSubordinates(long id) {
+        return reader().getSubordinates(id);
+    }
+
+    @Override
+    public long scanViews(ViewConsumer consumer) {
+        return reader().scanViews(consumer);
+    }
+
+    @Override
+    public EmployeeEntity modify(EmployeeEntity e) {
+        try {
+            return primary.modify(e);
+        } finally {
+            replicaState.written();
+        }
+    }
+
+    @Override
+    public List<Long> getPath(long id) {
+        return reader().getPath(id);
+    }
+
+    @Override
+    public Integer getDepth(long id) {
+        return reader().getDepth(id);
+    }
+
+    @Override
+    public List<EmployeeView> getDescendants(long id) {
+        return reader().getDescendants(id);
+    }
+
+    @Override
+    public Long rebuildPaths(boolean force) {
+        try {
+            return primary.rebuildPaths(force);
+        } finally {
+            replicaState.written();
+        }
+    }
+
+    @Override
+    public Boolean del(EmployeeEntity e) {
+        try {
+            return primary.del(e);
+        } finally {
+            replicaState.written();
+        }
+    }
+
+    @Override
+    public Boolean del(int id) {
+        try {
+            return primary.del(id);
+        } finally {
+            replicaState.written();
+        }
+    }
+
+    @Override
+    public Long del(long id, DeleteMode mode) {
+        try {
+            return primary.del(id, mode);
+        } finally {
+            replicaState.written();
+        }
+    }
+
+    @Override
+    public Long reassign(Collection<Long> ids, Long supervisor) {
+        try {
+            return primary.reassign(ids, supervisor);
+        } finally {
+            replicaState.written();
+        }
+    }
+
+    @Override
+    public Long getLastIndex() {
+        return primary.getLastIndex();
+    }
+
+    @Override
+    public Long getTotal() {
+        return reader().getTotal();
+    }
+
+    @Override
+    public void clear() {
+        primary.clear();
+        replica.clear();
+    }
+
+    @Override
+    public void evict(Collection<Long> ids) {
+        primary.evict(ids);
+        replica.evict(ids);
+    }
+
+    @Override
+    public void close() {
+        primary.close();
+        replica.close();
+    }
+}
@@ -0,0 +1,665 @@
+package com.itgnostic.test4sandbox.db.dao.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.itgnostic.test4sandbox.db.dao.EmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
+import com.itgnostic.test4sandbox.db.dao.impl.EmployeeDbServiceImpl.Node;
+import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static com.itgnostic.test4sandbox.common.Const.DB_TABLE_NAME;
+import static com.itgnostic.test4sandbox.db.dao.impl.EmployeeDbServiceImpl.ancestorsOf;
+
+/**
+ * Sharded mode: employees are spread over several databases, each with an {@link EmployeeDbServiceImpl} of its own.
+ * <p>
+ * The id tells the shard: shard k of n hands out ids k+1, k+1+n, k+1+2n, ... from its identity column
+ * (see {@link #prepareShard}), so ids are unique without a shared counter and point operations go straight
+ * to shard (id - 1) mod n. New employees go to the shards in turn whoever their supervisor is: the rows
+ * and the writes of one org tree, the single-root one of DbInit and the generator too, are spread evenly.
+ * <p>
+ * A supervisor and its subordinates are mostly in different shards, so the hierarchy columns are kept
+ * here, not by the SQL of one database: the rows below an employee are found by its PATH in every shard,
+ * the supervisors above it by the ids on its PATH, SUBORDINATES of reassign and delete come from the
+ * SUPERVISOR column of every shard. A write goes to the shards of the employee and of the supervisors
+ * above it, a move or a delete to all of them, each in a transaction of its own: a failure half way
+ * leaves paths or subtree sizes for {@code rebuildPaths(true)}. Moves, reassigns, deletes and rebuilds
+ * run one at a time, adds and renames next to each other and to reads.
+ * <p>
+ * Lists, pages, totals and scans go to all shards in parallel and are merged by id. The supervisor
+ * names of views come from the shard of the supervisor.
+ */
+public class ShardedEmployeeDbService implements EmployeeDbService {
+    // rows in flight between a shard scan and the merge
+    private static final int SCAN_QUEUE_SIZE = 1000;
+    private static final Object SCAN_END = new Object();
+    // deepest row a page may reach: every shard reads all rows up to it, deeper reads go through scanViews
+    public static final long MAX_PAGE_ROWS = 10_000;
+
+    private final List<EmployeeDbServiceImpl> shards;
+    private final ExecutorService executor;
+    // shard scans run as long as the client reads, not on the executor of short queries
+    private final ExecutorService scanExecutor;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    // write: moves of subtrees; read: adds, which only add to subtree sizes
+    private final ReadWriteLock hierarchyLock = new ReentrantReadWriteLock();
+
+
+    public ShardedEmployeeDbService(List<EmployeeDbServiceImpl> shards) {
+        this.shards = List.copyOf(shards);
+        this.shards.forEach(shard -> shard.setKeepsPaths(false));
+        this.executor = Executors.newFixedThreadPool(shards.size(),
+                new ThreadFactoryBuilder().setNameFormat("employee-shard-%d").setDaemon(true).build());
+        this.scanExecutor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("employee-shard-scan-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Makes the identity column of shard {@code index} of {@code count} hand out its own ids only.
+     *
+     * @throws IllegalStateException the shard has ids of another shard: the count of shards changed
+     */
+    public static void prepareShard(SessionFactory shard, int index, int count) {
+        try (Session session = shard.openSession()) {
+            session.doWork(connection -> {
+                long max;
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(ID), 0), COUNT(CASE WHEN MOD(ID - 1, %d) <> %d THEN 1 END) FROM %s"
+                             .formatted(count, index, DB_TABLE_NAME))) {
+                    rs.next();
+                    max = rs.getLong(1);
+                    if (rs.getLong(2) > 0)
+                        throw new IllegalStateException("Shard %d has %d employees of other shards, the count of shards can't change on filled databases"
+                                .formatted(index, rs.getLong(2)));
+                }
+
+                // the next id above the last one with (id - 1) mod count = index
+                long next = max + 1 + Math.floorMod(index - max, count);
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("ALTER TABLE %s ALTER COLUMN ID RESTART WITH %d".formatted(DB_TABLE_NAME, next));
+                    statement.executeUpdate("ALTER TABLE %s ALTER COLUMN ID SET INCREMENT BY %d".formatted(DB_TABLE_NAME, count));
+                }
+            });
+        }
+    }
+
+    private EmployeeDbServiceImpl shard(long id) {
+        return shards.get((int) Math.floorMod(id - 1, (long) shards.size()));
+    }
+
+    @Override
+    public Long add(EmployeeEntity e) {
+        EmployeeDbServiceImpl shard = shards.get(Math.floorMod(nextShard.getAndIncrement(), shards.size()));
+
+        hierarchyLock.readLock().lock();
+        try {
+            Long out = shard.add(e);
+            if (out != null)
+                movePaths(List.of(out));
+
+            return out;
+        } finally {
+            hierarchyLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public EmployeeEntity get(long id) {
+        return shard(id).get(id);
+    }
+
+    @Override
+    public List<EmployeeEntity> getList(long[] ids) {
+        return getList(LongStream.of(ids).boxed().collect(Collectors.toCollection(LinkedHashSet::new)));
+    }
+
+    @Override
+    public List<EmployeeEntity> getList(Collection<Long> ids) {
+        return byIds(ids, EmployeeDbServiceImpl::getList, EmployeeEntity::getId);
+    }
+
+    @Override
+    public EmployeeView getView(long id) {
+        EmployeeView out = shard(id).getView(id);
+        return out == null ? null : withSupervisorNames(List.of(out)).get(0);
+    }
+
+    @Override
+    public List<EmployeeView> getViews(Collection<Long> ids) {
+        return withSupervisorNames(byIds(ids, EmployeeDbServiceImpl::getViews, EmployeeView::id));
+    }
+
+    // every shard gives its first (page + 1) * limit rows, null - deeper than MAX_PAGE_ROWS
+    @Override
+    public List<EmployeeView> get(long page, long limit) {
+        if (!isPageAllowed(page, limit))
+            return null;
+
+        return withSupervisorNames(onAll(shard -> shard.get(0, (page + 1) * limit)).stream()
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingLong(EmployeeView::id))
+                .skip(page * limit)
+                .limit(limit)
+                .collect(Collectors.toList()));
+    }
+
+    public static boolean isPageAllowed(long page, long limit) {
+        return limit <= MAX_PAGE_ROWS && page < MAX_PAGE_ROWS / limit;
+    }
+
+    // everyone not below the employee, by its path in every shard; ordered by id
+    @Override
+    public List<EmployeeView> getPossibleSupervisors(Long subId) {
+        Node sub = subId == null ? null : shard(subId).getNode(subId);
+        String path = sub == null ? null : sub.path();
+
+        return merge(onAll(shard -> shard.getPossibleSupervisorsByPath(path)));
+    }
+
+    @Override
+    public List<EmployeeView> getSubordinates(long id) {
+        return merge(onAll(shard -> shard.getSubordinates(id)));
+    }
+
+    /**
+     * Every shard is scanned by a thread of its own into a small queue, the rows are merged by id here:
+     * memory doesn't grow with the table, as with one database.
+     */
+    @Override
+    public long scanViews(ViewConsumer consumer) {
+        if (shards.size() == 1)
+            return shards.get(0).scanViews(consumer);
+
+        List<BlockingQueue<Object>> queues = new ArrayList<>();
+        List<Future<?>> scans = new ArrayList<>();
+        for (EmployeeDbServiceImpl shard : shards) {
+            BlockingQueue<Object> queue = new ArrayBlockingQueue<>(SCAN_QUEUE_SIZE);
+            queues.add(queue);
+            scans.add(scanExecutor.submit(() -> {
+                Object last = SCAN_END;
+                try {
+                    shard.scanViews(view -> {
+                        try {
+                            queue.put(view);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    last = e;
+                }
+
+                try {
+                    queue.put(last);
+                } catch (InterruptedException e) {
+                    // cancelled: nobody reads the queue any more
+                }
+            }));
+        }
+
+        long rows = 0;
+        try {
+            // head row of every shard, the lowest id goes first
+            PriorityQueue<Map.Entry<EmployeeView, Integer>> heads = new PriorityQueue<>(
+                    Comparator.comparingLong((Map.Entry<EmployeeView, Integer> head) -> head.getKey().id()));
+            for (int i = 0; i < queues.size(); i++)
+                takeNext(queues, i, heads);
+
+            // supervisor names are looked up for a queue of rows at a time
+            List<EmployeeView> batch = new ArrayList<>(SCAN_QUEUE_SIZE);
+            while (!heads.isEmpty()) {
+                Map.Entry<EmployeeView, Integer> head = heads.poll();
+                batch.add(head.getKey());
+                rows++;
+                if (batch.size() == SCAN_QUEUE_SIZE)
+                    acceptAll(withSupervisorNames(batch), consumer, batch);
+                takeNext(queues, head.getValue(), heads);
+            }
+            acceptAll(withSupervisorNames(batch), consumer, batch);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted scan", e);
+        } finally {
+            // the client went away or a shard failed: the other scans stop and give their connections back
+            scans.forEach(scan -> scan.cancel(true));
+        }
+
+        return rows;
+    }
+
+    private static void acceptAll(List<EmployeeView> views, ViewConsumer consumer, List<EmployeeView> batch) throws IOException {
+        for (EmployeeView view : views)
+            consumer.accept(view);
+        batch.clear();
+    }
+
+    private static void takeNext(List<BlockingQueue<Object>> queues, int shard,
+                                 PriorityQueue<Map.Entry<EmployeeView, Integer>> heads) throws InterruptedException {
+        Object next = queues.get(shard).take();
+        if (next instanceof RuntimeException e)
+            throw e;
+        if (next instanceof EmployeeView view)
+            heads.add(Map.entry(view, shard));
+    }
+
+    @Override
+    public EmployeeEntity modify(EmployeeEntity e) {
+        if (e == null || e.getId() == null)
+            return null;
+
+        EmployeeDbServiceImpl shard = shard(e.getId());
+        EmployeeEntity existed = shard.get(e.getId());
+        if (existed == null || Objects.equals(existed.getSupervisor(), e.getSupervisor()))
+            return shard.modify(e);
+
+        hierarchyLock.writeLock().lock();
+        try {
+            EmployeeEntity out = shard.modify(e);
+            if (out != null)
+                movePaths(List.of(out.getId()));
+
+            return out;
+        } finally {
+            hierarchyLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Long> getPath(long id) {
+        return shard(id).getPath(id);
+    }
+
+    @Override
+    public Integer getDepth(long id) {
+        return shard(id).getDepth(id);
+    }
+
+    // ordered by id
+    @Override
+    public List<EmployeeView> getDescendants(long id) {
+        Node node = shard(id).getNode(id);
+        if (node == null || node.path() == null)
+            return List.of();
+
+        return merge(onAll(shard -> shard.getDescendants(node.path(), id)));
+    }
+
+    /**
+     * Level by level from the roots: the rows of a level in every shard give the paths of the rows below
+     * them in every shard. Then every row adds one to the subtree sizes of the supervisors on its path.
+     */
+    @Override
+    public Long rebuildPaths(boolean force) {
+        hierarchyLock.writeLock().lock();
+        try {
+            if (!force && onAll(EmployeeDbServiceImpl::isPathsBuilt).stream().allMatch(Boolean::booleanValue))
+                return 0L;
+
+            long out = 0;
+            List<Node> level = flatten(onAll(EmployeeDbServiceImpl::setRootPaths));
+            while (!level.isEmpty()) {
+                out += level.size();
+                List<Node> parents = level;
+                level = flatten(onAll(shard -> shard.setChildPaths(parents)));
+            }
+
+            Map<Long, Long> totals = new HashMap<>();
+            for (EmployeeDbServiceImpl shard : shards)
+                shard.scanPaths(path -> ancestorsOf(path).forEach(id -> totals.merge(id, 1L, Long::sum)));
+
+            Map<EmployeeDbServiceImpl, Map<Long, Long>> byShard = new HashMap<>();
+            totals.forEach((id, total) -> byShard.computeIfAbsent(shard(id), shard -> new HashMap<>()).put(id, total));
+            forAll(shard -> shard.setTotals(byShard.getOrDefault(shard, Map.of())));
+
+            return out;
+        } finally {
+            hierarchyLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Boolean del(EmployeeEntity e) {
+        return e.getId() == null ? null : shard(e.getId()).del(e);
+    }
+
+    @Override
+    public Boolean del(int id) {
+        return shard(id).del(id);
+    }
+
+    // the steps of EmployeeDbServiceImpl.del, each over all shards
+    @Override
+    public Long del(long id, DeleteMode mode) {
+        hierarchyLock.writeLock().lock();
+        try {
+            Node node = shard(id).getNode(id);
+            if (node == null)
+                return 0L;
+
+            String path = node.path();
+            // the supervisors above lose the whole subtree, or just the employee when its subordinates stay under them
+            if (path != null)
+                addToTotals(ancestorsOf(path), mode == DeleteMode.REPARENT ? -1 : -(node.total() + 1));
+
+            Set<Long> deleted = new HashSet<>();
+            deleted.add(id);
+            if (mode == DeleteMode.SUBTREE) {
+                if (path != null)
+                    onAll(shard -> shard.getDescendantIds(path)).forEach(deleted::addAll);
+                else {
+                    // not reachable from a root: down the SUPERVISOR column, a cycle ends the walk
+                    Set<Long> level = Set.of(id);
+                    while (!level.isEmpty()) {
+                        Set<Long> parents = level;
+                        level = onAll(shard -> shard.getSubordinateIds(parents)).stream()
+                                .flatMap(found -> found.values().stream())
+                                .flatMap(List::stream)
+                                .filter(deleted::add)
+                                .collect(Collectors.toSet());
+                    }
+                }
+            }
+            else {
+                Long newSupervisor = mode == DeleteMode.REPARENT ? node.supervisor() : null;
+                forAll(shard -> shard.detach(id, newSupervisor));
+
+                // the subtrees move up a level or become roots, the deleted row gets a path too but goes next
+                if (path != null) {
+                    boolean reparent = mode == DeleteMode.REPARENT && node.supervisor() != null;
+                    String newPrefix = reparent ? path.substring(0, path.length() - (id + "/").length()) : "/";
+                    int depthChange = reparent ? -1 : -(node.depth() + 1);
+                    forAll(shard -> shard.movePaths(path, newPrefix, depthChange));
+                }
+            }
+
+            long count = 0;
+            for (var e : groupByShard(deleted).entrySet())
+                count += e.getKey().deleteAll(e.getValue());
+
+            if (node.supervisor() != null && !deleted.contains(node.supervisor()))
+                rebuildSubordinates(Set.of(node.supervisor()));
+
+            return count;
+        } finally {
+            hierarchyLock.writeLock().unlock();
+        }
+    }
+
+    // one transaction per shard: with employees of several shards a failure in one shard doesn't undo the others
+    @Override
+    public Long reassign(Collection<Long> ids, Long supervisor) {
+        if (ids.isEmpty())
+            return null;
+
+        hierarchyLock.writeLock().lock();
+        try {
+            if (supervisor != null && isInSubtrees(supervisor, new HashSet<>(ids)))
+                return null;
+
+            Set<Long> supervisors = new HashSet<>();
+            if (supervisor != null)
+                supervisors.add(supervisor);
+
+            long count = 0;
+            for (var e : groupByShard(ids).entrySet())
+                count += e.getKey().moveAll(e.getValue(), supervisor, supervisors);
+
+            if (count > 0) {
+                rebuildSubordinates(supervisors);
+                movePaths(ids);
+            }
+
+            return count;
+        } finally {
+            hierarchyLock.writeLock().unlock();
+        }
+    }
+
+    // supervisor is one of the employees or below them: by its path, or up its SUPERVISOR column without one
+    private boolean isInSubtrees(long supervisor, Set<Long> ids) {
+        Set<Long> seen = new HashSet<>();
+        for (Long id = supervisor; id != null && seen.add(id); ) {
+            if (ids.contains(id))
+                return true;
+
+            Node node = shard(id).getNode(id);
+            if (node == null)
+                return false;
+            if (node.path() != null)
+                return ancestorsOf(node.path()).stream().anyMatch(ids::contains);
+
+            id = node.supervisor();
+        }
+
+        return false;
+    }
+
+    // PATH and DEPTH of the employees and everyone below them in every shard follow their current SUPERVISOR,
+    // TOTAL_SUBORDINATES of the supervisors above the old and the new place follow the subtree size:
+    // the steps of EmployeeDbServiceImpl.movePaths with the rows of other shards
+    private void movePaths(Collection<Long> ids) {
+        for (Long id : ids) {
+            Node node = shard(id).getNode(id);
+            if (node == null)
+                continue;
+
+            String newPath;
+            int newDepth;
+            if (node.supervisor() == null) {
+                newPath = "/" + id + "/";
+                newDepth = 0;
+            }
+            else {
+                Node supervisor = shard(node.supervisor()).getNode(node.supervisor());
+                boolean reachable = supervisor != null && supervisor.path() != null;
+                newPath = reachable ? supervisor.path() + id + "/" : null;
+                newDepth = reachable ? supervisor.depth() + 1 : 0;
+            }
+
+            String oldPath = node.path();
+            long size = node.total() + 1;
+
+            if (newPath == null) {
+                // under a supervisor not reachable from a root: no path, as rebuildPaths leaves it
+                if (oldPath != null) {
+                    forAll(shard -> shard.clearPaths(oldPath));
+                    addToTotals(ancestorsOf(oldPath), -size);
+                }
+            }
+            else if (oldPath == null) {
+                // a new employee, nobody below it yet
+                shard(id).setPath(id, newPath, newDepth);
+                addToTotals(ancestorsOf(newPath), size);
+            }
+            else if (newPath.startsWith(oldPath) && !newPath.equals(oldPath)) {
+                // moved under its own subordinate (callers check it before): a cycle has no root and no path
+                forAll(shard -> shard.clearPaths(oldPath));
+                addToTotals(ancestorsOf(oldPath), -size);
+            }
+            else if (!newPath.equals(oldPath)) {
+                forAll(shard -> shard.movePaths(oldPath, newPath, newDepth - node.depth()));
+
+                // supervisors above both places keep their totals
+                List<Long> oldAncestors = ancestorsOf(oldPath);
+                List<Long> newAncestors = ancestorsOf(newPath);
+                addToTotals(oldAncestors.stream().filter(a -> !newAncestors.contains(a)).toList(), -size);
+                addToTotals(newAncestors.stream().filter(a -> !oldAncestors.contains(a)).toList(), size);
+            }
+        }
+    }
+
+    private void addToTotals(List<Long> ids, long delta) {
+        if (!ids.isEmpty() && delta != 0)
+            groupByShard(ids).forEach((shard, shardIds) -> shard.addToTotals(shardIds, delta));
+    }
+
+    // SUBORDINATES of the supervisors from the SUPERVISOR column of every shard
+    private void rebuildSubordinates(Set<Long> supervisors) {
+        Map<Long, List<Long>> subordinates = new HashMap<>();
+        supervisors.forEach(supervisor -> subordinates.put(supervisor, new ArrayList<>()));
+        for (Map<Long, List<Long>> found : onAll(shard -> shard.getSubordinateIds(supervisors)))
+            found.forEach((supervisor, ids) -> subordinates.get(supervisor).addAll(ids));
+        subordinates.values().forEach(Collections::sort);
+
+        groupByShard(supervisors).forEach((shard, shardSupervisors) -> shard.setSubordinates(
+                shardSupervisors.stream().collect(Collectors.toMap(Function.identity(), subordinates::get))));
+    }
+
+    // the supervisor of a view in another shard is not in the join of its query: names by id from there
+    private List<EmployeeView> withSupervisorNames(List<EmployeeView> views) {
+        Set<Long> supervisors = views.stream()
+                .filter(this::isSupervisorElsewhere)
+                .map(EmployeeView::supervisor)
+                .collect(Collectors.toSet());
+        if (supervisors.isEmpty())
+            return views;
+
+        Map<Long, EmployeeView> found = new HashMap<>();
+        addFound(found, byIds(supervisors, EmployeeDbServiceImpl::getViews, EmployeeView::id), EmployeeView::id);
+
+        return views.stream()
+                .map(view -> {
+                    EmployeeView supervisor = isSupervisorElsewhere(view) ? found.get(view.supervisor()) : null;
+                    return supervisor == null ? view : new EmployeeView(view.id(), view.firstName(), view.lastName(),
+                            view.position(), view.supervisor(), supervisor.firstName(), supervisor.lastName(), view.created());
+                })
+                .collect(Collectors.toList());
+    }
+
+    private boolean isSupervisorElsewhere(EmployeeView view) {
+        return view.supervisor() != null && view.supervisorFirstName() == null && shard(view.supervisor()) != shard(view.id());
+    }
+
+    // lists of all shards ordered by id, with supervisor names
+    private List<EmployeeView> merge(List<List<EmployeeView>> lists) {
+        return withSupervisorNames(lists.stream()
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingLong(EmployeeView::id))
+                .collect(Collectors.toList()));
+    }
+
+    private static <T> List<T> flatten(List<List<T>> lists) {
+        return lists.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    @Override
+    public Long getLastIndex() {
+        return onAll(EmployeeDbServiceImpl::getLastIndex).stream()
+                .filter(Objects::nonNull)
+                .max(Long::compare)
+                .orElse(null);
+    }
+
+    @Override
+    public Long getTotal() {
+        return sum(onAll(EmployeeDbServiceImpl::getTotal));
+    }
+
+    @Override
+    public void clear() {
+        shards.forEach(EmployeeDbServiceImpl::clear);
+    }
+
+    @Override
+    public void evict(Collection<Long> ids) {
+        groupByShard(ids).forEach(EmployeeDbServiceImpl::evict);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        scanExecutor.shutdownNow();
+        shards.forEach(EmployeeDbServiceImpl::close);
+    }
+
+    private Map<EmployeeDbServiceImpl, List<Long>> groupByShard(Collection<Long> ids) {
+        Map<EmployeeDbServiceImpl, List<Long>> out = new LinkedHashMap<>();
+        for (Long id : ids)
+            if (id != null)
+                out.computeIfAbsent(shard(id), shard -> new ArrayList<>()).add(id);
+        return out;
+    }
+
+    // keeps the order of ids, missing ones are skipped
+    private <T> List<T> byIds(Collection<Long> ids, BiFunction<EmployeeDbServiceImpl, List<Long>, List<T>> query, Function<T, Long> idOf) {
+        List<Long> idList = ids.stream().filter(Objects::nonNull).distinct().toList();
+        Map<EmployeeDbServiceImpl, List<Long>> byShard = groupByShard(idList);
+        Map<Long, T> found = new HashMap<>(idList.size() * 2);
+
+        if (byShard.size() <= 1)
+            byShard.forEach((shard, shardIds) -> addFound(found, query.apply(shard, shardIds), idOf));
+        else {
+            List<CompletableFuture<List<T>>> futures = byShard.entrySet().stream()
+                    .map(e -> CompletableFuture.supplyAsync(() -> query.apply(e.getKey(), e.getValue()), executor))
+                    .toList();
+
+            for (CompletableFuture<List<T>> future : futures)
+                addFound(found, future.join(), idOf);
+        }
+
+        return idList.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private static <T> void addFound(Map<Long, T> found, List<T> list, Function<T, Long> idOf) {
+        if (list != null)
+            list.forEach(e -> found.put(idOf.apply(e), e));
+    }
+
+    // results of all shards in shard order
+    private <T> List<T> onAll(Function<EmployeeDbServiceImpl, T> query) {
+        if (shards.size() == 1)
+            return Collections.singletonList(query.apply(shards.get(0)));
+
+        List<CompletableFuture<T>> futures = shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> query.apply(shard), executor))
+                .toList();
+
+        List<T> out = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures)
+            out.add(future.join());
+        return out;
+    }
+
+    private void forAll(Consumer<EmployeeDbServiceImpl> write) {
+        onAll(shard -> {
+            write.accept(shard);
+            return null;
+        });
+    }
+
+    // null if a shard failed
+    private static Long sum(List<Long> counts) {
+        long out = 0;
+        for (Long count : counts) {
+            if (count == null)
+                return null;
+            out += count;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,168 @@
+package com.itgnostic.test4sandbox.db.dao.impl;
+
+import com.itgnostic.test4sandbox.db.dao.EmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
+import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import com.itgnostic.test4sandbox.trace.EmployeeQueryEvent;
+import com.itgnostic.test4sandbox.trace.EmployeeTracing;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Every database call is an {@link EmployeeQueryEvent} for JDK Flight Recorder (off unless a recording
+ * enables it, see jfr/employee.jfc) and, in a sampled request (employee.tracing), a span. Both have the
+ * count of rows read or changed. Neither costs more than a check when off.
+ */
+public class TracingEmployeeDbService implements EmployeeDbService {
+    private static final String SPAN = "employee.db";
+    private static final ToLongFunction<Object> FOUND = found -> 1;
+
+    private final EmployeeDbService delegate;
+    private final EmployeeTracing tracing;
+
+
+    public TracingEmployeeDbService(EmployeeDbService delegate, EmployeeTracing tracing) {
+        this.delegate = delegate;
+        this.tracing = tracing;
+    }
+
+    // rows of a null result are 0
+    private <T> T query(String kind, Supplier<T> call, ToLongFunction<? super T> rows) {
+        EmployeeQueryEvent event = new EmployeeQueryEvent();
+        event.begin();
+
+        T result = tracing.observe(SPAN, kind, call, rows);
+
+        event.end();
+        if (event.shouldCommit())
+            event.set(kind, result == null || rows == null ? 0 : rows.applyAsLong(result)).commit();
+        return result;
+    }
+
+    private <T> T query(String kind, Supplier<T> call) {
+        return query(kind, call, null);
+    }
+
+    @Override
+    public Long add(EmployeeEntity e) {
+        return query("add", () -> delegate.add(e), FOUND);
+    }
+
+    @Override
+    public EmployeeEntity get(long id) {
+        return query("get", () -> delegate.get(id), FOUND);
+    }
+
+    @Override
+    public List<EmployeeEntity> getList(long[] ids) {
+        return query("getList", () -> delegate.getList(ids), List::size);
+    }
+
+    @Override
+    public List<EmployeeEntity> getList(Collection<Long> ids) {
+        return query("getList", () -> delegate.getList(ids), List::size);
+    }
+
+    @Override
+    public EmployeeView getView(long id) {
+        return query("getView", () -> delegate.getView(id), FOUND);
+    }
+
+    @Override
+    public List<EmployeeView> getViews(Collection<Long> ids) {
+        return query("getViews", () -> delegate.getViews(ids), List::size);
+    }
+
+    @Override
+    public List<EmployeeView> get(long page, long limit) {
+        return query("getPage", () -> delegate.get(page, limit), List::size);
+    }
+
+    @Override
+    public List<EmployeeView> getPossibleSupervisors(Long subId) {
+        return query("getPossibleSupervisors", () -> delegate.getPossibleSupervisors(subId), List::size);
+    }
+
+    @Override
+    public List<EmployeeView> getSubordinates(long id) {
+        return query("getSubordinates", () -> delegate.getSubordinates(id), List::size);
+    }
+
+    @Override
+    public long scanViews(ViewConsumer consumer) {
+        return query("scanViews", () -> delegate.scanViews(consumer), Long::longValue);
+    }
+
+    @Override
+    public EmployeeEntity modify(EmployeeEntity e) {
+        return query("modify", () -> delegate.modify(e), FOUND);
+    }
+
+    @Override
+    public List<Long> getPath(long id) {
+        return query("getPath", () -> delegate.getPath(id), List::size);
+    }
+
+    @Override
+    public Integer getDepth(long id) {
+        return query("getDepth", () -> delegate.getDepth(id), FOUND);
+    }
+
+    @Override
+    public List<EmployeeView> getDescendants(long id) {
+        return query("getDescendants", () -> delegate.getDescendants(id), List::size);
+    }
+
+    @Override
+    public Long rebuildPaths(boolean force) {
+        return query("rebuildPaths", () -> delegate.rebuildPaths(force), Long::longValue);
+    }
+
+    @Override
+    public Boolean del(EmployeeEntity e) {
+        return query("del", () -> delegate.del(e), deleted -> deleted ? 1 : 0);
+    }
+
+    @Override
+    public Boolean del(int id) {
+        return query("del", () -> delegate.del(id), deleted -> deleted ? 1 : 0);
+    }
+
+    @Override
+    public Long del(long id, DeleteMode mode) {
+        return query("del", () -> delegate.del(id, mode), Long::longValue);
+    }
+
+    @Override
+    public Long reassign(Collection<Long> ids, Long supervisor) {
+        return query("reassign", () -> delegate.reassign(ids, supervisor), Long::longValue);
+    }
+
+    @Override
+    public Long getLastIndex() {
+        return query("getLastIndex", delegate::getLastIndex);
+    }
+
+    @Override
+    public Long getTotal() {
+        return query("getTotal", delegate::getTotal);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public void evict(Collection<Long> ids) {
+        delegate.evict(ids);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,330 @@
+package com.itgnostic.test4sandbox.db.dao.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.itgnostic.test4sandbox.db.dao.EmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
+import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind mode: modifications are kept in memory, coalesced per employee id and saved by
+ * {@link EmployeeDbServiceImpl#modifyAll} in one transaction every {@code interval} ms, or earlier
+ * when {@code batchSize} of them are pending. Reads see pending modifications.
+ * <p>
+ * Not saved modifications (at most {@code interval} ms / {@code maxPending} employees) are lost
+ * if the process dies. Adds and deletes are written through right away.
+ */
+@Slf4j
+public class WriteBehindEmployeeDbService implements EmployeeDbService {
+    private final EmployeeDbServiceImpl delegate;
+    private final int batchSize;
+    private final int maxPending;
+    private final Runnable onFlush;
+
+    private final Map<Long, EmployeeEntity> pending = new ConcurrentHashMap<>();
+    // set by a flush: entities cached by the main session are older than the saved ones
+    private final AtomicBoolean evictNeeded = new AtomicBoolean();
+    // views are read past the main session: a flush between the read and the overlay is seen by this count
+    private final AtomicLong flushes = new AtomicLong();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("employee-write-behind").setDaemon(true).build());
+
+
+    public WriteBehindEmployeeDbService(EmployeeDbServiceImpl delegate, long interval, int batchSize, int maxPending, Runnable onFlush) {
+        this.delegate = delegate;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxPending = Math.max(this.batchSize, maxPending);
+        this.onFlush = onFlush;
+
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Long add(EmployeeEntity e) {
+        return delegate.add(e);
+    }
+
+    @Override
+    public EmployeeEntity get(long id) {
+        EmployeeEntity out;
+        do {
+            EmployeeEntity p = pending.get(id);
+            if (p != null)
+                return p;
+
+            evictIfNeeded();
+            out = delegate.get(id);
+        } while (evictNeeded.get());
+
+        return out;
+    }
+
+    @Override
+    public EmployeeView getView(long id) {
+        List<EmployeeView> out = readViews(() -> {
+            EmployeeView found = delegate.getView(id);
+            return found == null ? List.of() : List.of(found);
+        });
+
+        return out.isEmpty() ? null : out.get(0);
+    }
+
+    @Override
+    public List<EmployeeView> getViews(Collection<Long> ids) {
+        return readViews(() -> delegate.getViews(ids));
+    }
+
+    @Override
+    public List<EmployeeView> get(long page, long limit) {
+        return readViews(() -> delegate.get(page, limit));
+    }
+
+    // hierarchy queries go by PATH or SUPERVISOR in the database: pending supervisor changes must be there before them
+    @Override
+    public List<EmployeeView> getPossibleSupervisors(Long subId) {
+        flush();
+        return readViews(() -> delegate.getPossibleSupervisors(subId));
+    }
+
+    @Override
+    public List<EmployeeView> getSubordinates(long id) {
+        flush();
+        return readViews(() -> delegate.getSubordinates(id));
+    }
+
+    // a scan can't be repeated once rows are sent: modifications pending before it are saved, later ones are overlaid
+    @Override
+    public long scanViews(ViewConsumer consumer) {
+        flush();
+        return delegate.scanViews(v -> consumer.accept(overlay(v)));
+    }
+
+    @Override
+    public List<Long> getPath(long id) {
+        flush();
+        evictIfNeeded();
+        return delegate.getPath(id);
+    }
+
+    @Override
+    public Integer getDepth(long id) {
+        flush();
+        return delegate.getDepth(id);
+    }
+
+    @Override
+    public List<EmployeeView> getDescendants(long id) {
+        flush();
+        return readViews(() -> delegate.getDescendants(id));
+    }
+
+    @Override
+    public List<EmployeeEntity> getList(long[] ids) {
+        return read(() -> delegate.getList(ids));
+    }
+
+    @Override
+    public List<EmployeeEntity> getList(Collection<Long> ids) {
+        return read(() -> delegate.getList(ids));
+    }
+
+    @Override
+    public EmployeeEntity modify(EmployeeEntity e) {
+        if (e == null || e.getId() == null)
+            return null;
+
+        EmployeeEntity existed = get(e.getId());
+        if (existed == null || existed.equals(e) || existed.getCreated().getTime() != e.getCreated().getTime())
+            return null;
+
+        EmployeeEntity out = e.clone();
+
+        pending.put(out.getId(), out);
+
+        if (pending.size() >= maxPending)
+            flush(); // queue is full: the caller waits for the save
+        else if (pending.size() >= batchSize)
+            flusher.execute(this::flushQuietly);
+
+        return out;
+    }
+
+    @Override
+    public Boolean del(EmployeeEntity e) {
+        if (e.getId() == null)
+            return null;
+
+        pending.remove(e.getId());
+
+        // e may be a pending copy, the main session can only remove its own instance
+        evictIfNeeded();
+        EmployeeEntity managed = delegate.get(e.getId());
+
+        return managed == null ? false : delegate.del(managed);
+    }
+
+    @Override
+    public Boolean del(int id) {
+        return del(get(id));
+    }
+
+    // set-based updates in the database: pending modifications must be there before them
+    @Override
+    public Long del(long id, DeleteMode mode) {
+        flush();
+        return delegate.del(id, mode);
+    }
+
+    @Override
+    public Long reassign(Collection<Long> ids, Long supervisor) {
+        flush();
+        return delegate.reassign(ids, supervisor);
+    }
+
+    @Override
+    public Long rebuildPaths(boolean force) {
+        flush();
+        return delegate.rebuildPaths(force);
+    }
+
+    @Override
+    public Long getLastIndex() {
+        return delegate.getLastIndex();
+    }
+
+    @Override
+    public Long getTotal() {
+        return delegate.getTotal();
+    }
+
+    // pending modifications are dropped: the data was replaced past this service
+    @Override
+    public void clear() {
+        pending.clear();
+        delegate.clear();
+    }
+
+    // pending modifications of this node stay: they are newer
+    @Override
+    public void evict(Collection<Long> ids) {
+        delegate.evict(ids);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            if (pending.isEmpty())
+                return;
+
+            Map<Long, EmployeeEntity> batch = new HashMap<>(pending);
+            delegate.modifyAll(batch.values());
+
+            // before dropping overlay entries: a reader missing the overlay must see the eviction flag
+            evictNeeded.set(true);
+            // a newer modification of the same employee stays for the next flush
+            batch.forEach(pending::remove);
+            flushes.incrementAndGet();
+
+            onFlush.run();
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+        delegate.close();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        }
+        catch (RuntimeException e) {
+            // pending modifications stay, the next flush tries again
+            log.error("Write-behind flush of {} employees failed", pending.size(), e);
+        }
+    }
+
+    // the main session is used by request threads only, so it's cleared here and not by the flusher
+    private void evictIfNeeded() {
+        if (evictNeeded.compareAndSet(true, false))
+            delegate.clear();
+    }
+
+    private List<EmployeeView> readViews(Supplier<List<EmployeeView>> query) {
+        List<EmployeeView> out;
+        long flushed;
+        do {
+            flushed = flushes.get();
+            out = query.get().stream().map(this::overlay).collect(Collectors.toList());
+        } while (flushed != flushes.get());
+
+        return out;
+    }
+
+    // pending modification of the employee or of its supervisor's name
+    private EmployeeView overlay(EmployeeView v) {
+        EmployeeEntity p = pending.get(v.id());
+        Long supervisor = p == null ? v.supervisor() : p.getSupervisor();
+        EmployeeEntity pendingSupervisor = supervisor == null ? null : pending.get(supervisor);
+
+        if (p == null && pendingSupervisor == null)
+            return v;
+
+        String firstName = v.supervisorFirstName();
+        String lastName = v.supervisorLastName();
+        if (pendingSupervisor != null) {
+            firstName = pendingSupervisor.getFirstName();
+            lastName = pendingSupervisor.getLastName();
+        }
+        else if (!Objects.equals(supervisor, v.supervisor())) {
+            EmployeeView s = supervisor == null ? null : delegate.getView(supervisor);
+            firstName = s == null ? null : s.firstName();
+            lastName = s == null ? null : s.lastName();
+        }
+
+        return p == null
+                ? new EmployeeView(v.id(), v.firstName(), v.lastName(), v.position(), supervisor, firstName, lastName, v.created())
+                : EmployeeView.of(p, firstName, lastName);
+    }
+
+    private List<EmployeeEntity> read(Supplier<List<EmployeeEntity>> query) {
+        List<EmployeeEntity> out;
+        do {
+            evictIfNeeded();
+            List<EmployeeEntity> found = query.get();
+            out = found == null
+                    ? null
+                    : found.stream().map(e -> pending.getOrDefault(e.getId(), e)).collect(Collectors.toList());
+        } while (evictNeeded.get());
+
+        return out;
+    }
+}
@@ -0,0 +1,43 @@
+package com.itgnostic.test4sandbox.db.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.Collection;
+import java.time.LocalDateTime;
+
+import static com.itgnostic.test4sandbox.common.Const.DB_CHANGES_TABLE_NAME;
+
+@NoArgsConstructor
+@Entity
+@Table(name = DB_CHANGES_TABLE_NAME)
+public class EmployeeChangeEntity {
+    public enum Operation {
+        ADD, MODIFY, DELETE,
+        // all data was replaced (import, restore), consumers must reload everything
+        RESET
+    }
+
+    @Getter
+    private @Id @GeneratedValue(strategy = GenerationType.IDENTITY) @Column(name = "SEQ") Long seq;
+
+    @Getter @Column(name = "EMPLOYEE_ID")
+    private Long employeeId;
+    @Getter @Enumerated(EnumType.STRING) @Column(name = "OPERATION", nullable = false, length = 16)
+    private Operation operation;
+    // comma separated names of changed fields
+    @Getter @Column(name = "FIELDS")
+    private String fields;
+
+    // a TIMESTAMP column in the JVM zone, as java.util.Date with @Temporal was
+    @Getter
+    @Column(name = "CHANGED_DATE", nullable = false, updatable = false)
+    private LocalDateTime changed = LocalDateTime.now();
+
+    public EmployeeChangeEntity(Long employeeId, Operation operation, Collection<String> fields) {
+        this.employeeId = employeeId;
+        this.operation = operation;
+        this.fields = fields == null || fields.isEmpty() ? null : String.join(",", fields);
+    }
+}
@@ -4,19 +4,23 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Mutability;
+import org.hibernate.type.descriptor.java.Immutability;
 
+import java.util.Collection;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Objects;
-import java.util.Set;
 
 import static com.itgnostic.test4sandbox.common.Const.DB_TABLE_NAME;
 
 @NoArgsConstructor
 @Entity
 @Table(
-        name = DB_TABLE_NAME
+        name = DB_TABLE_NAME,
         //indexes = {@Index(name = "const", columnList = "id, created")}
+        // subtree walks and subordinates rebuilds look employees up by supervisor, descendants by path prefix
+        indexes = {@Index(name = "EMPLOYEE_SUPERVISOR_IDX", columnList = "SUPERVISOR"),
+                @Index(name = "EMPLOYEE_PATH_IDX", columnList = "PATH")}
 )
 public class EmployeeEntity {
     @Getter
@@ -30,8 +34,19 @@ public class EmployeeEntity {
     private String position;
     @Getter @Setter @Column(name="SUPERVISOR")
     private Long supervisor;
-    @Getter @Setter @Column(name="SUBORDINATES", nullable = false)
-    private Set<Long> subordinates = new HashSet<>();
+    // ascending ids; an array is replaced, never changed in place: clones and dirty-check snapshots share it
+    @Mutability(Immutability.class) @Column(name="SUBORDINATES", nullable = false)
+    private long[] subordinates = new long[0];
+    // ids from the root down to this employee, e.g. "/1/5/12/", and the count of supervisors above;
+    // written only by set-based SQL of EmployeeDbServiceImpl and used in queries:
+    // entities of a long-lived session may hold old values, so there are no getters
+    @Column(name="PATH", length = 4096, insertable = false, updatable = false)
+    private String path;
+    @Column(name="DEPTH", insertable = false, updatable = false)
+    private Integer depth;
+    // everyone below the employee, kept up to date on writes for the org-chart stats
+    @Column(name="TOTAL_SUBORDINATES", insertable = false, updatable = false)
+    private Long totalSubordinates;
 
     @Getter
     @Temporal(TemporalType.TIMESTAMP)
@@ -47,7 +62,7 @@ public class EmployeeEntity {
                 && Objects.equals(e.getFirstName(), firstName)
                 && Objects.equals(e.getLastName(), lastName)
                 && Objects.equals(e.getPosition(), position)
-                && Objects.equals(e.getSubordinates(), subordinates);
+                && Objects.equals(e.getSubordinates(), getSubordinates());
     }
 
     public EmployeeEntity clone() {
@@ -63,6 +78,15 @@ public class EmployeeEntity {
         return cloneE;
     }
 
+    public IdSet getSubordinates() {
+        return IdSet.ofSortedArray(subordinates);
+    }
+
+    // null - no subordinates
+    public void setSubordinates(Collection<Long> subordinates) {
+        this.subordinates = IdSet.copyOf(subordinates).array();
+    }
+
     private void setId(long id) {
         this.id = id;
     }
@@ -0,0 +1,151 @@
+package com.itgnostic.test4sandbox.db.entity;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of employee ids kept as a sorted {@code long[]}: 8 bytes an id instead of a boxed Long
+ * and a hash node. Changes make a new set ({@link #with}, {@link #without}), so instances and their
+ * arrays are shared freely between entities, clones and pending modifications.
+ * <p>
+ * Equal to any {@link java.util.Set} of the same ids; iteration is in ascending order.
+ */
+public final class IdSet extends AbstractSet<Long> {
+    public static final IdSet EMPTY = new IdSet(new long[0]);
+
+    private final long[] ids;
+
+    private IdSet(long[] sortedDistinct) {
+        this.ids = sortedDistinct;
+    }
+
+    public static IdSet of(long... ids) {
+        return ids.length == 0 ? EMPTY : ofArray(ids.clone());
+    }
+
+    // null elements are skipped
+    public static IdSet copyOf(Collection<Long> ids) {
+        if (ids instanceof IdSet set)
+            return set;
+        if (ids == null || ids.isEmpty())
+            return EMPTY;
+
+        long[] out = new long[ids.size()];
+        int n = 0;
+        for (Long id : ids)
+            if (id != null)
+                out[n++] = id;
+
+        return ofArray(n == out.length ? out : Arrays.copyOf(out, n));
+    }
+
+    // takes the array over: sorted and deduplicated in place, not copied
+    static IdSet ofArray(long[] ids) {
+        Arrays.sort(ids);
+
+        int n = 0;
+        for (int i = 0; i < ids.length; i++)
+            if (i == 0 || ids[i] != ids[n - 1])
+                ids[n++] = ids[i];
+
+        return n == 0 ? EMPTY : new IdSet(n == ids.length ? ids : Arrays.copyOf(ids, n));
+    }
+
+    // wrapped as is if ascending without duplicates, otherwise a sorted copy (rows saved before ids were kept sorted)
+    static IdSet ofSortedArray(long[] ids) {
+        if (ids == null || ids.length == 0)
+            return EMPTY;
+
+        for (int i = 1; i < ids.length; i++)
+            if (ids[i] <= ids[i - 1])
+                return ofArray(ids.clone());
+
+        return new IdSet(ids);
+    }
+
+    // the backing array, for the entity to store: must not be changed
+    long[] array() {
+        return ids;
+    }
+
+    public boolean contains(long id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long id && contains(id.longValue());
+    }
+
+    public IdSet with(long id) {
+        int i = Arrays.binarySearch(ids, id);
+        if (i >= 0)
+            return this;
+
+        int at = -i - 1;
+        long[] out = new long[ids.length + 1];
+        System.arraycopy(ids, 0, out, 0, at);
+        out[at] = id;
+        System.arraycopy(ids, at, out, at + 1, ids.length - at);
+        return new IdSet(out);
+    }
+
+    public IdSet without(long id) {
+        int at = Arrays.binarySearch(ids, id);
+        if (at < 0)
+            return this;
+        if (ids.length == 1)
+            return EMPTY;
+
+        long[] out = new long[ids.length - 1];
+        System.arraycopy(ids, 0, out, 0, at);
+        System.arraycopy(ids, at + 1, out, at, ids.length - at - 1);
+        return new IdSet(out);
+    }
+
+    // a copy, ascending
+    public long[] toLongArray() {
+        return ids.clone();
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < ids.length;
+            }
+
+            @Override
+            public Long next() {
+                if (next >= ids.length)
+                    throw new NoSuchElementException();
+                return ids[next++];
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IdSet set ? Arrays.equals(ids, set.ids) : super.equals(o);
+    }
+
+    // as Set.hashCode(): sum of Long.hashCode of the elements
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (long id : ids)
+            h += Long.hashCode(id);
+        return h;
+    }
+}
@@ -0,0 +1,38 @@
+package com.itgnostic.test4sandbox.db.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+import static com.itgnostic.test4sandbox.common.Const.DB_IDEMPOTENCY_TABLE_NAME;
+
+@NoArgsConstructor
+@Entity
+@Table(name = DB_IDEMPOTENCY_TABLE_NAME)
+public class IdempotencyKeyEntity {
+    // "<method> <path> <Idempotency-Key>"
+    @Getter
+    private @Id @Column(name = "REQUEST_KEY", length = 512) String requestKey;
+
+    // hash of the request body: the same key with another body is rejected
+    @Getter @Column(name = "FINGERPRINT", nullable = false, length = 64)
+    private String fingerprint;
+    @Getter @Column(name = "STATUS", nullable = false)
+    private int status;
+    @Getter @Column(name = "BODY", length = 65536)
+    private String body;
+
+    // a TIMESTAMP column in the JVM zone, as java.util.Date with @Temporal was
+    @Getter
+    @Column(name = "CREATED_DATE", nullable = false)
+    private LocalDateTime created = LocalDateTime.now();
+
+    public IdempotencyKeyEntity(String requestKey, String fingerprint, int status, String body) {
+        this.requestKey = requestKey;
+        this.fingerprint = fingerprint;
+        this.status = status;
+        this.body = body;
+    }
+}
@@ -0,0 +1,166 @@
+package com.itgnostic.test4sandbox.db.replica;
+
+import com.itgnostic.test4sandbox.db.HibernateConfig;
+import com.itgnostic.test4sandbox.service.EmployeeChangeService;
+import com.itgnostic.test4sandbox.utils.HibernateUtils;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read replica of the employee table (employee.replica.*): read endpoints are served from it by
+ * {@link com.itgnostic.test4sandbox.db.dao.impl.ReadRoutingEmployeeDbService}, changes go to spring.datasource.
+ * <p>
+ * With {@code url} set the replica is a database of its own, kept up to date by {@link ReplicaSync} every
+ * {@code sync.interval} ms; without it the replica is a read-only connection pool of the primary database.
+ * <p>
+ * Writes are counted, a sync knows how many of them it has seen: {@link #isCurrent()} tells whether
+ * the replica has every committed write (read-your-writes). A sync leaving a gap in the change log
+ * (a lower sequence number not committed yet) doesn't count: reads stay on the primary until it is filled.
+ */
+@Slf4j
+@Component
+public class EmployeeReplica {
+    private final boolean enabled;
+    private final boolean readYourWrites;
+    private final long fullInterval;
+
+    private final HikariDataSource dataSource;
+    private final SessionFactory sessionFactory;
+    // null - replica is the primary database itself
+    private final ReplicaSync sync;
+
+    private final AtomicLong written = new AtomicLong();
+    // writes the replica has, -1 - not copied yet
+    private volatile long synced = -1;
+    private long lastFullCopy;
+
+    public EmployeeReplica(SessionFactory primary,
+                           DataSourceProperties primaryProperties,
+                           Environment environment,
+                           EmployeeChangeService changeService,
+                           MeterRegistry meterRegistry,
+                           @Value("${employee.replica.enabled:false}") boolean enabled,
+                           @Value("${employee.replica.url:}") String url,
+                           @Value("${employee.replica.username:sa}") String username,
+                           @Value("${employee.replica.password:}") String password,
+                           @Value("${employee.replica.pool-size:10}") int poolSize,
+                           @Value("${employee.replica.read-your-writes:true}") boolean readYourWrites,
+                           @Value("${employee.replica.sync.full-interval:3600000}") long fullInterval) {
+        this.enabled = enabled;
+        this.readYourWrites = readYourWrites;
+        this.fullInterval = fullInterval;
+
+        if (!enabled) {
+            dataSource = null;
+            sessionFactory = null;
+            sync = null;
+            return;
+        }
+
+        boolean samePrimary = url == null || url.isBlank();
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("employee-replica");
+        config.setJdbcUrl(samePrimary ? primaryProperties.determineUrl() : url);
+        config.setUsername(samePrimary ? primaryProperties.determineUsername() : username);
+        config.setPassword(samePrimary ? primaryProperties.determinePassword() : password);
+        config.setMaximumPoolSize(Math.max(1, poolSize));
+        config.setReadOnly(samePrimary);
+        dataSource = new HikariDataSource(config);
+
+        Map<String, String> settings = new HashMap<>(HibernateConfig.hibernateSettings(environment));
+        if (samePrimary)
+            // the primary session factory keeps the schema
+            settings.put(AvailableSettings.HBM2DDL_AUTO, "none");
+        sessionFactory = HibernateUtils.buildSessionFactory(dataSource, settings);
+
+        sync = samePrimary ? null : new ReplicaSync(primary, sessionFactory);
+
+        // imports, generated orgs, repairs and write-behind saves don't go through the routing service
+        changeService.addListener(this::written);
+
+        Gauge.builder("employee.replica.behind", this, r -> r.sync == null ? 0 : Math.max(0, r.written.get() - r.synced))
+                .description("Writes committed on the primary and not yet copied to the replica")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isReadYourWrites() {
+        return readYourWrites;
+    }
+
+    public SessionFactory getSessionFactory() {
+        return sessionFactory;
+    }
+
+    // called after a write was committed on the primary
+    public void written() {
+        written.incrementAndGet();
+    }
+
+    // the replica has every write committed before the call
+    public boolean isCurrent() {
+        return sync == null || synced >= written.get();
+    }
+
+    // stays before the web server start, see DbInit
+    public void syncOnStartup() {
+        if (enabled && sync != null)
+            syncQuietly();
+    }
+
+    @Scheduled(initialDelayString = "${employee.replica.sync.interval:500}", fixedDelayString = "${employee.replica.sync.interval:500}")
+    public void scheduledSync() {
+        if (enabled && sync != null)
+            syncQuietly();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sessionFactory != null)
+            sessionFactory.close();
+        if (dataSource != null)
+            dataSource.close();
+    }
+
+    private synchronized void syncQuietly() {
+        // writes counted so far are committed, the change log read next has them all
+        long seen = written.get();
+
+        try {
+            long start = System.currentTimeMillis();
+            boolean full = sync.getLastSeq() < 0 || fullInterval > 0 && start - lastFullCopy >= fullInterval;
+            long rows = full ? sync.copyAll() : sync.sync();
+
+            if (full) {
+                lastFullCopy = start;
+                log.info("Copied {} employees to the replica in {} ms", rows, System.currentTimeMillis() - start);
+            }
+            else if (rows > 0)
+                log.debug("Copied {} changed employees to the replica in {} ms", rows, System.currentTimeMillis() - start);
+
+            // a change below the last copied one may still come: the writes seen may be one of them
+            if (!sync.hasGaps())
+                synced = seen;
+        } catch (RuntimeException e) {
+            log.error("Can't sync the replica", e);
+        }
+    }
+}
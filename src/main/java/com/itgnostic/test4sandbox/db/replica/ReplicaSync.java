@@ -0,0 +1,328 @@
+package com.itgnostic.test4sandbox.db.replica;
+
+import com.itgnostic.test4sandbox.service.EmployeeChangeService;
+import com.itgnostic.test4sandbox.service.EmployeeChangeService.Cursor;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
+
+import java.sql.*;
+import java.util.*;
+
+import static com.itgnostic.test4sandbox.common.Const.DB_CHANGES_TABLE_NAME;
+import static com.itgnostic.test4sandbox.common.Const.DB_TABLE_NAME;
+import static com.itgnostic.test4sandbox.utils.HibernateUtils.setLazyQueryExecution;
+
+/**
+ * Copies the employee table of the primary database into a replica database, rows as they are
+ * (paths, subtree sizes and subordinates too, nothing is rebuilt on the replica).
+ * <p>
+ * The first copy and every RESET in the change log copy the whole table. After that only the rows of
+ * employees in the change log since the last copy are copied, together with what the primary changed
+ * along with them without a log entry: the supervisors above (subtree sizes) and, for a supervisor
+ * change, everyone below (paths). Employees not found on the primary any more are deleted.
+ * <p>
+ * Sequence numbers of the change log commit in any order: the ones missing below the last copied are
+ * read again by every sync until they come or {@link EmployeeChangeService#GAP_TIMEOUT_MS} passes.
+ * <p>
+ * Not thread-safe: one sync at a time.
+ */
+public class ReplicaSync {
+    private static final String COLUMNS =
+            "e.ID, e.CREATED_DATE, e.FIRST_NAME, e.LAST_NAME, e.A_POSITION, e.SUPERVISOR, e.SUBORDINATES, e.PATH, e.DEPTH, e.TOTAL_SUBORDINATES";
+    private static final int COLUMN_COUNT = 10;
+    private static final int PATH_COLUMN = 8;
+
+    private static final String SELECT_ALL = "SELECT %s FROM %s e ORDER BY e.ID".formatted(COLUMNS, DB_TABLE_NAME);
+    // a join with the id array uses the primary key, see EmployeeDbServiceImpl
+    private static final String SELECT_BY_IDS = "SELECT %s FROM UNNEST(?) d(ID) JOIN %s e ON e.ID = d.ID".formatted(COLUMNS, DB_TABLE_NAME);
+    private static final String SELECT_SUBTREE = "SELECT %s FROM %s e WHERE e.PATH LIKE ?".formatted(COLUMNS, DB_TABLE_NAME);
+    private static final String CHANGES =
+            "SELECT SEQ, EMPLOYEE_ID, OPERATION, FIELDS FROM %s WHERE SEQ > ? ORDER BY SEQ LIMIT ?".formatted(DB_CHANGES_TABLE_NAME);
+    private static final String LATE_CHANGES =
+            "SELECT SEQ, EMPLOYEE_ID, OPERATION, FIELDS FROM %s WHERE SEQ = ANY(?)".formatted(DB_CHANGES_TABLE_NAME);
+
+    private static final String INSERT = ("INSERT INTO %s (ID, CREATED_DATE, FIRST_NAME, LAST_NAME, A_POSITION, SUPERVISOR, "
+            + "SUBORDINATES, PATH, DEPTH, TOTAL_SUBORDINATES) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)").formatted(DB_TABLE_NAME);
+    private static final String UPSERT = ("MERGE INTO %s (ID, CREATED_DATE, FIRST_NAME, LAST_NAME, A_POSITION, SUPERVISOR, "
+            + "SUBORDINATES, PATH, DEPTH, TOTAL_SUBORDINATES) KEY (ID) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)").formatted(DB_TABLE_NAME);
+    private static final String DELETE =
+            "MERGE INTO %s e USING UNNEST(?) d(ID) ON e.ID = d.ID WHEN MATCHED THEN DELETE".formatted(DB_TABLE_NAME);
+    private static final String DELETE_ALL = "DELETE FROM " + DB_TABLE_NAME;
+
+    private static final int BATCH_SIZE = 1000;
+    // more changes than this since the last copy: the whole table is copied instead
+    private static final int MAX_CHANGES = 100_000;
+
+    private final SessionFactory primary;
+    private final SessionFactory replica;
+
+    // change log position the replica has, null - nothing copied yet
+    private Cursor cursor;
+
+    public ReplicaSync(SessionFactory primary, SessionFactory replica) {
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    // -1 - nothing copied yet
+    public long getLastSeq() {
+        return cursor == null ? -1 : cursor.getLastSeq();
+    }
+
+    // changes below the last copied one may still come
+    public boolean hasGaps() {
+        return cursor != null && cursor.hasGaps();
+    }
+
+    /**
+     * Brings the replica up to the changes committed on the primary before the call.
+     *
+     * @return count of rows copied or deleted
+     */
+    public long sync() {
+        if (cursor == null)
+            return copyAll();
+
+        // taken over once the replica has the changes
+        Cursor next = new Cursor(cursor);
+        long now = System.currentTimeMillis();
+        Set<Long> ids = new HashSet<>();
+        Set<Long> moved = new HashSet<>();
+        // count of changes, null - RESET or too many changes
+        Long read = onPrimary(connection -> {
+            long count = 0;
+
+            if (next.hasGaps()) {
+                try (PreparedStatement select = connection.prepareStatement(LATE_CHANGES)) {
+                    select.setObject(1, next.getGaps().toArray(Long[]::new));
+                    count = readChanges(select, next, now, ids, moved, count);
+                }
+                if (count < 0)
+                    return null;
+                next.expire(now);
+            }
+
+            try (PreparedStatement select = connection.prepareStatement(CHANGES)) {
+                select.setLong(1, next.getLastSeq());
+                select.setInt(2, MAX_CHANGES + 1);
+                count = readChanges(select, next, now, ids, moved, count);
+            }
+
+            return count < 0 ? null : count;
+        });
+
+        if (read == null)
+            return copyAll();
+        if (read == 0) {
+            cursor = next;
+            return 0;
+        }
+
+        Map<Long, Object[]> rows = onPrimary(connection -> readChanged(connection, ids, moved));
+        List<Long> deleted = ids.stream().filter(id -> !rows.containsKey(id)).toList();
+
+        onReplica(connection -> {
+            try (PreparedStatement upsert = connection.prepareStatement(UPSERT)) {
+                writeRows(upsert, rows.values());
+            }
+
+            if (!deleted.isEmpty()) {
+                try (PreparedStatement delete = connection.prepareStatement(DELETE)) {
+                    delete.setObject(1, deleted.toArray(Long[]::new));
+                    delete.executeUpdate();
+                }
+            }
+
+            return null;
+        });
+
+        cursor = next;
+        return rows.size() + deleted.size();
+    }
+
+    /**
+     * Replaces the replica table with the primary one in one replica transaction: replica readers see
+     * the old rows until it commits.
+     *
+     * @return count of employees copied
+     */
+    public long copyAll() {
+        // changes committed during the copy come again with the next sync, copying a row twice does no harm
+        Cursor next;
+        try (Session session = primary.openSession()) {
+            next = EmployeeChangeService.cursorAtEnd(session);
+        }
+
+        try (Session primarySession = primary.openSession();
+             Session replicaSession = replica.openSession()) {
+            long rows = inTransaction(replicaSession, replicaConnection -> {
+                try (Statement statement = replicaConnection.createStatement()) {
+                    statement.executeUpdate(DELETE_ALL);
+                }
+
+                try (PreparedStatement insert = replicaConnection.prepareStatement(INSERT)) {
+                    return primarySession.doReturningWork(connection -> {
+                        setLazyQueryExecution(connection, true);
+                        try (Statement statement = connection.createStatement()) {
+                            statement.setFetchSize(BATCH_SIZE);
+
+                            try (ResultSet rs = statement.executeQuery(SELECT_ALL)) {
+                                return writeRows(insert, rs);
+                            }
+                        } finally {
+                            setLazyQueryExecution(connection, false);
+                        }
+                    });
+                }
+            });
+
+            cursor = next;
+            return rows;
+        }
+    }
+
+    // employees of the changes not read by the cursor yet; returns count of changes so far, -1 - RESET or too many
+    private static long readChanges(PreparedStatement select, Cursor cursor, long now,
+                                    Set<Long> ids, Set<Long> moved, long count) throws SQLException {
+        try (ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                if (!cursor.read(rs.getLong(1), now))
+                    continue;
+                if ("RESET".equals(rs.getString(3)) || ++count > MAX_CHANGES)
+                    return -1;
+
+                long employeeId = rs.getLong(2);
+                if (rs.wasNull())
+                    continue;
+
+                ids.add(employeeId);
+                String fields = rs.getString(4);
+                if (fields != null && Arrays.asList(fields.split(",")).contains("supervisor"))
+                    moved.add(employeeId);
+            }
+        }
+
+        return count;
+    }
+
+    // changed employees with the supervisors above them and, when moved, everyone below them
+    private static Map<Long, Object[]> readChanged(Connection connection, Set<Long> ids, Set<Long> moved) throws SQLException {
+        Map<Long, Object[]> rows = new HashMap<>();
+        readByIds(connection, ids, rows);
+
+        try (PreparedStatement select = connection.prepareStatement(SELECT_SUBTREE)) {
+            for (Long id : moved) {
+                Object[] row = rows.get(id);
+                if (row == null || row[PATH_COLUMN - 1] == null)
+                    continue;
+
+                select.setString(1, row[PATH_COLUMN - 1] + "%");
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next())
+                        rows.put(rs.getLong(1), readRow(rs));
+                }
+            }
+        }
+
+        Set<Long> ancestors = new HashSet<>();
+        for (Object[] row : rows.values())
+            if (row[PATH_COLUMN - 1] instanceof String path)
+                for (String part : path.split("/"))
+                    if (!part.isEmpty() && !rows.containsKey(Long.valueOf(part)))
+                        ancestors.add(Long.valueOf(part));
+        readByIds(connection, ancestors, rows);
+
+        return rows;
+    }
+
+    private static void readByIds(Connection connection, Collection<Long> ids, Map<Long, Object[]> rows) throws SQLException {
+        if (ids.isEmpty())
+            return;
+
+        try (PreparedStatement select = connection.prepareStatement(SELECT_BY_IDS)) {
+            select.setObject(1, ids.toArray(Long[]::new));
+
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next())
+                    rows.put(rs.getLong(1), readRow(rs));
+            }
+        }
+    }
+
+    private static Object[] readRow(ResultSet rs) throws SQLException {
+        Object[] row = new Object[COLUMN_COUNT];
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            Object value = rs.getObject(i + 1);
+            // SUBORDINATES: java.sql.Array is only valid while the result set is open
+            row[i] = value instanceof Array array ? array.getArray() : value;
+        }
+        return row;
+    }
+
+    private static long writeRows(PreparedStatement statement, Collection<Object[]> rows) throws SQLException {
+        int batch = 0;
+        for (Object[] row : rows) {
+            for (int i = 0; i < COLUMN_COUNT; i++)
+                statement.setObject(i + 1, row[i]);
+            statement.addBatch();
+
+            if (++batch == BATCH_SIZE) {
+                statement.executeBatch();
+                batch = 0;
+            }
+        }
+
+        if (batch > 0)
+            statement.executeBatch();
+
+        return rows.size();
+    }
+
+    private static long writeRows(PreparedStatement statement, ResultSet rs) throws SQLException {
+        long rows = 0;
+        int batch = 0;
+        while (rs.next()) {
+            Object[] row = readRow(rs);
+            for (int i = 0; i < COLUMN_COUNT; i++)
+                statement.setObject(i + 1, row[i]);
+            statement.addBatch();
+            rows++;
+
+            if (++batch == BATCH_SIZE) {
+                statement.executeBatch();
+                batch = 0;
+            }
+        }
+
+        if (batch > 0)
+            statement.executeBatch();
+
+        return rows;
+    }
+
+    private <T> T onPrimary(ReturningWork<T> work) {
+        try (Session session = primary.openSession()) {
+            return session.doReturningWork(work);
+        }
+    }
+
+    private <T> T onReplica(ReturningWork<T> work) {
+        try (Session session = replica.openSession()) {
+            return inTransaction(session, work);
+        }
+    }
+
+    private static <T> T inTransaction(Session session, ReturningWork<T> work) {
+        Transaction transaction = session.beginTransaction();
+        try {
+            T out = session.doReturningWork(work);
+            transaction.commit();
+            return out;
+        } catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        }
+    }
+}
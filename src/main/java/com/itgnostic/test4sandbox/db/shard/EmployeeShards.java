@@ -0,0 +1,74 @@
+package com.itgnostic.test4sandbox.db.shard;
+
+import com.itgnostic.test4sandbox.db.HibernateConfig;
+import com.itgnostic.test4sandbox.db.dao.impl.ShardedEmployeeDbService;
+import com.itgnostic.test4sandbox.utils.HibernateUtils;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Databases of the sharded mode (employee.shards.*): spring.datasource is shard 0, every url is one more,
+ * see {@link ShardedEmployeeDbService}. Without urls there is one database and no sharding.
+ */
+@Slf4j
+@Component
+public class EmployeeShards {
+    private final List<SessionFactory> sessionFactories = new ArrayList<>();
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+
+    public EmployeeShards(SessionFactory primary,
+                          Environment environment,
+                          @Value("${employee.shards.urls:}") String[] urls,
+                          @Value("${employee.shards.username:sa}") String username,
+                          @Value("${employee.shards.password:}") String password,
+                          @Value("${employee.shards.pool-size:10}") int poolSize) {
+        sessionFactories.add(primary);
+
+        List<String> shardUrls = Arrays.stream(urls).map(String::trim).filter(url -> !url.isEmpty()).toList();
+        for (String url : shardUrls) {
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("employee-shard-" + (dataSources.size() + 1));
+            config.setJdbcUrl(url);
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setMaximumPoolSize(Math.max(1, poolSize));
+
+            HikariDataSource dataSource = new HikariDataSource(config);
+            dataSources.add(dataSource);
+            sessionFactories.add(HibernateUtils.buildSessionFactory(dataSource, HibernateConfig.hibernateSettings(environment)));
+        }
+
+        if (isSharded()) {
+            for (int i = 0; i < sessionFactories.size(); i++)
+                ShardedEmployeeDbService.prepareShard(sessionFactories.get(i), i, sessionFactories.size());
+
+            log.info("Employees are spread over {} databases", sessionFactories.size());
+        }
+    }
+
+    public boolean isSharded() {
+        return sessionFactories.size() > 1;
+    }
+
+    // shard 0 is spring.datasource
+    public List<SessionFactory> getSessionFactories() {
+        return sessionFactories;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // shard 0 is closed with the rest of the context
+        sessionFactories.subList(1, sessionFactories.size()).forEach(SessionFactory::close);
+        dataSources.forEach(HikariDataSource::close);
+    }
+}
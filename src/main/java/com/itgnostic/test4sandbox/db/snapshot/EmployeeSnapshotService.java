@@ -0,0 +1,312 @@
+package com.itgnostic.test4sandbox.db.snapshot;
+
+import com.itgnostic.test4sandbox.db.dao.impl.EmployeeDbServiceImpl;
+import com.itgnostic.test4sandbox.db.shard.EmployeeShards;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+
+import static com.itgnostic.test4sandbox.common.Const.DB_CHANGES_TABLE_NAME;
+import static com.itgnostic.test4sandbox.common.Const.DB_TABLE_NAME;
+
+/**
+ * Binary snapshots of the employee table: export/import endpoints and the in-memory mode (see application-mem.yml).
+ */
+@Slf4j
+@Service
+public class EmployeeSnapshotService {
+    private static final String SELECT_ALL =
+            "SELECT ID, CREATED_DATE, FIRST_NAME, LAST_NAME, A_POSITION, SUPERVISOR FROM %s ORDER BY ID"
+                    .formatted(DB_TABLE_NAME);
+    private static final String INSERT =
+            "INSERT INTO %s (ID, CREATED_DATE, FIRST_NAME, LAST_NAME, A_POSITION, SUPERVISOR, SUBORDINATES) VALUES (?, ?, ?, ?, ?, ?, ARRAY[])"
+                    .formatted(DB_TABLE_NAME);
+    // subordinates are the reverse of supervisor edges, one statement for the whole table
+    private static final String REBUILD_SUBORDINATES =
+            "UPDATE %1$s e SET SUBORDINATES = COALESCE((SELECT ARRAY_AGG(s.ID ORDER BY s.ID) FROM %1$s s WHERE s.SUPERVISOR = e.ID), ARRAY[])"
+                    .formatted(DB_TABLE_NAME);
+    private static final String LOG_RESET =
+            "INSERT INTO %s (OPERATION, CHANGED_DATE) VALUES ('RESET', CURRENT_TIMESTAMP)".formatted(DB_CHANGES_TABLE_NAME);
+    private static final int BATCH_SIZE = 1000;
+
+    private final SessionFactory sessionFactory;
+    private final EmployeeShards shards;
+    private final boolean enabled;
+    private final Path file;
+    private final long seedSize;
+    private final int seedMaxDepth;
+    private final double seedFanOut;
+    private final double seedManagerShare;
+    private final long seed;
+
+    public EmployeeSnapshotService(SessionFactory sessionFactory,
+                                   EmployeeShards shards,
+                                   @Value("${employee.snapshot.enabled:false}") boolean enabled,
+                                   @Value("${employee.snapshot.file}") String file,
+                                   @Value("${employee.seed.size:0}") long seedSize,
+                                   @Value("${employee.seed.max-depth:12}") int seedMaxDepth,
+                                   @Value("${employee.seed.fan-out:8}") double seedFanOut,
+                                   @Value("${employee.seed.manager-share:0.3}") double seedManagerShare,
+                                   @Value("${employee.seed.seed:42}") long seed) {
+        this.sessionFactory = sessionFactory;
+        this.shards = shards;
+        this.enabled = enabled;
+        this.file = Path.of(file);
+        this.seedSize = seedSize;
+        this.seedMaxDepth = seedMaxDepth;
+        this.seedFanOut = seedFanOut;
+        this.seedManagerShare = seedManagerShare;
+        this.seed = seed;
+
+        if (enabled && shards.isSharded())
+            throw new IllegalStateException("employee.snapshot can't be used with employee.shards");
+    }
+
+    // snapshots are of one database: ids, supervisor edges and the RESET entry of the change log
+    private void checkNotSharded() {
+        if (shards.isSharded())
+            throw new IllegalStateException("Snapshots, import, export and generation of a sharded database are not supported");
+    }
+
+    public void restoreOnStartup() {
+        if (!enabled)
+            return;
+
+        if (!Files.exists(file)) {
+            log.info("No snapshot {}, starting with empty database", file);
+            return;
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            long rows = restore();
+            log.info("Restored {} employees from {} in {} ms", rows, file, System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            // don't start on empty db: the next snapshot would overwrite the good one
+            throw new IllegalStateException("Can't restore snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Fills an empty database with a synthetic org of {@code employee.seed.size} employees.
+     *
+     * @return false if generation is off
+     */
+    public boolean generateOnStartup() {
+        if (seedSize <= 0)
+            return false;
+
+        long start = System.currentTimeMillis();
+        long rows = generate(seedSize, seed);
+        log.info("Generated {} employees in {} ms", rows, System.currentTimeMillis() - start);
+        return true;
+    }
+
+    /**
+     * Replaces all employees with a synthetic org, see {@link SyntheticOrgGenerator} and {@code employee.seed.*}.
+     */
+    public long generate(long size, long seed) {
+        try {
+            return restore(new SyntheticOrgGenerator(size, seedMaxDepth, seedFanOut, seedManagerShare, seed));
+        } catch (IOException e) {
+            // generator doesn't read anything
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${employee.snapshot.interval:60000}", fixedDelayString = "${employee.snapshot.interval:60000}")
+    public void scheduledSave() {
+        if (enabled)
+            saveQuietly();
+    }
+
+    @PreDestroy
+    public void shutdownSave() {
+        if (enabled)
+            saveQuietly();
+    }
+
+    public long save() throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+
+        // write next to the old snapshot and swap, so a crash never leaves a half-written file
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            long rows;
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                rows = save(channel);
+                channel.force(true);
+            }
+
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return rows;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public long save(WritableByteChannel channel) {
+        try (SnapshotWriter writer = new SnapshotWriter(channel)) {
+            scan(writer::write);
+            return writer.getRows();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public interface RecordConsumer {
+        void accept(SnapshotRecord record) throws IOException;
+    }
+
+    /**
+     * Streams all employees ordered by id, without loading entities.
+     *
+     * @return count of employees
+     */
+    public long scan(RecordConsumer consumer) {
+        checkNotSharded();
+        try (Session session = sessionFactory.openSession()) {
+            return session.doReturningWork(connection -> {
+                long rows = 0;
+
+                try (Statement statement = connection.createStatement()) {
+                    statement.setFetchSize(BATCH_SIZE);
+
+                    try (ResultSet rs = statement.executeQuery(SELECT_ALL)) {
+                        while (rs.next()) {
+                            consumer.accept(toRecord(rs));
+                            rows++;
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                return rows;
+            });
+        }
+    }
+
+    public long restore() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return restore(channel);
+        }
+    }
+
+    public long restore(ReadableByteChannel channel) throws IOException {
+        return restore(new SnapshotReader(channel));
+    }
+
+    /**
+     * Replaces all employees with the source content in one transaction, inserted in JDBC batches.
+     * Subordinates, paths and subtree sizes of every employee are rebuilt from supervisor edges.
+     * The change log gets one RESET entry instead of a change per employee.
+     */
+    public long restore(SnapshotSource source) throws IOException {
+        checkNotSharded();
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                long rows = session.doReturningWork(connection -> {
+                    long maxId = 0;
+
+                    try (Statement statement = connection.createStatement()) {
+                        statement.executeUpdate("DELETE FROM " + DB_TABLE_NAME);
+                    }
+
+                    try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                        int batch = 0;
+                        SnapshotRecord r;
+                        while ((r = source.next()) != null) {
+                            bind(insert, r);
+                            insert.addBatch();
+                            maxId = Math.max(maxId, r.getId());
+
+                            if (++batch == BATCH_SIZE) {
+                                insert.executeBatch();
+                                batch = 0;
+                            }
+                        }
+
+                        if (batch > 0)
+                            insert.executeBatch();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+
+                    try (Statement statement = connection.createStatement()) {
+                        statement.executeUpdate(REBUILD_SUBORDINATES);
+                        // materialized paths top-down from the roots and subtree sizes
+                        EmployeeDbServiceImpl.rebuildPaths(connection);
+                        statement.executeUpdate(LOG_RESET);
+                        statement.executeUpdate("ALTER TABLE %s ALTER COLUMN ID RESTART WITH %d".formatted(DB_TABLE_NAME, maxId + 1));
+                    }
+
+                    return source.getRows();
+                });
+
+                transaction.commit();
+                return rows;
+            } catch (UncheckedIOException e) {
+                transaction.rollback();
+                throw e.getCause();
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void saveQuietly() {
+        try {
+            long start = System.currentTimeMillis();
+            long rows = save();
+            log.info("Saved {} employees to {} in {} ms", rows, file, System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            log.error("Can't save snapshot {}", file, e);
+        }
+    }
+
+    private static SnapshotRecord toRecord(ResultSet rs) throws SQLException {
+        long supervisor = rs.getLong("SUPERVISOR");
+        boolean noSupervisor = rs.wasNull();
+
+        return new SnapshotRecord(
+                rs.getLong("ID"),
+                rs.getTimestamp("CREATED_DATE").getTime(),
+                rs.getString("FIRST_NAME"),
+                rs.getString("LAST_NAME"),
+                rs.getString("A_POSITION"),
+                noSupervisor ? null : supervisor);
+    }
+
+    private static void bind(PreparedStatement insert, SnapshotRecord r) throws SQLException {
+        insert.setLong(1, r.getId());
+        insert.setTimestamp(2, new Timestamp(r.getCreated()));
+        insert.setString(3, r.getFirstName());
+        insert.setString(4, r.getLastName());
+        insert.setString(5, r.getPosition());
+
+        if (r.getSupervisor() == null)
+            insert.setNull(6, Types.BIGINT);
+        else
+            insert.setLong(6, r.getSupervisor());
+    }
+}
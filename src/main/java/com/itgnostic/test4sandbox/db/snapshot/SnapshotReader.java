@@ -0,0 +1,140 @@
+package com.itgnostic.test4sandbox.db.snapshot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.itgnostic.test4sandbox.db.snapshot.SnapshotWriter.*;
+
+/**
+ * Reads what {@link SnapshotWriter} wrote, one record at a time with a fixed-size buffer.
+ */
+public class SnapshotReader implements SnapshotSource {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final List<String> positions = new ArrayList<>();
+    private final byte version;
+    private long rows = 0;
+    private boolean finished = false;
+
+    public SnapshotReader(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        buffer.flip();
+
+        if (getInt() != MAGIC)
+            throw new IOException("Not an employee snapshot");
+
+        version = getByte();
+        if (version != VERSION && version != VERSION_1)
+            throw new IOException("Unsupported snapshot version " + version);
+    }
+
+    @Override
+    public SnapshotRecord next() throws IOException {
+        if (finished)
+            return null;
+
+        byte tag = getByte();
+        if (tag == END) {
+            long expected = getVarLong();
+            if (expected != rows)
+                throw new IOException("Snapshot is broken: expected %d rows, read %d".formatted(expected, rows));
+
+            finished = true;
+            return null;
+        }
+        else if (tag != ROW)
+            throw new IOException("Snapshot is broken: unknown tag " + tag);
+
+        long id = getVarLong();
+        long created = getVarLong();
+        String firstName = getString();
+        String lastName = getString();
+        String position = version == VERSION_1 ? getString() : getPosition();
+        long supervisor = getVarLong();
+
+        if (version == VERSION_1) {
+            // subordinates are rebuilt from supervisor edges
+            long subsCount = getVarLong();
+            for (long i = 0; i < subsCount; i++)
+                getVarLong();
+        }
+
+        rows++;
+        return new SnapshotRecord(id, created, firstName, lastName, position, supervisor == 0 ? null : supervisor);
+    }
+
+    @Override
+    public long getRows() {
+        return rows;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes)
+            return;
+
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0)
+                throw new EOFException("Unexpected end of snapshot");
+        }
+        buffer.flip();
+    }
+
+    private byte getByte() throws IOException {
+        ensure(1);
+        return buffer.get();
+    }
+
+    private int getInt() throws IOException {
+        ensure(4);
+        return buffer.getInt();
+    }
+
+    private long getVarLong() throws IOException {
+        long out = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = getByte();
+            out |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return out;
+        }
+        throw new IOException("Snapshot is broken: bad varint");
+    }
+
+    private String getPosition() throws IOException {
+        long ref = getVarLong();
+        if (ref == 0)
+            return null;
+        else if (ref == 1) {
+            String position = getString();
+            positions.add(position);
+            return position;
+        }
+        else if (ref - 2 < positions.size())
+            return positions.get((int) (ref - 2));
+        else
+            throw new IOException("Snapshot is broken: unknown position " + (ref - 2));
+    }
+
+    private String getString() throws IOException {
+        int len = (int) getVarLong();
+        if (len == 0)
+            return null;
+
+        byte[] bytes = new byte[len];
+        int offset = 0;
+        while (offset < len) {
+            ensure(1);
+            int chunk = Math.min(buffer.remaining(), len - offset);
+            buffer.get(bytes, offset, chunk);
+            offset += chunk;
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,15 @@
+package com.itgnostic.test4sandbox.db.snapshot;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class SnapshotRecord {
+    private final long id;
+    private final long created;
+    private final String firstName;
+    private final String lastName;
+    private final String position;
+    private final Long supervisor;
+}
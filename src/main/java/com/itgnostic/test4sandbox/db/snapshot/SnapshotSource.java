@@ -0,0 +1,16 @@
+package com.itgnostic.test4sandbox.db.snapshot;
+
+import java.io.IOException;
+
+/**
+ * Employees for {@link EmployeeSnapshotService#restore(SnapshotSource)}: a snapshot file or generated ones.
+ * Supervisors come before their subordinates.
+ */
+public interface SnapshotSource {
+    /**
+     * @return next record or null after the last one
+     */
+    SnapshotRecord next() throws IOException;
+
+    long getRows();
+}
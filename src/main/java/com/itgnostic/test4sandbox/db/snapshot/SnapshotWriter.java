@@ -0,0 +1,118 @@
+package com.itgnostic.test4sandbox.db.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes employees in snapshot format through a fixed-size buffer:
+ * <pre>
+ * header : MAGIC(int) VERSION(byte)
+ * row    : ROW(byte) id created firstName lastName positionRef [position] supervisor
+ * footer : END(byte) rowsCount
+ * </pre>
+ * Numbers are unsigned varints, supervisor 0 means "no supervisor",
+ * strings are varint length + UTF-8 bytes, length 0 means null/empty.
+ * Positions are a dictionary built on the fly: positionRef 0 - no position,
+ * 1 - new dictionary entry follows, n - entry n-2.
+ * Subordinates are not stored, they are the reverse of supervisor edges.
+ * Version 1 had the position inline and subsCount + subs after supervisor.
+ * The channel is not closed by {@link #close()}, it belongs to the caller.
+ */
+public class SnapshotWriter implements AutoCloseable {
+    static final int MAGIC = 0x454D5053; // "EMPS"
+    static final byte VERSION_1 = 1;
+    static final byte VERSION = 2;
+    static final byte ROW = 1;
+    static final byte END = 0;
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Map<String, Integer> positions = new HashMap<>();
+    private long rows = 0;
+
+    public SnapshotWriter(WritableByteChannel channel) throws IOException {
+        this.channel = channel;
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+    }
+
+    public void write(SnapshotRecord r) throws IOException {
+        ensure(1);
+        buffer.put(ROW);
+        putVarLong(r.getId());
+        putVarLong(r.getCreated());
+        putString(r.getFirstName());
+        putString(r.getLastName());
+        putPosition(r.getPosition());
+        putVarLong(r.getSupervisor() == null ? 0 : r.getSupervisor());
+
+        rows++;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ensure(1);
+        buffer.put(END);
+        putVarLong(rows);
+        drain();
+    }
+
+    private void putVarLong(long v) throws IOException {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    private void putPosition(String position) throws IOException {
+        if (position == null || position.isEmpty()) {
+            putVarLong(0);
+            return;
+        }
+
+        Integer index = positions.get(position);
+        if (index == null) {
+            positions.put(position, positions.size());
+            putVarLong(1);
+            putString(position);
+        }
+        else
+            putVarLong(index + 2);
+    }
+
+    private void putString(String s) throws IOException {
+        byte[] bytes = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+        putVarLong(bytes.length);
+
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensure(1);
+            int len = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, len);
+            offset += len;
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes)
+            drain();
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,146 @@
+package com.itgnostic.test4sandbox.db.snapshot;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic org chart of {@code size} employees for {@link EmployeeSnapshotService#restore(SnapshotSource)}:
+ * one root, teams filled breadth first. A team size is log-normal around {@code fanOut}, an employee
+ * below {@code maxDepth} levels leads a team with {@code managerShare} probability. Names and individual
+ * contributor positions are Zipf-distributed, managers get positions by level.
+ * <p>
+ * Ids go from 1 in generation order, so supervisors come first. The same seed gives the same org.
+ * Memory: a byte per employee and an int per manager.
+ */
+public class SyntheticOrgGenerator implements SnapshotSource {
+    public static final int MAX_DEPTH = 100;
+
+    private static final String[] FIRST_NAMES = {
+            "James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+            "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+            "Daniel", "Lisa", "Matthew", "Nancy", "Anthony", "Sandra", "Mark", "Ashley", "Steven", "Emily",
+            "Andrew", "Olga", "Pavel", "Anna", "Ivan", "Maria", "Wei", "Mei", "Hiroshi", "Yuki",
+            "Carlos", "Sofia", "Ahmed", "Fatima", "Raj", "Priya", "Lukas", "Emma"};
+    private static final String[] LAST_NAMES = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+            "Lee", "Perez", "Thompson", "White", "Harris", "Clark", "Lewis", "Walker", "Young", "Allen",
+            "Ivanov", "Petrenko", "Kowalski", "Novak", "Muller", "Schmidt", "Rossi", "Silva", "Wang", "Li",
+            "Zhang", "Chen", "Kim", "Park", "Tanaka", "Sato", "Singh", "Kumar"};
+    // by level, the last one for all levels below
+    private static final String[] MANAGER_POSITIONS = {
+            "Chief Executive Officer", "Vice President", "Director", "Senior Manager", "Manager", "Team Leader"};
+    private static final String[] POSITIONS = {
+            "Software Engineer", "Analyst", "Specialist", "Sales Representative", "Support Engineer",
+            "Designer", "Accountant", "QA Engineer", "Consultant", "Recruiter"};
+    // spread of team sizes around fanOut
+    private static final double TEAM_SIGMA = 0.6;
+
+    private static final double[] FIRST_NAME_WEIGHTS = zipf(FIRST_NAMES.length);
+    private static final double[] LAST_NAME_WEIGHTS = zipf(LAST_NAMES.length);
+    private static final double[] POSITION_WEIGHTS = zipf(POSITIONS.length);
+
+    private final long size;
+    private final int maxDepth;
+    private final double managerShare;
+    private final double teamMu;
+    private final long created;
+    private final SplittableRandom random;
+
+    private final byte[] levels;
+    // managers in id order: the next team to fill is managers[nextManager]
+    private int[] managers = new int[1024];
+    private int managersCount = 0;
+    private int nextManager = 0;
+
+    private int nextId = 1;
+    private int supervisor = 0;
+    private long teamLeft = 0;
+
+    public SyntheticOrgGenerator(long size, int maxDepth, double fanOut, double managerShare, long seed) {
+        if (size < 1 || size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Bad size " + size);
+        if (maxDepth < 1 || maxDepth > MAX_DEPTH)
+            throw new IllegalArgumentException("Bad max depth " + maxDepth);
+        if (fanOut < 1)
+            throw new IllegalArgumentException("Bad fan-out " + fanOut);
+        if (managerShare <= 0 || managerShare > 1)
+            throw new IllegalArgumentException("Bad manager share " + managerShare);
+
+        this.size = size;
+        this.maxDepth = maxDepth;
+        this.managerShare = managerShare;
+        // log-normal mean is exp(mu + sigma^2 / 2)
+        this.teamMu = Math.log(fanOut) - TEAM_SIGMA * TEAM_SIGMA / 2;
+        this.random = new SplittableRandom(seed);
+        // hired a minute apart, the last one now
+        this.created = System.currentTimeMillis() - size * 60_000;
+        this.levels = new byte[(int) size + 1];
+    }
+
+    @Override
+    public SnapshotRecord next() {
+        if (nextId > size)
+            return null;
+
+        int id = nextId++;
+        int level = 0;
+        Long supervisorId = null;
+
+        if (id > 1) {
+            while (teamLeft == 0) {
+                // every planned team is full: one more team for a random manager
+                supervisor = nextManager < managersCount
+                        ? managers[nextManager++]
+                        : managers[random.nextInt(managersCount)];
+                teamLeft = teamSize();
+            }
+
+            teamLeft--;
+            level = levels[supervisor] + 1;
+            supervisorId = (long) supervisor;
+        }
+
+        levels[id] = (byte) level;
+
+        boolean manager = id == 1 || level < maxDepth && random.nextDouble() < managerShare;
+        if (manager) {
+            if (managersCount == managers.length)
+                managers = Arrays.copyOf(managers, managersCount * 2);
+            managers[managersCount++] = id;
+        }
+
+        return new SnapshotRecord(
+                id,
+                created + id * 60_000L,
+                pick(FIRST_NAMES, FIRST_NAME_WEIGHTS),
+                pick(LAST_NAMES, LAST_NAME_WEIGHTS),
+                manager ? MANAGER_POSITIONS[Math.min(level, MANAGER_POSITIONS.length - 1)] : pick(POSITIONS, POSITION_WEIGHTS),
+                supervisorId);
+    }
+
+    @Override
+    public long getRows() {
+        return nextId - 1;
+    }
+
+    private long teamSize() {
+        return Math.max(1, Math.round(Math.exp(teamMu + TEAM_SIGMA * random.nextGaussian())));
+    }
+
+    private String pick(String[] values, double[] cumulativeWeights) {
+        int i = Arrays.binarySearch(cumulativeWeights, random.nextDouble());
+        return values[Math.min(i < 0 ? -i - 1 : i, values.length - 1)];
+    }
+
+    // cumulative, rank r has weight 1/r
+    private static double[] zipf(int n) {
+        double[] out = new double[n];
+        double sum = 0;
+        for (int r = 1; r <= n; r++)
+            out[r - 1] = sum += 1.0 / r;
+        for (int i = 0; i < n; i++)
+            out[i] /= sum;
+        return out;
+    }
+}
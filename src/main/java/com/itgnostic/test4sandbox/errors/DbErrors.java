@@ -13,9 +13,11 @@ public enum DbErrors {
     EMPLOYEE_CAN_NOT_BE_SUPERVISOR("Employee '%s' can not be a Supervisor for '%s'"),
     SUPERVISOR_NOT_FOUND("Not found Supervisor by id '%d'"),
     SUPERVISOR_SUBORDINATES_NOT_FOUND("Not found Subordinate by id '%d' for Supervisor '%s'"),
+    SUPERVISOR_IN_MOVED_SUBTREE("Supervisor '%d' is a subordinate of moved employees"),
     BAD_RESULT("Some result of operation is bad"),
     DB_ERROR("Error with database connection"),
     DB_SAVE_NEW_ERROR("Error with save new record"),
+    DB_IMPORT_ERROR("Error with import: %s"),
     NO_CHANGES("No changes");
 
     private String error;
@@ -3,7 +3,11 @@ package com.itgnostic.test4sandbox.errors;
 public enum RestApiErrors {
     BAD_PARAM("Param '%s' has bad value '%s'"),
     NO_PARAM("Not found param '%s'"),
-    NO_PARAM_VALUE("There is no value of param %s");
+    NO_PARAM_VALUE("There is no value of param %s"),
+    IDEMPOTENCY_KEY_REUSED("Idempotency-Key '%s' was already used for another request"),
+    TOO_MANY_REQUESTS("Too many requests to %s, retry later"),
+    OVERLOADED("Server is overloaded, retry later"),
+    SHARDED("%s is not available with sharded databases");
 
     private String error;
 
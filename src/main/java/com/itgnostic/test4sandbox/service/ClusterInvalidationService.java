@@ -0,0 +1,134 @@
+package com.itgnostic.test4sandbox.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.itgnostic.test4sandbox.db.entity.EmployeeChangeEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster mode (employee.cluster.*): several nodes share one database (H2 server mode, see application-cluster.yml).
+ * <p>
+ * The change log is the invalidation channel: every change is a row of employee_change with the employee
+ * id and its sequence number as the version, written in the transaction of the change itself. Each node
+ * polls the rows after the last one it has seen every {@code poll-interval} ms and drops what it keeps in
+ * process for them: entities of the main session, and, through {@link EmployeeChangeService#changed()},
+ * org stats, long-polling readers and SSE clients. A RESET (import, generate) drops everything.
+ * <p>
+ * A node sees its own changes too: the entities are read again once, nothing else is lost.
+ */
+@Slf4j
+@Service
+public class ClusterInvalidationService {
+    // changes per poll, more are read by the next one right away
+    private static final int POLL_LIMIT = 1000;
+
+    private final EmployeeService employeeService;
+    private final EmployeeChangeService changeService;
+    private final boolean enabled;
+    private final Counter invalidations;
+    private final Timer lag;
+
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("employee-cluster").setDaemon(true).build());
+    // only touched by the poller thread
+    private EmployeeChangeService.Cursor cursor;
+
+    public ClusterInvalidationService(EmployeeService employeeService,
+                                      EmployeeChangeService changeService,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${employee.cluster.enabled:false}") boolean enabled,
+                                      @Value("${employee.cluster.poll-interval:50}") long pollInterval,
+                                      @Value("${employee.write-behind.enabled:false}") boolean writeBehind) {
+        this.employeeService = employeeService;
+        this.changeService = changeService;
+        this.enabled = enabled;
+        this.invalidations = Counter.builder("employee.cluster.invalidations")
+                .description("Employees evicted after changes in the change log")
+                .register(meterRegistry);
+        this.lag = Timer.builder("employee.cluster.lag")
+                .description("From a commit to its eviction on this node")
+                .register(meterRegistry);
+
+        if (!enabled)
+            return;
+
+        // modifications pending in memory of one node can't be seen by the others
+        if (writeBehind)
+            throw new IllegalStateException("employee.write-behind and employee.cluster can't be enabled together");
+        // the change log polled is the one of shard 0
+        if (employeeService.isSharded())
+            throw new IllegalStateException("employee.shards and employee.cluster can't be enabled together");
+
+        cursor = changeService.cursorAtEnd();
+        poller.scheduleWithFixedDelay(this::pollQuietly, pollInterval, Math.max(1, pollInterval), TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+    }
+
+    /**
+     * Evicts the employees changed after the last poll.
+     *
+     * @return count of changes read
+     */
+    public int poll() {
+        // sequence numbers are taken at insert and committed in any order: a gap may fill in later
+        List<EmployeeChangeEntity> changes = new ArrayList<>(changeService.readLate(cursor));
+
+        List<EmployeeChangeEntity> next;
+        do {
+            next = changeService.readNext(cursor, POLL_LIMIT);
+            changes.addAll(next);
+        } while (next.size() == POLL_LIMIT);
+
+        if (changes.isEmpty())
+            return 0;
+
+        long now = System.currentTimeMillis();
+        Set<Long> ids = new HashSet<>();
+        boolean reset = false;
+        for (EmployeeChangeEntity change : changes) {
+            if (change.getOperation() == EmployeeChangeEntity.Operation.RESET)
+                reset = true;
+            else if (change.getEmployeeId() != null)
+                ids.add(change.getEmployeeId());
+
+            lag.record(Math.max(0, now - change.getChanged().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()), TimeUnit.MILLISECONDS);
+        }
+
+        if (reset)
+            employeeService.clearCache();
+        else
+            employeeService.evict(ids);
+
+        invalidations.increment(ids.size());
+        changeService.changed();
+        return changes.size();
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            // the next poll goes on from the last change evicted
+            log.error("Can't read changes of other nodes", e);
+        }
+    }
+}
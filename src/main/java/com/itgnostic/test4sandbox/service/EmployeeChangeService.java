@@ -0,0 +1,289 @@
+package com.itgnostic.test4sandbox.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.itgnostic.test4sandbox.db.entity.EmployeeChangeEntity;
+import jakarta.annotation.PreDestroy;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reads the change log (employee_change table, written by EmployeeDbServiceImpl in the same
+ * transaction as the change itself) and wakes up long-polling readers when it grows.
+ * <p>
+ * Sequence numbers are taken at insert and committed in any order: a number missing between two
+ * committed ones may still come. {@link #getChanges(long, int)} and {@link #getLastSeq()} don't go past
+ * such a gap, so a reader going on from the last seq it got loses nothing; readers with a {@link Cursor}
+ * of their own get the late changes out of order instead.
+ */
+@Service
+public class EmployeeChangeService {
+    // missing sequence numbers looked for again, a bigger jump is not a gap (identity cache after a restart)
+    public static final int MAX_GAP = 1000;
+    // not committed by then: rolled back
+    public static final long GAP_TIMEOUT_MS = 60_000;
+    private static final int SEQ_PAGE = 10_000;
+
+    private static final String CHANGES_QUERY =
+            "SELECT c FROM %s c WHERE c.seq > :since ORDER BY c.seq".formatted(EmployeeChangeEntity.class.getName());
+    private static final String COMMITTED_CHANGES_QUERY =
+            "SELECT c FROM %s c WHERE c.seq > :since AND c.seq <= :upTo ORDER BY c.seq".formatted(EmployeeChangeEntity.class.getName());
+    private static final String SEQS_QUERY =
+            "SELECT c.seq, c.changed FROM %s c WHERE c.seq > :since ORDER BY c.seq".formatted(EmployeeChangeEntity.class.getName());
+    private static final String SEQS_IN_QUERY =
+            "SELECT c.seq FROM %s c WHERE c.seq IN :seqs".formatted(EmployeeChangeEntity.class.getName());
+    private static final String CHANGES_BY_SEQ_QUERY =
+            "SELECT c FROM %s c WHERE c.seq IN :seqs ORDER BY c.seq".formatted(EmployeeChangeEntity.class.getName());
+    private static final String LAST_SEQ_QUERY =
+            "SELECT MAX(c.seq) FROM %s c".formatted(EmployeeChangeEntity.class.getName());
+
+    private final SessionFactory sessionFactory;
+    private final Set<CompletableFuture<Void>> waiters = ConcurrentHashMap.newKeySet();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService pollExecutor = Executors.newFixedThreadPool(2,
+            new ThreadFactoryBuilder().setNameFormat("employee-changes-%d").setDaemon(true).build());
+    // the log as far as it has no gaps, null - not read yet; guarded by this
+    private Cursor committed;
+
+    /**
+     * Position of a reader in the change log: the last sequence number read and the missing ones below it,
+     * looked for again until they come or {@link #GAP_TIMEOUT_MS} passes. Not thread-safe.
+     */
+    public static class Cursor {
+        private long lastSeq;
+        // missing sequence number -> ms it was found missing
+        private final NavigableMap<Long, Long> gaps = new TreeMap<>();
+
+        public Cursor(long lastSeq) {
+            this.lastSeq = lastSeq;
+        }
+
+        public Cursor(Cursor cursor) {
+            this.lastSeq = cursor.lastSeq;
+            this.gaps.putAll(cursor.gaps);
+        }
+
+        public long getLastSeq() {
+            return lastSeq;
+        }
+
+        // every change up to it is read or given up
+        public long getWatermark() {
+            return gaps.isEmpty() ? lastSeq : gaps.firstKey() - 1;
+        }
+
+        public boolean hasGaps() {
+            return !gaps.isEmpty();
+        }
+
+        public Set<Long> getGaps() {
+            return new HashSet<>(gaps.keySet());
+        }
+
+        /**
+         * A change read after the last one (in the order of seq) or a late one of a gap.
+         *
+         * @param seenAt ms the numbers skipped before it are found missing
+         * @return false - read before
+         */
+        public boolean read(long seq, long seenAt) {
+            if (seq <= lastSeq)
+                return gaps.remove(seq) != null;
+
+            if (seq - lastSeq <= MAX_GAP)
+                for (long missing = lastSeq + 1; missing < seq; missing++)
+                    gaps.put(missing, seenAt);
+            lastSeq = seq;
+            return true;
+        }
+
+        // gives up the numbers missing for longer than GAP_TIMEOUT_MS
+        public void expire(long now) {
+            gaps.values().removeIf(seenAt -> now - seenAt > GAP_TIMEOUT_MS);
+        }
+    }
+
+    public EmployeeChangeService(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    // changes after since as far as the log has no gaps
+    public List<EmployeeChangeEntity> getChanges(long since, int limit) {
+        long upTo = getLastSeq();
+        if (since >= upTo)
+            return List.of();
+
+        try (Session session = openSession()) {
+            return session.createQuery(COMMITTED_CHANGES_QUERY, EmployeeChangeEntity.class)
+                    .setParameter("since", since)
+                    .setParameter("upTo", upTo)
+                    .setMaxResults(limit)
+                    .getResultList();
+        }
+    }
+
+    public List<EmployeeChangeEntity> getChanges(Collection<Long> seqs) {
+        if (seqs.isEmpty())
+            return List.of();
+
+        try (Session session = openSession()) {
+            return session.createQuery(CHANGES_BY_SEQ_QUERY, EmployeeChangeEntity.class)
+                    .setParameter("seqs", seqs)
+                    .getResultList();
+        }
+    }
+
+    /**
+     * Last sequence number with no gap below it: changes up to it are committed or rolled back.
+     */
+    public synchronized long getLastSeq() {
+        long now = System.currentTimeMillis();
+
+        try (Session session = openSession()) {
+            if (committed == null) {
+                committed = cursorAtEnd(session, now);
+                return committed.getWatermark();
+            }
+
+            if (committed.hasGaps()) {
+                session.createQuery(SEQS_IN_QUERY, Long.class)
+                        .setParameter("seqs", committed.getGaps())
+                        .getResultList()
+                        .forEach(seq -> committed.read(seq, now));
+                committed.expire(now);
+            }
+
+            List<Object[]> next;
+            do {
+                next = getSeqs(session, committed.getLastSeq());
+                next.forEach(row -> committed.read((Long) row[0], now));
+            } while (next.size() == SEQ_PAGE);
+        }
+
+        return committed.getWatermark();
+    }
+
+    /**
+     * A cursor after the last change, with the gaps of the last {@link #MAX_GAP} numbers that may still
+     * be filled.
+     */
+    public Cursor cursorAtEnd() {
+        try (Session session = openSession()) {
+            return cursorAtEnd(session);
+        }
+    }
+
+    // same, in a session of the caller
+    public static Cursor cursorAtEnd(Session session) {
+        return cursorAtEnd(session, System.currentTimeMillis());
+    }
+
+    // late changes of the gaps of the cursor
+    public List<EmployeeChangeEntity> readLate(Cursor cursor) {
+        if (!cursor.hasGaps())
+            return List.of();
+
+        long now = System.currentTimeMillis();
+        List<EmployeeChangeEntity> out = getChanges(cursor.getGaps()).stream()
+                .filter(late -> cursor.read(late.getSeq(), now))
+                .toList();
+        cursor.expire(now);
+        return out;
+    }
+
+    // up to limit changes after the last one of the cursor
+    public List<EmployeeChangeEntity> readNext(Cursor cursor, int limit) {
+        long now = System.currentTimeMillis();
+
+        try (Session session = openSession()) {
+            return session.createQuery(CHANGES_QUERY, EmployeeChangeEntity.class)
+                    .setParameter("since", cursor.getLastSeq())
+                    .setMaxResults(limit)
+                    .getResultList()
+                    .stream()
+                    .filter(change -> cursor.read(change.getSeq(), now))
+                    .toList();
+        }
+    }
+
+    // a gap found long after its neighbours were written is as old as them: gaps from before GAP_TIMEOUT_MS are dropped at once
+    private static Cursor cursorAtEnd(Session session, long now) {
+        Long last = session.createQuery(LAST_SEQ_QUERY, Long.class).getSingleResult();
+        Cursor out = new Cursor(Math.max(0, (last == null ? 0 : last) - MAX_GAP));
+
+        List<Object[]> rows;
+        do {
+            rows = getSeqs(session, out.getLastSeq());
+            rows.forEach(row -> out.read((Long) row[0], toMillis((LocalDateTime) row[1])));
+        } while (rows.size() == SEQ_PAGE);
+
+        out.expire(now);
+        return out;
+    }
+
+    // {seq, changed}
+    private static List<Object[]> getSeqs(Session session, long since) {
+        return session.createQuery(SEQS_QUERY, Object[].class)
+                .setParameter("since", since)
+                .setMaxResults(SEQ_PAGE)
+                .getResultList();
+    }
+
+    private static long toMillis(LocalDateTime changed) {
+        return changed.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private Session openSession() {
+        Session session = sessionFactory.openSession();
+        session.setDefaultReadOnly(true);
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        return session;
+    }
+
+    /**
+     * Changes after {@code since}; if there are none yet, waits up to {@code waitMs} for new ones.
+     * No request thread is held while waiting.
+     */
+    public CompletableFuture<List<EmployeeChangeEntity>> waitChanges(long since, int limit, long waitMs) {
+        // register before reading, so a change committed right after the read still wakes us up
+        CompletableFuture<Void> signal = new CompletableFuture<>();
+        waiters.add(signal);
+
+        List<EmployeeChangeEntity> changes = getChanges(since, limit);
+        if (!changes.isEmpty() || waitMs <= 0) {
+            waiters.remove(signal);
+            return CompletableFuture.completedFuture(changes);
+        }
+
+        return signal
+                .completeOnTimeout(null, waitMs, TimeUnit.MILLISECONDS)
+                .whenComplete((v, e) -> waiters.remove(signal))
+                .thenApplyAsync(v -> getChanges(since, limit), pollExecutor);
+    }
+
+    // called after a change was committed
+    public void changed() {
+        for (CompletableFuture<Void> waiter : waiters) {
+            waiters.remove(waiter);
+            waiter.complete(null);
+        }
+
+        listeners.forEach(Runnable::run);
+    }
+
+    // listener runs on the caller thread of changed(), so it must only hand the work over
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pollExecutor.shutdownNow();
+    }
+}
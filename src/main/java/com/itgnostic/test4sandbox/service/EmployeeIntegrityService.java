@@ -0,0 +1,631 @@
+package com.itgnostic.test4sandbox.service;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.itgnostic.test4sandbox.db.dao.impl.EmployeeDbServiceImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.itgnostic.test4sandbox.common.Const.DB_CHANGES_TABLE_NAME;
+import static com.itgnostic.test4sandbox.common.Const.DB_TABLE_NAME;
+import static com.itgnostic.test4sandbox.utils.HibernateUtils.setLazyQueryExecution;
+
+/**
+ * Org-tree integrity check and repair.
+ * <p>
+ * SUPERVISOR is the source of truth: SUBORDINATES, PATH, DEPTH and TOTAL_SUBORDINATES are derived from it
+ * by separate writes and can drift. One scan (ScrollableResults of a stateless session, a bounded number
+ * of rows in memory) reads every employee with its supervisor's row and the employees pointing at it;
+ * chunks of rows are checked on a fork-join pool while the scan goes on. Cycles are looked for by walking
+ * up from employees with a missing or wrong path, every cycle has at least one of them.
+ * <p>
+ * Repair, in transactions of {@code batch-size} employees: a supervisor that doesn't exist and one
+ * supervisor in every cycle are dropped (the employee becomes a root), SUBORDINATES are rebuilt from
+ * SUPERVISOR, then paths and totals of the whole table are rebuilt if any of them was wrong.
+ * Progress and results are under /actuator/integrity and the employee.integrity.* meters.
+ * <p>
+ * The scan and the repairs are of one database: with employee.shards a check fails right away.
+ */
+@Slf4j
+@Service
+public class EmployeeIntegrityService {
+    private static final String COUNT = "SELECT COUNT(*) FROM %s".formatted(DB_TABLE_NAME);
+    // one statement: a consistent snapshot of the table
+    private static final String SCAN = ("SELECT e.ID, e.SUPERVISOR, e.SUBORDINATES, e.PATH, e.DEPTH, e.TOTAL_SUBORDINATES, "
+            + "p.ID, p.PATH, p.DEPTH, "
+            + "(SELECT ARRAY_AGG(s.ID ORDER BY s.ID) FROM %1$s s WHERE s.SUPERVISOR = e.ID), "
+            + "(SELECT SUM(s.TOTAL_SUBORDINATES + 1) FROM %1$s s WHERE s.SUPERVISOR = e.ID) "
+            + "FROM %1$s e LEFT JOIN %1$s p ON p.ID = e.SUPERVISOR ORDER BY e.ID").formatted(DB_TABLE_NAME);
+    private static final String SUPERVISOR_OF = "SELECT SUPERVISOR FROM %s WHERE ID = ?".formatted(DB_TABLE_NAME);
+    // repairs only change rows still in the state the scan found them in
+    private static final String DROP_DANGLING = ("UPDATE %1$s e SET SUPERVISOR = NULL WHERE e.ID = ? "
+            + "AND NOT EXISTS (SELECT 1 FROM %1$s p WHERE p.ID = e.SUPERVISOR)").formatted(DB_TABLE_NAME);
+    private static final String BREAK_CYCLE = "UPDATE %s SET SUPERVISOR = NULL WHERE ID = ? AND SUPERVISOR = ?".formatted(DB_TABLE_NAME);
+    private static final String REBUILD_SUBORDINATES = ("UPDATE %1$s e SET SUBORDINATES = "
+            + "COALESCE((SELECT ARRAY_AGG(s.ID ORDER BY s.ID) FROM %1$s s WHERE s.SUPERVISOR = e.ID), ARRAY[]) "
+            + "WHERE e.ID = ?").formatted(DB_TABLE_NAME);
+    private static final String LOG_CHANGE = ("INSERT INTO %s (EMPLOYEE_ID, OPERATION, FIELDS, CHANGED_DATE) "
+            + "VALUES (?, 'MODIFY', ?, CURRENT_TIMESTAMP)").formatted(DB_CHANGES_TABLE_NAME);
+    private static final int FETCH_SIZE = 10_000;
+    // ids kept per problem, the rest is left for the next run
+    private static final int MAX_IDS = 100_000;
+    private static final int SAMPLE_SIZE = 20;
+    // rows of a chunk checked by one fork-join task
+    private static final int SPLIT_THRESHOLD = 512;
+
+    public enum Problem {
+        // SUBORDINATES differ from the employees whose SUPERVISOR points at the employee
+        SUBORDINATES("subordinates"),
+        // SUPERVISOR points at no employee
+        DANGLING_SUPERVISOR("dangling-supervisor"),
+        // following SUPERVISOR comes back to the employee, counted per cycle
+        CYCLE("cycle"),
+        // PATH or DEPTH not derived from the supervisor's ones
+        PATH("path"),
+        // TOTAL_SUBORDINATES not the sum over direct subordinates
+        TOTAL("total");
+
+        private final String param;
+
+        Problem(String param) {
+            this.param = param;
+        }
+
+        public String getParam() {
+            return param;
+        }
+    }
+
+    private final SessionFactory sessionFactory;
+    private final EmployeeService employeeService;
+    private final EmployeeChangeService changeService;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final boolean scheduledRepair;
+    private final int chunkSize;
+    private final int batchSize;
+    private final int parallelism;
+    private final Timer duration;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("employee-integrity").setDaemon(true).build());
+    // the running one or the last finished
+    private volatile Report report;
+
+    public EmployeeIntegrityService(SessionFactory sessionFactory,
+                                    EmployeeService employeeService,
+                                    EmployeeChangeService changeService,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${employee.integrity.enabled:false}") boolean enabled,
+                                    @Value("${employee.integrity.repair:false}") boolean scheduledRepair,
+                                    @Value("${employee.integrity.chunk-size:2000}") int chunkSize,
+                                    @Value("${employee.integrity.batch-size:1000}") int batchSize,
+                                    @Value("${employee.integrity.parallelism:0}") int parallelism) {
+        this.sessionFactory = sessionFactory;
+        this.employeeService = employeeService;
+        this.changeService = changeService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.scheduledRepair = scheduledRepair;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+
+        // the table scanned and repaired is the one of shard 0
+        if (enabled && employeeService.isSharded())
+            throw new IllegalStateException("employee.shards and employee.integrity can't be enabled together");
+
+        Gauge.builder("employee.integrity.running", running, r -> r.get() ? 1 : 0)
+                .description("1 while an integrity check or repair runs")
+                .register(meterRegistry);
+        Gauge.builder("employee.integrity.checked", this, s -> s.report == null ? 0 : s.report.checked.get())
+                .description("Employees checked by the running or the last integrity check")
+                .register(meterRegistry);
+        Gauge.builder("employee.integrity.rows", this, s -> s.report == null ? 0 : s.report.rows)
+                .description("Employees in the table when the running or the last integrity check started")
+                .register(meterRegistry);
+        for (Problem problem : Problem.values()) {
+            Gauge.builder("employee.integrity.problems", this, s -> s.report == null ? 0 : s.report.getCount(problem))
+                    .description("Problems found by the running or the last integrity check")
+                    .tag("type", problem.getParam())
+                    .register(meterRegistry);
+        }
+        this.duration = Timer.builder("employee.integrity.duration")
+                .description("Integrity check and repair runs")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public Report getReport() {
+        return report;
+    }
+
+    /**
+     * Starts a check in the background, or returns the running one.
+     *
+     * @param repair fix the problems found
+     */
+    public Report start(boolean repair) {
+        if (employeeService.isSharded()) {
+            Report out = new Report(repair);
+            out.state = "failed";
+            out.error = "Integrity checks of a sharded database are not supported";
+            out.finished = System.currentTimeMillis();
+            return out;
+        }
+
+        if (!running.compareAndSet(false, true))
+            return report;
+
+        Report out = new Report(repair);
+        report = out;
+
+        try {
+            executor.execute(() -> run(out));
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            throw e;
+        }
+
+        return out;
+    }
+
+    @Scheduled(initialDelayString = "${employee.integrity.interval:86400000}",
+            fixedDelayString = "${employee.integrity.interval:86400000}")
+    public void checkOnSchedule() {
+        if (enabled)
+            start(scheduledRepair);
+    }
+
+    private void run(Report report) {
+        long start = System.nanoTime();
+        try {
+            check(report);
+
+            if (report.repair && report.hasProblems()) {
+                report.state = "repairing";
+                repair(report);
+            }
+
+            report.state = "done";
+            if (report.hasProblems())
+                log.warn("Employee integrity problems: {}", report.toMap());
+            else
+                log.info("Employee integrity check of {} employees found no problems", report.checked.get());
+        } catch (RuntimeException | InterruptedException | ExecutionException e) {
+            report.state = "failed";
+            report.error = String.valueOf(e.getMessage());
+            log.error("Employee integrity check failed", e);
+
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+        } finally {
+            report.finished = System.currentTimeMillis();
+            duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            running.set(false);
+        }
+    }
+
+    private void check(Report report) throws InterruptedException, ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            report.rows = session.doReturningWork(connection -> {
+                try (PreparedStatement count = connection.prepareStatement(COUNT);
+                     ResultSet rs = count.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            });
+
+            // H2 builds a whole result before the first row, a lazy one is read from the table as it goes
+            session.doWork(connection -> setLazyQueryExecution(connection, true));
+
+            // a few chunks ahead of the checks at most: memory doesn't grow with the table
+            Deque<ForkJoinTask<Void>> inFlight = new ArrayDeque<>();
+            try (ScrollableResults<Object[]> rows = session.createNativeQuery(SCAN, Object[].class)
+                    .setFetchSize(FETCH_SIZE)
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                List<Object[]> chunk = new ArrayList<>(chunkSize);
+
+                while (rows.next()) {
+                    chunk.add(rows.get());
+
+                    if (chunk.size() == chunkSize) {
+                        inFlight.add(pool.submit(new CheckAction(chunk, 0, chunk.size(), report)));
+                        chunk = new ArrayList<>(chunkSize);
+
+                        while (inFlight.size() > parallelism * 2)
+                            inFlight.poll().get();
+                    }
+                }
+
+                if (!chunk.isEmpty())
+                    inFlight.add(pool.submit(new CheckAction(chunk, 0, chunk.size(), report)));
+                for (ForkJoinTask<Void> task : inFlight)
+                    task.get();
+            } finally {
+                // the connection goes back to the pool
+                session.doWork(connection -> setLazyQueryExecution(connection, false));
+            }
+
+            session.doWork(connection -> findCycles(connection, report));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void check(Object[] row, Report report) {
+        long id = ((Number) row[0]).longValue();
+        Long supervisor = toLong(row[1]);
+        long[] subordinates = toIds(row[2]);
+        String path = (String) row[3];
+        Integer depth = row[4] == null ? null : ((Number) row[4]).intValue();
+        Long total = toLong(row[5]);
+        boolean supervisorExists = row[6] != null;
+        String supervisorPath = (String) row[7];
+        Integer supervisorDepth = row[8] == null ? null : ((Number) row[8]).intValue();
+        long[] actual = toIds(row[9]);
+        long size = row[10] == null ? 0 : ((Number) row[10]).longValue();
+
+        Arrays.sort(subordinates);
+        if (!Arrays.equals(subordinates, actual))
+            report.add(Problem.SUBORDINATES, id);
+
+        if (supervisor != null && !supervisorExists)
+            report.add(Problem.DANGLING_SUPERVISOR, id);
+
+        String expectedPath = null;
+        Integer expectedDepth = null;
+        if (supervisor == null) {
+            expectedPath = "/" + id + "/";
+            expectedDepth = 0;
+        } else if (supervisorExists && supervisorPath != null) {
+            expectedPath = supervisorPath + id + "/";
+            expectedDepth = supervisorDepth + 1;
+        }
+
+        boolean pathMatches = Objects.equals(path, expectedPath);
+        if (!pathMatches || !Objects.equals(depth, expectedDepth))
+            report.add(Problem.PATH, id);
+
+        // not reachable from a root or a path that can't be right: the supervisor chain is walked later
+        if (supervisor != null && supervisorExists && (expectedPath == null || !pathMatches))
+            report.addSuspect(id);
+
+        if (path != null && (total == null || total != size))
+            report.add(Problem.TOTAL, id);
+    }
+
+    // walks up from every suspect; employees already walked through are not walked again
+    private static void findCycles(Connection connection, Report report) throws SQLException {
+        Set<Long> walked = new HashSet<>();
+
+        try (PreparedStatement select = connection.prepareStatement(SUPERVISOR_OF)) {
+            for (Long start : report.suspects) {
+                List<Long> chain = new ArrayList<>();
+                Map<Long, Integer> positions = new HashMap<>();
+                Long current = start;
+
+                while (current != null && !walked.contains(current)) {
+                    Integer position = positions.get(current);
+                    if (position != null) {
+                        report.addCycle(List.copyOf(chain.subList(position, chain.size())));
+                        break;
+                    }
+
+                    positions.put(current, chain.size());
+                    chain.add(current);
+
+                    select.setLong(1, current);
+                    try (ResultSet rs = select.executeQuery()) {
+                        current = rs.next() ? rs.getObject(1, Long.class) : null;
+                    }
+                }
+
+                walked.addAll(chain);
+            }
+        }
+    }
+
+    private void repair(Report report) {
+        Set<Long> rebuild = new TreeSet<>(report.ids.get(Problem.SUBORDINATES));
+
+        try (Session session = sessionFactory.openSession()) {
+            long dropped = inBatches(session, List.copyOf(report.ids.get(Problem.DANGLING_SUPERVISOR)), (connection, batch) -> {
+                try (PreparedStatement drop = connection.prepareStatement(DROP_DANGLING)) {
+                    for (Long id : batch) {
+                        drop.setLong(1, id);
+                        drop.addBatch();
+                    }
+
+                    return logChanged(connection, batch, drop.executeBatch(), "supervisor");
+                }
+            });
+            repaired(report, Problem.DANGLING_SUPERVISOR, dropped);
+
+            // every cycle loses the supervisor of its smallest id, that supervisor loses a subordinate
+            List<long[]> breaks = new ArrayList<>();
+            for (List<Long> cycle : report.cycles) {
+                int smallest = cycle.indexOf(Collections.min(cycle));
+                long supervisor = cycle.get((smallest + 1) % cycle.size());
+                breaks.add(new long[] {cycle.get(smallest), supervisor});
+                rebuild.add(supervisor);
+            }
+
+            long broken = inBatches(session, breaks, (connection, batch) -> {
+                try (PreparedStatement breakCycle = connection.prepareStatement(BREAK_CYCLE)) {
+                    for (long[] b : batch) {
+                        breakCycle.setLong(1, b[0]);
+                        breakCycle.setLong(2, b[1]);
+                        breakCycle.addBatch();
+                    }
+
+                    return logChanged(connection, batch.stream().map(b -> b[0]).toList(), breakCycle.executeBatch(), "supervisor");
+                }
+            });
+            repaired(report, Problem.CYCLE, broken);
+
+            long rebuilt = inBatches(session, List.copyOf(rebuild), (connection, batch) -> {
+                try (PreparedStatement update = connection.prepareStatement(REBUILD_SUBORDINATES)) {
+                    for (Long id : batch) {
+                        update.setLong(1, id);
+                        update.addBatch();
+                    }
+
+                    return logChanged(connection, batch, update.executeBatch(), "subordinates");
+                }
+            });
+            repaired(report, Problem.SUBORDINATES, rebuilt);
+
+            // paths and totals follow from the supervisors of the whole tree
+            if (dropped + broken > 0 || report.getCount(Problem.PATH) > 0 || report.getCount(Problem.TOTAL) > 0) {
+                inTransaction(session, EmployeeDbServiceImpl::rebuildPaths);
+                repaired(report, Problem.PATH, report.getCount(Problem.PATH));
+                repaired(report, Problem.TOTAL, report.getCount(Problem.TOTAL));
+            }
+        } finally {
+            // entities cached by the main session may be older than the repaired rows
+            employeeService.clearCache();
+            changeService.changed();
+        }
+    }
+
+    // every batch of items in its own transaction
+    private <T> long inBatches(Session session, List<T> items, BatchWork<T> work) {
+        long out = 0;
+        for (List<T> batch : Lists.partition(items, batchSize))
+            out += inTransaction(session, connection -> work.execute(connection, batch));
+
+        return out;
+    }
+
+    private static long inTransaction(Session session, ReturningWork<Long> work) {
+        Transaction transaction = session.beginTransaction();
+        try {
+            long out = session.doReturningWork(work);
+            transaction.commit();
+            return out;
+        } catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        }
+    }
+
+    private void repaired(Report report, Problem problem, long count) {
+        if (count == 0)
+            return;
+
+        report.repaired.put(problem, count);
+        Counter.builder("employee.integrity.repaired")
+                .description("Problems fixed by integrity repairs")
+                .tag("type", problem.getParam())
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    // change log entries for the rows a batch has changed
+    private static long logChanged(Connection connection, List<Long> ids, int[] counts, String fields) throws SQLException {
+        long out = 0;
+
+        try (PreparedStatement log = connection.prepareStatement(LOG_CHANGE)) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] <= 0)
+                    continue;
+
+                log.setLong(1, ids.get(i));
+                log.setString(2, fields);
+                log.addBatch();
+                out++;
+            }
+
+            if (out > 0)
+                log.executeBatch();
+        }
+
+        return out;
+    }
+
+    private static Long toLong(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    private static long[] toIds(Object value) {
+        if (value == null)
+            return new long[0];
+
+        Object[] array = value instanceof Object[] objects ? objects : ((Collection<?>) value).toArray();
+        long[] out = new long[array.length];
+        for (int i = 0; i < array.length; i++)
+            out[i] = ((Number) array[i]).longValue();
+
+        return out;
+    }
+
+    @FunctionalInterface
+    private interface BatchWork<T> {
+        long execute(Connection connection, List<T> batch) throws SQLException;
+    }
+
+    // rows of one chunk, split in halves down to SPLIT_THRESHOLD rows
+    private static class CheckAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Object[]> rows;
+        private final int from;
+        private final int to;
+        private final Report report;
+
+        CheckAction(List<Object[]> rows, int from, int to, Report report) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++)
+                    check(rows.get(i), report);
+                report.checked.addAndGet(to - from);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new CheckAction(rows, from, middle, report), new CheckAction(rows, middle, to, report));
+        }
+    }
+
+    /**
+     * Progress and findings of one run, updated by the check threads while it goes on.
+     */
+    public static class Report {
+        private final boolean repair;
+        private final long started = System.currentTimeMillis();
+        private final AtomicLong checked = new AtomicLong();
+        private final Map<Problem, LongAdder> counts = new EnumMap<>(Problem.class);
+        private final Map<Problem, Queue<Long>> ids = new EnumMap<>(Problem.class);
+        private final Queue<Long> suspects = new ConcurrentLinkedQueue<>();
+        private final AtomicLong suspectCount = new AtomicLong();
+        private final List<List<Long>> cycles = new ArrayList<>();
+        private final Map<Problem, Long> repaired = new ConcurrentHashMap<>();
+        private volatile long rows;
+        private volatile String state = "running";
+        private volatile long finished;
+        private volatile String error;
+
+        Report(boolean repair) {
+            this.repair = repair;
+
+            for (Problem problem : Problem.values()) {
+                counts.put(problem, new LongAdder());
+                ids.put(problem, new ConcurrentLinkedQueue<>());
+            }
+        }
+
+        public long getCount(Problem problem) {
+            return counts.get(problem).sum();
+        }
+
+        public boolean hasProblems() {
+            return counts.values().stream().anyMatch(c -> c.sum() > 0);
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> problems = new LinkedHashMap<>();
+            Map<String, Object> samples = new LinkedHashMap<>();
+            List<String> truncated = new ArrayList<>();
+
+            for (Problem problem : Problem.values()) {
+                long count = getCount(problem);
+                problems.put(problem.getParam(), count);
+
+                if (problem == Problem.CYCLE) {
+                    synchronized (cycles) {
+                        if (!cycles.isEmpty())
+                            samples.put(problem.getParam(), cycles.stream().limit(SAMPLE_SIZE).toList());
+                    }
+                } else if (count > 0) {
+                    samples.put(problem.getParam(), ids.get(problem).stream().limit(SAMPLE_SIZE).toList());
+                    if (count > MAX_IDS)
+                        truncated.add(problem.getParam());
+                }
+            }
+            if (suspectCount.get() > MAX_IDS)
+                truncated.add("cycle");
+
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("state", state);
+            out.put("repair", repair);
+            out.put("started", Instant.ofEpochMilli(started).toString());
+            if (finished > 0) {
+                out.put("finished", Instant.ofEpochMilli(finished).toString());
+                out.put("millis", finished - started);
+            }
+            out.put("rows", rows);
+            out.put("checked", checked.get());
+            out.put("problems", problems);
+            out.put("samples", samples);
+            // only the first ids of these were kept: the next run finds the rest
+            out.put("truncated", truncated);
+            Map<String, Object> fixed = new LinkedHashMap<>();
+            repaired.forEach((problem, count) -> fixed.put(problem.getParam(), count));
+            out.put("repaired", fixed);
+            if (error != null)
+                out.put("error", error);
+
+            return out;
+        }
+
+        private void add(Problem problem, long id) {
+            counts.get(problem).increment();
+            // over MAX_IDS a few more may get in from concurrent checks
+            if (counts.get(problem).sum() <= MAX_IDS)
+                ids.get(problem).add(id);
+        }
+
+        private void addSuspect(long id) {
+            if (suspectCount.incrementAndGet() <= MAX_IDS)
+                suspects.add(id);
+        }
+
+        // cycles are found by one thread, only read concurrently
+        private void addCycle(List<Long> cycle) {
+            synchronized (cycles) {
+                cycles.add(cycle);
+            }
+            counts.get(Problem.CYCLE).increment();
+        }
+    }
+}
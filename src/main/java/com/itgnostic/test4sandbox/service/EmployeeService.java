@@ -2,20 +2,29 @@ package com.itgnostic.test4sandbox.service;
 
 import com.google.common.collect.Sets;
 import com.itgnostic.test4sandbox.db.dao.EmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.EmployeeDbService.DeleteMode;
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
 import com.itgnostic.test4sandbox.db.dao.impl.EmployeeDbServiceImpl;
+import com.itgnostic.test4sandbox.db.dao.impl.ReadRoutingEmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.impl.ShardedEmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.impl.TracingEmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.impl.WriteBehindEmployeeDbService;
 import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import com.itgnostic.test4sandbox.db.replica.EmployeeReplica;
+import com.itgnostic.test4sandbox.db.shard.EmployeeShards;
 import com.itgnostic.test4sandbox.errors.RestApiErrors;
 import com.itgnostic.test4sandbox.errors.ValueErrors;
+import com.itgnostic.test4sandbox.trace.EmployeeTracing;
+import com.itgnostic.test4sandbox.trace.HierarchyFixupEvent;
 import com.itgnostic.test4sandbox.utils.EmployeeUtils;
-import com.itgnostic.test4sandbox.utils.HibernateUtils;
+import jakarta.annotation.PreDestroy;
 import lombok.NonNull;
 import org.h2.util.StringUtils;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Objects;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import static com.itgnostic.test4sandbox.errors.DbErrors.*;
@@ -23,10 +32,59 @@ import static com.itgnostic.test4sandbox.errors.DbErrors.*;
 @Service
 public class EmployeeService {
     EmployeeDbService employeeDbService;
+    private final EmployeeChangeService changeService;
+    private final boolean sharded;
+    // modifications are saved by the flusher, which tells the change service after the commit
+    private final boolean writeBehind;
+
+
+    public EmployeeService(SessionFactory sessionFactory,
+                           EmployeeChangeService changeService,
+                           EmployeeReplica replica,
+                           EmployeeShards shards,
+                           EmployeeTracing tracing,
+                           @Value("${employee.list.chunk-size:500}") int listChunkSize,
+                           @Value("${employee.list.parallelism:4}") int listParallelism,
+                           @Value("${employee.write-behind.enabled:false}") boolean writeBehind,
+                           @Value("${employee.write-behind.interval:200}") long writeBehindInterval,
+                           @Value("${employee.write-behind.batch-size:500}") int writeBehindBatchSize,
+                           @Value("${employee.write-behind.max-pending:5000}") int writeBehindMaxPending) {
+        // replica reads would miss modifications pending in memory
+        if (writeBehind && replica.isEnabled())
+            throw new IllegalStateException("employee.write-behind and employee.replica can't be enabled together");
+        // both keep one database in step with the primary one
+        if (shards.isSharded() && (writeBehind || replica.isEnabled()))
+            throw new IllegalStateException("employee.shards can't be used with employee.write-behind or employee.replica");
+
+        EmployeeDbServiceImpl dbService = new EmployeeDbServiceImpl(sessionFactory.openSession(), listChunkSize, listParallelism);
+        if (shards.isSharded())
+            employeeDbService = new ShardedEmployeeDbService(shards.getSessionFactories().stream()
+                    .map(shard -> shard == sessionFactory ? dbService
+                            : new EmployeeDbServiceImpl(shard.openSession(), listChunkSize, listParallelism))
+                    .toList());
+        else if (writeBehind)
+            employeeDbService = new WriteBehindEmployeeDbService(dbService, writeBehindInterval, writeBehindBatchSize, writeBehindMaxPending, changeService::changed);
+        else if (replica.isEnabled())
+            employeeDbService = new ReadRoutingEmployeeDbService(dbService,
+                    new EmployeeDbServiceImpl(replica.getSessionFactory().openSession(), listChunkSize, listParallelism), replica);
+        else
+            employeeDbService = dbService;
+
+        // spans of sampled requests and flight recorder events, each a check when off
+        employeeDbService = new TracingEmployeeDbService(employeeDbService, tracing);
+        this.sharded = shards.isSharded();
+        this.writeBehind = writeBehind;
+        this.changeService = changeService;
+    }
 
+    public boolean isSharded() {
+        return sharded;
+    }
 
-    public EmployeeService() {
-        employeeDbService = new EmployeeDbServiceImpl(HibernateUtils.getSessionFactory().openSession());
+    // saves pending write-behind modifications, stops the threads of the database layer
+    @PreDestroy
+    public void shutdown() {
+        employeeDbService.close();
     }
 
     public OperationResult add(String firstName, String lastName, String position, Long supervisor) {
@@ -45,11 +103,14 @@ public class EmployeeService {
         if (newId == null)
             out.addError(DB_SAVE_NEW_ERROR);
         else
-            out.addResult(employeeDbService.get(newId), this);
+            out.addResult(employeeDbService.getView(newId));
 
         if (newId != null && supervisor != null)
             addOrRemoveSubForSupervisor(supervisor, newId, false);
 
+        if (newId != null)
+            changeService.changed();
+
         return out;
     }
 
@@ -64,11 +125,11 @@ public class EmployeeService {
             return out;
         }
 
-        EmployeeEntity e = employeeDbService.get(id);
+        EmployeeView e = employeeDbService.getView(id);
         if (e == null)
             out.addError(EMPLOYEE_NOT_FOUND.getErrorText().formatted(id));
         else
-            out.addResult(e, this);
+            out.addResult(e);
 
         return out;
     }
@@ -80,47 +141,41 @@ public class EmployeeService {
             out.addError(RestApiErrors.BAD_PARAM.getErrorText().formatted("page", page));
         if (lim < 1)
             out.addError(RestApiErrors.BAD_PARAM.getErrorText().formatted("limit", lim));
+        // every shard reads the rows of all pages before
+        else if (sharded && !ShardedEmployeeDbService.isPageAllowed(page, lim))
+            out.addError(RestApiErrors.BAD_PARAM.getErrorText().formatted("page", page));
 
         if (out.hasErrors())
             return out;
 
-        List<EmployeeEntity> eList = employeeDbService.get(page, lim);
+        List<EmployeeView> eList = employeeDbService.get(page, lim);
         if (eList == null)
             out.addError(DB_ERROR);
         else if (eList.isEmpty())
             out.addError(EMPLOYEE_GET_LIMITS.getErrorText().formatted(page, lim));
         else
-            out.addResult(eList, this);
+            out.addResult(eList);
 
         return out;
     }
 
     public OperationResult del(long id) {
-        OperationResult out = new OperationResult();
-        EmployeeEntity deleteEntity = employeeDbService.get(id);
-
-        if (deleteEntity == null)
-            out.addError(EMPLOYEE_NOT_FOUND.getErrorText().formatted(id));
-
-        return out.hasErrors()
-                ? out
-                : del(deleteEntity);
+        return del(id, DeleteMode.ORPHAN);
     }
 
-    public OperationResult del(EmployeeEntity e) {
+    public OperationResult del(long id, DeleteMode mode) {
         OperationResult out = new OperationResult();
-        if (e.getId() == null) {
-            out.addError(ID_IS_NULL);
-            return out;
-        }
+        Long deleted = employeeDbService.del(id, mode);
 
-        if (e.getSupervisor() != null)
-            addOrRemoveSubForSupervisor(e.getSupervisor(), e.getId(), true);
-
-        if (!e.getSubordinates().isEmpty())
-            addOrRemoveSupervisorFor(e.getId(), e.getSubordinates(), true);
+        if (deleted == null)
+            out.addError(DB_ERROR);
+        else if (deleted == 0)
+            out.addError(EMPLOYEE_NOT_FOUND.getErrorText().formatted(id));
+        else {
+            out.addResult(deleted);
+            changeService.changed();
+        }
 
-        out.addResult(employeeDbService.del(e));
         return out;
     }
 
@@ -133,6 +188,9 @@ public class EmployeeService {
 
         if (editEntity == null)
             out.addError(EMPLOYEE_NOT_FOUND.getErrorText().formatted(id));
+        else if (newSupervisor != null && checkAllSubordinates(editEntity, newSupervisor))
+            out.addError(EMPLOYEE_CAN_NOT_BE_SUPERVISOR.getErrorText().formatted(
+                    EmployeeUtils.getFullName(employeeDbService.get(newSupervisor)), EmployeeUtils.getFullName(editEntity)));
 
         if (out.hasErrors())
             return out;
@@ -156,7 +214,7 @@ public class EmployeeService {
                         addOrRemoveSubForSupervisor(resultEntity.getSupervisor(), resultEntity.getId(), false);
                 }
 
-                if (Objects.equals(oldSubordinates, resultEntity.getSubordinates())) {
+                if (!Objects.equals(oldSubordinates, resultEntity.getSubordinates())) {
                     addOrRemoveSupervisorFor(resultEntity.getId(), Sets.difference(oldSubordinates, resultEntity.getSubordinates()), true);
                     addOrRemoveSupervisorFor(resultEntity.getId(), Sets.difference(resultEntity.getSubordinates(), oldSubordinates), false);
                 }
@@ -169,6 +227,8 @@ public class EmployeeService {
                                     editEntity.clone(), newFirstName, newLastName, newPosition, newSupervisor, newSubordinates)),
                    this
             );
+            if (!writeBehind)
+                changeService.changed();
         }
         else
             out.addError(NO_CHANGES);
@@ -184,13 +244,13 @@ public class EmployeeService {
             return out;
         }
 
-        Set<Long> resultIds = ids.parallelStream().filter(Objects::nonNull).collect(Collectors.toSet());
+        Set<Long> resultIds = ids.stream().filter(Objects::nonNull).collect(Collectors.toCollection(LinkedHashSet::new));
         if (resultIds.isEmpty()) {
             out.addError(ValueErrors.ID_LIST_IS_NULL_OR_EMPTY.getErrorText());
             return out;
         }
 
-        List<EmployeeEntity> findEntities = employeeDbService.getList(resultIds);
+        List<EmployeeView> findEntities = employeeDbService.getViews(resultIds);
 
         if (findEntities == null || findEntities.isEmpty()) {
             out.addError(
@@ -201,11 +261,11 @@ public class EmployeeService {
                                 .collect(Collectors.joining(","))));
         }
         else
-            out.addResult(findEntities, this);
+            out.addResult(findEntities);
 
 
         if (findEntities != null) {
-            resultIds.removeAll(findEntities.parallelStream().filter(Objects::nonNull).map(EmployeeEntity::getId).filter(Objects::nonNull).collect(Collectors.toSet()));
+            resultIds.removeAll(findEntities.stream().filter(Objects::nonNull).map(EmployeeView::id).collect(Collectors.toSet()));
 
             if (!resultIds.isEmpty())
                 out.addError(EMPLOYEE_NOT_FOUND_LIST.getErrorText().formatted(
@@ -215,26 +275,155 @@ public class EmployeeService {
         return out;
     }
 
+    /**
+     * Moves employees (their subordinates stay with them) under a new supervisor, null - to the top level.
+     * One transaction with a constant number of statements, see EmployeeDbService.reassign.
+     */
+    public OperationResult reassign(Collection<Long> ids, Long newSupervisor) {
+        OperationResult out = new OperationResult();
+
+        Set<Long> moveIds = ids == null
+                ? Set.of()
+                : ids.stream().filter(Objects::nonNull).collect(Collectors.toCollection(LinkedHashSet::new));
+        if (moveIds.isEmpty()) {
+            out.addError(ValueErrors.ID_LIST_IS_NULL_OR_EMPTY.getErrorText());
+            return out;
+        }
+
+        if (newSupervisor != null) {
+            if (moveIds.contains(newSupervisor))
+                out.addError(ValueErrors.SUPERVISOR_ID_SAME_WITH_EMPLOYEE_ID.getErrorText());
+            else if (employeeDbService.get(newSupervisor) == null)
+                out.addError(SUPERVISOR_NOT_FOUND.getErrorText().formatted(newSupervisor));
+        }
+
+        List<EmployeeEntity> found = employeeDbService.getList(moveIds);
+        if (found == null || found.size() < moveIds.size()) {
+            Set<Long> notFound = new LinkedHashSet<>(moveIds);
+            if (found != null)
+                found.forEach(e -> notFound.remove(e.getId()));
+
+            out.addError(EMPLOYEE_NOT_FOUND_LIST.getErrorText().formatted(
+                    notFound.stream().map(String::valueOf).collect(Collectors.joining(","))));
+        }
+
+        if (out.hasErrors())
+            return out;
+
+        Long moved = employeeDbService.reassign(moveIds, newSupervisor);
+        if (moved == null)
+            out.addError(SUPERVISOR_IN_MOVED_SUBTREE.getErrorText().formatted(newSupervisor));
+        else {
+            out.addResult(moved);
+            changeService.changed();
+        }
+
+        return out;
+    }
+
+    // direct subordinates of the supervisor, null if there is no such employee
+    public Set<Long> getSubordinates(long supervisorId) {
+        EmployeeEntity supervisor = employeeDbService.get(supervisorId);
+        return supervisor == null ? null : new LinkedHashSet<>(supervisor.getSubordinates());
+    }
+
+    // supervisors from the root down to the direct one: ids come from the materialized path
+    public OperationResult getAncestors(long id) {
+        OperationResult out = new OperationResult();
+        List<Long> path = employeeDbService.getPath(id);
+
+        if (path == null) {
+            out.addError(EMPLOYEE_NOT_FOUND.getErrorText().formatted(id));
+            return out;
+        }
+
+        List<Long> ancestorIds = path.isEmpty() ? List.of() : path.subList(0, path.size() - 1);
+        if (ancestorIds.isEmpty())
+            return out;
+
+        // in the order of ids: root first
+        List<EmployeeView> found = employeeDbService.getViews(ancestorIds);
+        if (found == null)
+            out.addError(DB_ERROR);
+        else
+            out.addResult(found);
+
+        return out;
+    }
+
+    public OperationResult getDirectSubordinates(long id) {
+        OperationResult out = new OperationResult();
+
+        if (employeeDbService.getView(id) == null)
+            out.addError(EMPLOYEE_NOT_FOUND.getErrorText().formatted(id));
+        else
+            out.addResult(employeeDbService.getSubordinates(id));
+
+        return out;
+    }
+
+    // everyone below the employee, one index range of the materialized path
+    public OperationResult getDescendants(long id) {
+        OperationResult out = new OperationResult();
+
+        if (employeeDbService.getView(id) == null) {
+            out.addError(EMPLOYEE_NOT_FOUND.getErrorText().formatted(id));
+            return out;
+        }
+
+        List<EmployeeView> found = employeeDbService.getDescendants(id);
+        if (found == null)
+            out.addError(DB_ERROR);
+        else
+            out.addResult(found);
+
+        return out;
+    }
+
+    public Integer getDepth(long id) {
+        return employeeDbService.getDepth(id);
+    }
+
+    public Long rebuildPaths(boolean force) {
+        return employeeDbService.rebuildPaths(force);
+    }
+
     public Long getTotal() {
         return employeeDbService.getTotal();
     }
 
+    // all employees ordered by id, streamed to the consumer; returns count of employees
+    public long scanAll(EmployeeDbService.ViewConsumer consumer) {
+        return employeeDbService.scanViews(consumer);
+    }
+
+    // after bulk changes made past this service (import, etc.)
+    public void clearCache() {
+        employeeDbService.clear();
+    }
+
+    // after changes of the employees made past this service (another node)
+    public void evict(Collection<Long> ids) {
+        employeeDbService.evict(ids);
+    }
+
     public OperationResult getPossibleSupervisors(Long subId) {
-        List<EmployeeEntity> supervisors = employeeDbService.getPossibleSupervisors(subId)
+        // not the current one either
+        EmployeeView sub = subId == null ? null : employeeDbService.getView(subId);
+        Long currentSupervisor = sub == null ? null : sub.supervisor();
+
+        List<EmployeeView> supervisors = employeeDbService.getPossibleSupervisors(subId)
                 .stream()
-                .filter(e -> !Objects.equals(e.getId(), subId))
-                .filter(e -> e.getSupervisor() == null || !Objects.equals(e.getSupervisor(), subId))
-                .filter(e -> !e.getSubordinates().contains(subId)).collect(Collectors.toList());
+                .filter(e -> !Objects.equals(e.id(), subId))
+                .filter(e -> e.supervisor() == null || !Objects.equals(e.supervisor(), subId))
+                .filter(e -> !Objects.equals(e.id(), currentSupervisor)).collect(Collectors.toList());
 
         OperationResult out = new OperationResult();
-        out.addResult(supervisors, this);
+        out.addResult(supervisors);
 
         return out;
     }
 
-    // TODO : if employee remove - need delete all supervisor and subordinates
-
-
     private String canSetSupervisor(long employeeId, long supervisorId) {
         EmployeeEntity employeeEntity = employeeDbService.get(employeeId);
 
@@ -256,29 +445,14 @@ public class EmployeeService {
         return ""; // it's ok!
     }
 
+    // id is the employee itself or somewhere below it: the employee is on the path of id
     private boolean checkAllSubordinates(@NonNull EmployeeEntity employee, long id) {
-        if (employee.getSubordinates() == null)
-            return false;
-        else if (employee.getSubordinates().contains(id))
-            return true;
-        else {
-            for (Long subordinateId : employee.getSubordinates()) {
-                if (subordinateId == null)
-                    continue;
-                EmployeeEntity subEnt = employeeDbService.get(subordinateId);
-                if (subEnt == null)
-                    continue;
-
-                if (checkAllSubordinates(subEnt, id))
-                    return true;
-            }
-        }
-
-        return false;
+        List<Long> path = employeeDbService.getPath(id);
+        return path != null && path.contains(employee.getId());
     }
 
     private boolean employeeHasSubordinate(@NonNull EmployeeEntity employee, long id) {
-        return employee.getSubordinates() == null || employee.getSubordinates().contains(id);
+        return employee.getSubordinates().contains(id);
     }
 
     private OperationResult prapareOperationResult(String firstName, String lastName, Long supervisor) {
@@ -300,32 +474,46 @@ public class EmployeeService {
         return out;
     }
 
+    // fix-ups change a clone, not the managed entity: so modify() sees the difference, saves it and logs the change
     private void addOrRemoveSubForSupervisor(long supervisorId, long subId, boolean remove) {
+        HierarchyFixupEvent event = new HierarchyFixupEvent();
+        event.begin();
+
         EmployeeEntity superVisor = employeeDbService.get(supervisorId);
         if (superVisor != null) {
-            Set<Long> subs = superVisor.getSubordinates();
-            if (remove)
-                subs.remove(subId);
-            else
-                subs.add(subId);
-
-            superVisor.setSubordinates(subs);
-            employeeDbService.modify(superVisor.clone());
+            EmployeeEntity changed = superVisor.clone();
+            changed.setSubordinates(remove
+                    ? superVisor.getSubordinates().without(subId)
+                    : superVisor.getSubordinates().with(subId));
+            employeeDbService.modify(changed);
         }
+
+        event.end();
+        if (event.shouldCommit())
+            event.set("subordinates", supervisorId, superVisor == null ? 0 : 1, remove).commit();
     }
 
     private void addOrRemoveSupervisorFor(long supervisorId, Set<Long> subIds, boolean remove) {
+        HierarchyFixupEvent event = new HierarchyFixupEvent();
+        event.begin();
+
         for (Long subId : subIds) {
             EmployeeEntity subE = employeeDbService.get(subId);
             if (subE != null) {
+                EmployeeEntity changed = subE.clone();
                 if (remove && Objects.equals(subE.getSupervisor(), supervisorId))
-                    subE.setSupervisor(null);
-                else if (!remove && subE.getSupervisor() == null)
-                    subE.setSupervisor(supervisorId);
+                    changed.setSupervisor(null);
+                // not its own supervisor's supervisor: that would be a cycle
+                else if (!remove && subE.getSupervisor() == null && !checkAllSubordinates(subE, supervisorId))
+                    changed.setSupervisor(supervisorId);
 
-                employeeDbService.modify(subE.clone());
+                employeeDbService.modify(changed);
             }
         }
+
+        event.end();
+        if (event.shouldCommit())
+            event.set("supervisor", supervisorId, subIds.size(), remove).commit();
     }
 
 }
@@ -0,0 +1,482 @@
+package com.itgnostic.test4sandbox.service;
+
+import com.itgnostic.test4sandbox.db.shard.EmployeeShards;
+import com.itgnostic.test4sandbox.trace.CacheLookupEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+import static com.itgnostic.test4sandbox.common.Const.DB_TABLE_NAME;
+
+/**
+ * Org-chart statistics for dashboards.
+ * <p>
+ * Per employee: direct subordinates (SUBORDINATES), everyone below (TOTAL_SUBORDINATES) and depth (DEPTH),
+ * all kept up to date by the writes of EmployeeDbServiceImpl, so a read is one row by primary key.
+ * Org-wide distributions are two GROUP BY scans over these columns, computed again only after a change
+ * and at most once per {@code refresh} ms while changes go on.
+ * <p>
+ * {@link #verify} recomputes everything from the SUPERVISOR column alone, level by level on a fork-join
+ * pool, and compares it with the stored values. In write-behind mode the stats follow a supervisor
+ * change once it is saved.
+ * <p>
+ * With employee.shards every shard is read: the stored values already count the rows of all shards, so the
+ * numbers of the shards add up, and {@link #verify} recomputes the hierarchy of all shards together.
+ */
+@Slf4j
+@Service
+public class EmployeeStatsService {
+    private static final String EMPLOYEE_STATS =
+            "SELECT CARDINALITY(SUBORDINATES), TOTAL_SUBORDINATES, DEPTH FROM %s WHERE ID = ?".formatted(DB_TABLE_NAME);
+    // DEPTH is null for employees not reachable from a root (a cycle in the data)
+    private static final String DEPTHS = "SELECT DEPTH, COUNT(*) FROM %s GROUP BY DEPTH".formatted(DB_TABLE_NAME);
+    private static final String SPANS =
+            "SELECT CARDINALITY(SUBORDINATES), COUNT(*) FROM %s GROUP BY CARDINALITY(SUBORDINATES)".formatted(DB_TABLE_NAME);
+    // one statement: a consistent snapshot of the table
+    private static final String HIERARCHY = ("SELECT ID, SUPERVISOR, CARDINALITY(SUBORDINATES), TOTAL_SUBORDINATES, DEPTH "
+            + "FROM %s ORDER BY ID").formatted(DB_TABLE_NAME);
+    // skipped if a write changed the total after the snapshot, the next verification looks again
+    private static final String REPAIR_TOTAL = ("UPDATE %s SET TOTAL_SUBORDINATES = ? "
+            + "WHERE ID = ? AND PATH IS NOT NULL AND TOTAL_SUBORDINATES IS NOT DISTINCT FROM ?").formatted(DB_TABLE_NAME);
+    private static final int FETCH_SIZE = 10_000;
+    private static final int BATCH_SIZE = 1000;
+    // nodes of one level handled by one fork-join task
+    private static final int SPLIT_THRESHOLD = 4096;
+
+    private final List<SessionFactory> shards;
+    private final long refresh;
+    private final boolean verifyEnabled;
+    private final boolean verifyRepair;
+    private final int parallelism;
+
+    private final Object computeLock = new Object();
+    private volatile OrgStats orgStats;
+    private volatile boolean changed = true;
+
+    public EmployeeStatsService(EmployeeShards shards,
+                                EmployeeChangeService changeService,
+                                @Value("${employee.stats.refresh:1000}") long refresh,
+                                @Value("${employee.stats.verify.enabled:false}") boolean verifyEnabled,
+                                @Value("${employee.stats.verify.repair:true}") boolean verifyRepair,
+                                @Value("${employee.stats.verify.parallelism:0}") int parallelism) {
+        this.shards = shards.getSessionFactories();
+        this.refresh = refresh;
+        this.verifyEnabled = verifyEnabled;
+        this.verifyRepair = verifyRepair;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+
+        changeService.addListener(() -> changed = true);
+    }
+
+    public record OrgStats(long employees, long roots, long managers, long unreachable, int maxDepth,
+                           double avgSpan, SortedMap<Integer, Long> depths, SortedMap<Integer, Long> spans,
+                           long computed) {
+    }
+
+    public record EmployeeStats(long id, int direct, Long total, Integer depth) {
+    }
+
+    /**
+     * @param employees        rows checked
+     * @param directMismatches SUBORDINATES not matching the SUPERVISOR column
+     * @param totalMismatches  TOTAL_SUBORDINATES not matching the subtree size
+     * @param depthMismatches  DEPTH not matching the distance from the root (null - not reachable)
+     * @param repaired         TOTAL_SUBORDINATES values fixed
+     */
+    public record Verification(long employees, long directMismatches, long totalMismatches, long depthMismatches,
+                               long repaired, long millis) {
+        public boolean isConsistent() {
+            return directMismatches == 0 && totalMismatches == 0 && depthMismatches == 0;
+        }
+    }
+
+    public OrgStats getOrgStats() {
+        OrgStats out = orgStats;
+        if (isFresh(out)) {
+            CacheLookupEvent.emit("org-stats", true);
+            return out;
+        }
+
+        // concurrent dashboard requests wait for one computation
+        synchronized (computeLock) {
+            out = orgStats;
+            boolean fresh = isFresh(out);
+            CacheLookupEvent.emit("org-stats", fresh);
+            if (fresh)
+                return out;
+
+            // before the reads: a change committed during them marks the result stale again
+            changed = false;
+            try {
+                out = computeOrgStats();
+            } catch (RuntimeException e) {
+                changed = true;
+                throw e;
+            }
+
+            orgStats = out;
+            return out;
+        }
+    }
+
+    // null - not found
+    public EmployeeStats getEmployeeStats(long id) {
+        for (SessionFactory shard : shards) {
+            try (Session session = shard.openSession()) {
+                EmployeeStats out = session.doReturningWork(connection -> {
+                    try (PreparedStatement select = connection.prepareStatement(EMPLOYEE_STATS)) {
+                        select.setLong(1, id);
+
+                        try (ResultSet rs = select.executeQuery()) {
+                            return rs.next()
+                                    ? new EmployeeStats(id, rs.getInt(1), rs.getObject(2, Long.class), rs.getObject(3, Integer.class))
+                                    : null;
+                        }
+                    }
+                });
+
+                if (out != null)
+                    return out;
+            }
+        }
+
+        return null;
+    }
+
+    @Scheduled(initialDelayString = "${employee.stats.verify.interval:3600000}",
+            fixedDelayString = "${employee.stats.verify.interval:3600000}")
+    public void verifyOnSchedule() {
+        if (!verifyEnabled)
+            return;
+
+        try {
+            verify(verifyRepair);
+        } catch (RuntimeException e) {
+            log.error("Org-chart stats verification failed", e);
+        }
+    }
+
+    /**
+     * Full recompute of direct subordinates, subtree sizes and depths from the SUPERVISOR column.
+     *
+     * @param repair write the recomputed subtree sizes over the stored ones that differ
+     */
+    public Verification verify(boolean repair) {
+        long start = System.currentTimeMillis();
+        // a supervisor and its subordinates may be in different shards: one hierarchy of all of them
+        Hierarchy h = new Hierarchy();
+        shards.forEach(shard -> loadHierarchy(shard, h));
+        if (shards.size() > 1)
+            h.sortById();
+        int n = h.size;
+
+        // children of every node, by index (supervisors not in the table leave their employees unreachable)
+        int[] parent = new int[n];
+        int[] childStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            parent[i] = h.supervisors[i] < 0 ? -1 : Arrays.binarySearch(h.ids, 0, n, h.supervisors[i]);
+            if (parent[i] >= 0)
+                childStart[parent[i] + 1]++;
+            else if (h.supervisors[i] >= 0)
+                parent[i] = -2;
+        }
+        for (int i = 0; i < n; i++)
+            childStart[i + 1] += childStart[i];
+
+        int[] children = new int[childStart[n]];
+        int[] filled = Arrays.copyOf(childStart, n);
+        for (int i = 0; i < n; i++)
+            if (parent[i] >= 0)
+                children[filled[parent[i]]++] = i;
+
+        // breadth-first from the roots: every level is a range of "order", nodes in a cycle are never reached
+        int[] order = new int[n];
+        int[] depth = new int[n];
+        Arrays.fill(depth, -1);
+        int reached = 0;
+        for (int i = 0; i < n; i++)
+            if (parent[i] == -1) {
+                depth[i] = 0;
+                order[reached++] = i;
+            }
+
+        int[] levelStart = new int[n + 2];
+        int levels = 0;
+        for (int from = 0; from < reached; levels++) {
+            levelStart[levels] = from;
+            int to = reached;
+            for (int k = from; k < to; k++) {
+                int node = order[k];
+                for (int c = childStart[node]; c < childStart[node + 1]; c++) {
+                    depth[children[c]] = levels + 1;
+                    order[reached++] = children[c];
+                }
+            }
+            from = to;
+        }
+        levelStart[levels] = reached;
+
+        // subtree sizes bottom-up: a level only reads the sizes of the level below, its nodes go in parallel
+        long[] size = new long[n];
+        LongAdder totalMismatches = new LongAdder();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (int level = levels - 1; level >= 0; level--) {
+                pool.invoke(new LevelAction(order, levelStart[level], levelStart[level + 1], node -> {
+                    long s = 1;
+                    for (int c = childStart[node]; c < childStart[node + 1]; c++)
+                        s += size[children[c]];
+                    size[node] = s;
+
+                    if (h.totals[node] != s - 1)
+                        totalMismatches.increment();
+                }));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        long directMismatches = 0;
+        long depthMismatches = 0;
+        for (int i = 0; i < n; i++) {
+            if (h.directs[i] != childStart[i + 1] - childStart[i])
+                directMismatches++;
+            if (h.depths[i] != depth[i])
+                depthMismatches++;
+        }
+
+        long repaired = 0;
+        if (repair && totalMismatches.sum() > 0)
+            for (int i = 0; i < shards.size(); i++)
+                repaired += repairTotals(shards.get(i), i, shards.size(), h, order, reached, size);
+
+        Verification out = new Verification(n, directMismatches, totalMismatches.sum(), depthMismatches,
+                repaired, System.currentTimeMillis() - start);
+        if (out.isConsistent())
+            log.info("Org-chart stats of {} employees verified in {} ms", n, out.millis());
+        else
+            log.warn("Org-chart stats mismatches: {}", out);
+
+        if (repaired > 0)
+            changed = true;
+
+        return out;
+    }
+
+    private boolean isFresh(OrgStats stats) {
+        return stats != null && (!changed || System.currentTimeMillis() - stats.computed() < refresh);
+    }
+
+    private OrgStats computeOrgStats() {
+        SortedMap<Integer, Long> depths = new TreeMap<>();
+        SortedMap<Integer, Long> spans = new TreeMap<>();
+        long[] unreachable = new long[1];
+
+        for (SessionFactory shard : shards) {
+            try (Session session = shard.openSession()) {
+                session.doWork(connection -> {
+                    try (Statement statement = connection.createStatement()) {
+                        try (ResultSet rs = statement.executeQuery(DEPTHS)) {
+                            while (rs.next()) {
+                                Integer depth = rs.getObject(1, Integer.class);
+                                if (depth == null)
+                                    unreachable[0] += rs.getLong(2);
+                                else
+                                    depths.merge(depth, rs.getLong(2), Long::sum);
+                            }
+                        }
+
+                        try (ResultSet rs = statement.executeQuery(SPANS)) {
+                            while (rs.next())
+                                spans.merge(rs.getInt(1), rs.getLong(2), Long::sum);
+                        }
+                    }
+                });
+            }
+        }
+
+        long employees = unreachable[0] + depths.values().stream().mapToLong(Long::longValue).sum();
+        long managers = 0;
+        long reports = 0;
+        for (var span : spans.entrySet()) {
+            if (span.getKey() > 0) {
+                managers += span.getValue();
+                reports += span.getKey() * span.getValue();
+            }
+        }
+
+        return new OrgStats(employees, depths.getOrDefault(0, 0L), managers, unreachable[0],
+                depths.isEmpty() ? 0 : depths.lastKey(), managers == 0 ? 0 : (double) reports / managers,
+                Collections.unmodifiableSortedMap(depths), Collections.unmodifiableSortedMap(spans),
+                System.currentTimeMillis());
+    }
+
+    private static void loadHierarchy(SessionFactory shard, Hierarchy out) {
+        try (Session session = shard.openSession()) {
+            session.doWork(connection -> {
+                try (PreparedStatement select = connection.prepareStatement(HIERARCHY)) {
+                    select.setFetchSize(FETCH_SIZE);
+
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            Long supervisor = rs.getObject(2, Long.class);
+                            Long total = rs.getObject(4, Long.class);
+                            Integer depth = rs.getObject(5, Integer.class);
+                            out.add(rs.getLong(1), supervisor == null ? -1 : supervisor, rs.getInt(3),
+                                    total == null ? -1 : total, depth == null ? -1 : depth);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    // the rows of shard index of count: ids index + 1, index + 1 + count, ... (see ShardedEmployeeDbService)
+    private static long repairTotals(SessionFactory shard, int index, int count, Hierarchy h, int[] order, int reached, long[] size) {
+        try (Session session = shard.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                long out = session.doReturningWork(connection -> {
+                    long repaired = 0;
+                    int batch = 0;
+
+                    try (PreparedStatement update = connection.prepareStatement(REPAIR_TOTAL)) {
+                        for (int k = 0; k < reached; k++) {
+                            int node = order[k];
+                            if (h.totals[node] == size[node] - 1 || Math.floorMod(h.ids[node] - 1, count) != index)
+                                continue;
+
+                            update.setLong(1, size[node] - 1);
+                            update.setLong(2, h.ids[node]);
+                            update.setObject(3, h.totals[node] < 0 ? null : h.totals[node], Types.BIGINT);
+                            update.addBatch();
+
+                            if (++batch == BATCH_SIZE) {
+                                repaired += sum(update.executeBatch());
+                                batch = 0;
+                            }
+                        }
+
+                        if (batch > 0)
+                            repaired += sum(update.executeBatch());
+                    }
+
+                    return repaired;
+                });
+
+                transaction.commit();
+                return out;
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static long sum(int[] counts) {
+        long out = 0;
+        for (int count : counts)
+            out += Math.max(count, 0);
+
+        return out;
+    }
+
+    // column arrays sorted by id; -1 stands for null
+    private static class Hierarchy {
+        int size;
+        long[] ids = new long[1024];
+        long[] supervisors = new long[1024];
+        int[] directs = new int[1024];
+        long[] totals = new long[1024];
+        int[] depths = new int[1024];
+
+        void add(long id, long supervisor, int direct, long total, int depth) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                supervisors = Arrays.copyOf(supervisors, capacity);
+                directs = Arrays.copyOf(directs, capacity);
+                totals = Arrays.copyOf(totals, capacity);
+                depths = Arrays.copyOf(depths, capacity);
+            }
+
+            ids[size] = id;
+            supervisors[size] = supervisor;
+            directs[size] = direct;
+            totals[size] = total;
+            depths[size] = depth;
+            size++;
+        }
+
+        // rows of several shards, each sorted by id
+        void sortById() {
+            long[] sorted = Arrays.copyOf(ids, size);
+            Arrays.sort(sorted);
+
+            long[] newSupervisors = new long[ids.length];
+            int[] newDirects = new int[ids.length];
+            long[] newTotals = new long[ids.length];
+            int[] newDepths = new int[ids.length];
+            for (int i = 0; i < size; i++) {
+                int k = Arrays.binarySearch(sorted, ids[i]);
+                newSupervisors[k] = supervisors[i];
+                newDirects[k] = directs[i];
+                newTotals[k] = totals[i];
+                newDepths[k] = depths[i];
+            }
+
+            System.arraycopy(sorted, 0, ids, 0, size);
+            supervisors = newSupervisors;
+            directs = newDirects;
+            totals = newTotals;
+            depths = newDepths;
+        }
+    }
+
+    // one level of the hierarchy, split in halves down to SPLIT_THRESHOLD nodes
+    private static class LevelAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] order;
+        private final int from;
+        private final int to;
+        private final IntConsumer action;
+
+        LevelAction(int[] order, int from, int to, IntConsumer action) {
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int k = from; k < to; k++)
+                    action.accept(order[k]);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new LevelAction(order, from, middle, action), new LevelAction(order, middle, to, action));
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.itgnostic.test4sandbox.service;
 
 import com.google.common.base.Strings;
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
 import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
 import com.itgnostic.test4sandbox.errors.DbErrors;
 import com.itgnostic.test4sandbox.utils.EmployeeUtils;
@@ -20,6 +21,9 @@ public class OperationResult {
     private List<RespEmployeeModel> resultList = new ArrayList<>();
     @Getter
     private final List<String> errorList = new ArrayList<>();
+    // bulk operations: count of changed employees
+    @Getter
+    private long affected;
 
     OperationResult() {}
 
@@ -46,6 +50,27 @@ public class OperationResult {
             addError();
     }
 
+    public void addResult(EmployeeView result) {
+        if (result != null)
+            resultList.add(EmployeeUtils.toRespEmployeeModel(result));
+        else
+            addError(BAD_RESULT);
+    }
+
+    public void addResult(List<EmployeeView> result) {
+        if (result != null)
+            result.forEach(this::addResult);
+        else
+            addError();
+    }
+
+    public void addResult(Long affected) {
+        if (affected == null)
+            addError();
+        else
+            this.affected += affected;
+    }
+
     public void addResult(Boolean result) {
         if (result == null || !result)
             addError();
@@ -0,0 +1,32 @@
+package com.itgnostic.test4sandbox.trace;
+
+import jdk.jfr.*;
+
+/**
+ * A lookup in one of the in-process caches: employees of the main session, org stats, idempotency keys.
+ */
+@Name("com.itgnostic.employee.CacheLookup")
+@Label("Employee Cache Lookup")
+@Category({"Employee", "Cache"})
+@Description("Lookup in an in-process cache, hit or miss")
+@Enabled(false)
+@StackTrace(false)
+public final class CacheLookupEvent extends Event {
+    @Label("Cache")
+    private String cache;
+
+    @Label("Hit")
+    private boolean hit;
+
+    public CacheLookupEvent set(String cache, boolean hit) {
+        this.cache = cache;
+        this.hit = hit;
+        return this;
+    }
+
+    public static void emit(String cache, boolean hit) {
+        CacheLookupEvent event = new CacheLookupEvent();
+        if (event.shouldCommit())
+            event.set(cache, hit).commit();
+    }
+}
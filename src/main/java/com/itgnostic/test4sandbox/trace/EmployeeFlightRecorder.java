@@ -0,0 +1,92 @@
+package com.itgnostic.test4sandbox.trace;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Flight recording started with the application (employee.jfr.*): a JDK profile (default, profile)
+ * plus the employee events of jfr/employee.jfc, written to {@code file} on shutdown or by
+ * {@code jcmd <pid> JFR.dump name=employee}.
+ * <p>
+ * The employee events ({@link EmployeeQueryEvent}, {@link HierarchyFixupEvent}, {@link SerializationEvent},
+ * {@link CacheLookupEvent}) are off in the JDK profiles: a recording started by -XX:StartFlightRecording or
+ * jcmd has them with settings=employee.jfc only.
+ */
+@Slf4j
+@Component
+public class EmployeeFlightRecorder {
+    public static final String SETTINGS = "/jfr/employee.jfc";
+
+    private final Recording recording;
+
+    public EmployeeFlightRecorder(@Value("${employee.jfr.enabled:false}") boolean enabled,
+                                  @Value("${employee.jfr.profile:default}") String profile,
+                                  @Value("${employee.jfr.file:./jfr/employee.jfr}") String file,
+                                  @Value("${employee.jfr.max-age:3600000}") long maxAge,
+                                  @Value("${employee.jfr.max-size:268435456}") long maxSize) {
+        if (!enabled) {
+            recording = null;
+            return;
+        }
+
+        try {
+            Map<String, String> settings = new HashMap<>(Configuration.getConfiguration(profile).getSettings());
+            settings.putAll(getSettings().getSettings());
+
+            Path destination = Path.of(file);
+            if (destination.toAbsolutePath().getParent() != null)
+                Files.createDirectories(destination.toAbsolutePath().getParent());
+
+            recording = new Recording(settings);
+            recording.setName("employee");
+            recording.setToDisk(true);
+            recording.setMaxAge(Duration.ofMillis(maxAge));
+            recording.setMaxSize(maxSize);
+            recording.setDestination(destination);
+            recording.start();
+            log.info("Flight recording with {} and employee events, written to {}", profile, destination);
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("Can't start flight recording", e);
+        }
+    }
+
+    /**
+     * Settings of the employee events, bundled as jfr/employee.jfc.
+     */
+    public static Configuration getSettings() throws IOException, ParseException {
+        try (InputStream in = EmployeeFlightRecorder.class.getResourceAsStream(SETTINGS)) {
+            if (in == null)
+                throw new IOException("No " + SETTINGS + " in classpath");
+
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                return Configuration.create(reader);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (recording == null)
+            return;
+
+        // writes the recording to its destination
+        recording.stop();
+        recording.close();
+    }
+}
@@ -0,0 +1,28 @@
+package com.itgnostic.test4sandbox.trace;
+
+import jdk.jfr.*;
+
+/**
+ * A call of the employee DAO, see {@code TracingEmployeeDbService}. Off unless enabled by a recording
+ * setting, e.g. jfr/employee.jfc.
+ */
+@Name("com.itgnostic.employee.Query")
+@Label("Employee Query")
+@Category({"Employee", "Database"})
+@Description("Call of EmployeeDbService: query kind and rows read or changed")
+@Enabled(false)
+@StackTrace(false)
+public final class EmployeeQueryEvent extends Event {
+    @Label("Kind")
+    private String kind;
+
+    @Label("Rows")
+    @Description("Employees read or changed, 0 for counts and ids")
+    private long rows;
+
+    public EmployeeQueryEvent set(String kind, long rows) {
+        this.kind = kind;
+        this.rows = rows;
+        return this;
+    }
+}
@@ -0,0 +1,67 @@
+package com.itgnostic.test4sandbox.trace;
+
+import com.itgnostic.test4sandbox.service.EmployeeService;
+import com.itgnostic.test4sandbox.service.OperationResult;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * In a sampled request (employee.tracing), a span per {@link EmployeeService} call returning an
+ * {@link OperationResult}, with the count of employees in the result. The service is proxied only when
+ * tracing is enabled; calls of the service to itself have no span of their own.
+ */
+@Component
+public class EmployeeServiceTracing implements BeanPostProcessor {
+    private static final String SPAN = "employee.service";
+
+    // looked up once the service is created: a post processor is created before other beans
+    private final ObjectProvider<EmployeeTracing> tracing;
+
+    public EmployeeServiceTracing(ObjectProvider<EmployeeTracing> tracing) {
+        this.tracing = tracing;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof EmployeeService))
+            return bean;
+
+        EmployeeTracing employeeTracing = tracing.getObject();
+        if (!employeeTracing.isEnabled())
+            return bean;
+
+        ProxyFactory proxy = new ProxyFactory(bean);
+        proxy.setProxyTargetClass(true);
+        proxy.addAdvice((MethodInterceptor) invocation -> observe(employeeTracing, invocation));
+        return proxy.getProxy(bean.getClass().getClassLoader());
+    }
+
+    private static Object observe(EmployeeTracing tracing, MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        if (method.getReturnType() != OperationResult.class)
+            return invocation.proceed();
+
+        return tracing.observe(SPAN, operation(method), () -> {
+            try {
+                return (OperationResult) invocation.proceed();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                // the service declares no checked exceptions
+                throw new UndeclaredThrowableException(e);
+            }
+        }, result -> result.getResultList().size());
+    }
+
+    // page reads are "getPage", as in TracingEmployeeDbService
+    private static String operation(Method method) {
+        return method.getName().equals("get") && method.getParameterCount() == 2 ? "getPage" : method.getName();
+    }
+}
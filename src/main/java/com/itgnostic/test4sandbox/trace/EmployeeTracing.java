@@ -0,0 +1,144 @@
+package com.itgnostic.test4sandbox.trace;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tracing of REST API requests (employee.tracing.*): a span per request, per {@code EmployeeService} call,
+ * per database call and per JSON response, written to a local file by {@link SpanFileExporter}.
+ * <p>
+ * Sampling is decided once per request, before anything is recorded: a request not sampled starts no
+ * observation, and the layers below see no span to continue and call straight through. A request with
+ * a sampled W3C {@code traceparent} header is always traced and continues that trace.
+ * <p>
+ * The observations have a registry of their own, apart from the one of Spring Boot: sampled calls
+ * don't end up in the http.server.requests and other timers.
+ */
+@Component
+public class EmployeeTracing {
+    private static final Pattern TRACEPARENT = Pattern.compile("00-([0-9a-f]{32})-([0-9a-f]{16})-([0-9a-f]{2})");
+
+    private final boolean enabled;
+    private final double probability;
+    private final ObservationRegistry registry;
+    private final SpanFileExporter exporter;
+
+    public EmployeeTracing(MeterRegistry meterRegistry,
+                           @Value("${employee.tracing.enabled:false}") boolean enabled,
+                           @Value("${employee.tracing.sampling.probability:0.01}") double probability,
+                           @Value("${employee.tracing.file:./traces/spans.jsonl}") String file,
+                           @Value("${employee.tracing.max-size:104857600}") long maxSize,
+                           @Value("${employee.tracing.queue-size:10000}") int queueSize) {
+        this.enabled = enabled;
+        this.probability = probability;
+
+        if (!enabled) {
+            registry = ObservationRegistry.NOOP;
+            exporter = null;
+            return;
+        }
+
+        exporter = new SpanFileExporter(Path.of(file), maxSize, Math.max(1, queueSize),
+                Counter.builder("employee.tracing.spans")
+                        .description("Spans queued for the trace file")
+                        .register(meterRegistry),
+                Counter.builder("employee.tracing.dropped")
+                        .description("Spans lost: queue full or file not writable")
+                        .register(meterRegistry));
+        registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(exporter);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (exporter != null)
+            exporter.close();
+    }
+
+    /**
+     * Starts the root span of a request if it is sampled.
+     *
+     * @param traceparent W3C trace context header of the caller, may be null
+     * @return {@link Observation#NOOP} if not sampled
+     */
+    public Observation startTrace(String name, String traceparent) {
+        if (!enabled)
+            return Observation.NOOP;
+
+        Matcher remote = traceparent == null ? null : TRACEPARENT.matcher(traceparent.trim());
+        boolean continued = remote != null && remote.matches();
+        boolean sampled = continued
+                ? (Integer.parseInt(remote.group(3), 16) & 1) == 1
+                : ThreadLocalRandom.current().nextDouble() < probability;
+        if (!sampled)
+            return Observation.NOOP;
+
+        Observation.Context context = new Observation.Context();
+        if (continued)
+            SpanFileExporter.setRemoteParent(context, remote.group(1), remote.group(2));
+
+        // the current observation may be one of Spring Boot (http.server.requests): not a span of this trace
+        return Observation.createNotStarted(name, () -> context, registry).parentObservation(null).start();
+    }
+
+    /**
+     * W3C trace context header of a started span, to be sent back or on.
+     *
+     * @return null if not sampled
+     */
+    public static String traceparent(Observation observation) {
+        SpanFileExporter.Span span = observation.isNoop() ? null : SpanFileExporter.getSpan(observation.getContext());
+        return span == null ? null : "00-%s-%s-01".formatted(span.traceId(), span.spanId());
+    }
+
+    /**
+     * Runs {@code call} in a child span of the current one, or just runs it outside a sampled request.
+     *
+     * @param rows count of rows in the result, an attribute of the span; null - none
+     */
+    public <T> T observe(String name, String operation, Supplier<T> call, ToLongFunction<? super T> rows) {
+        // the current observation is kept per thread for all registries: a request not sampled may have one of Spring Boot
+        Observation parent = enabled ? registry.getCurrentObservation() : null;
+        if (parent == null || SpanFileExporter.getSpan(parent.getContext()) == null)
+            return call.get();
+
+        Observation observation = Observation.createNotStarted(name, registry)
+                .parentObservation(parent)
+                .contextualName(name.substring(name.lastIndexOf('.') + 1) + " " + operation)
+                .lowCardinalityKeyValue("operation", operation)
+                .start();
+        Observation.Scope scope = observation.openScope();
+        try {
+            T result = call.get();
+            if (result != null && rows != null)
+                observation.highCardinalityKeyValue("rows", String.valueOf(rows.applyAsLong(result)));
+            return result;
+        } catch (RuntimeException | Error e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            scope.close();
+            observation.stop();
+        }
+    }
+
+    public <T> T observe(String name, String operation, Supplier<T> call) {
+        return observe(name, operation, call, null);
+    }
+}
@@ -0,0 +1,36 @@
+package com.itgnostic.test4sandbox.trace;
+
+import jdk.jfr.*;
+
+/**
+ * Supervisor/subordinates of other employees updated after a change of one, see {@code EmployeeService}.
+ */
+@Name("com.itgnostic.employee.HierarchyFixup")
+@Label("Employee Hierarchy Fix-up")
+@Category({"Employee", "Service"})
+@Description("Subordinates of a supervisor or supervisors of subordinates updated after a change")
+@Enabled(false)
+@StackTrace(false)
+public final class HierarchyFixupEvent extends Event {
+    @Label("Kind")
+    @Description("subordinates - of one supervisor, supervisor - of several subordinates")
+    private String kind;
+
+    @Label("Supervisor")
+    private long supervisor;
+
+    @Label("Employees")
+    @Description("Employees read and saved again")
+    private int employees;
+
+    @Label("Remove")
+    private boolean remove;
+
+    public HierarchyFixupEvent set(String kind, long supervisor, int employees, boolean remove) {
+        this.kind = kind;
+        this.supervisor = supervisor;
+        this.employees = employees;
+        this.remove = remove;
+        return this;
+    }
+}
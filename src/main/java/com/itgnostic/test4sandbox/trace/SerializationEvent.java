@@ -0,0 +1,31 @@
+package com.itgnostic.test4sandbox.trace;
+
+import jdk.jfr.*;
+
+/**
+ * A REST API response body built, see {@code RestApiController}.
+ */
+@Name("com.itgnostic.employee.Serialization")
+@Label("Employee Response Serialization")
+@Category({"Employee", "Web"})
+@Description("Response body built from an operation result")
+@Enabled(false)
+@StackTrace(false)
+public final class SerializationEvent extends Event {
+    @Label("Format")
+    private String format;
+
+    @Label("Rows")
+    private long rows;
+
+    @Label("Size")
+    @Description("Characters of the body")
+    private long size;
+
+    public SerializationEvent set(String format, long rows, long size) {
+        this.format = format;
+        this.rows = rows;
+        this.size = size;
+        return this;
+    }
+}
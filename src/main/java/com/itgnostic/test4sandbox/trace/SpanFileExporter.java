@@ -0,0 +1,168 @@
+package com.itgnostic.test4sandbox.trace;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.common.KeyValue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationView;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Turns observations into spans and appends them to a file, one JSON object per line with the field
+ * names of OTLP/JSON spans (traceId, spanId, parentSpanId, startTimeUnixNano, ...). Key values of an
+ * observation are the span attributes.
+ * <p>
+ * Request threads only put the line into a bounded queue, a thread of its own writes it: a slow disk
+ * drops spans (employee.tracing.dropped), it doesn't slow requests down.
+ */
+@Slf4j
+class SpanFileExporter implements ObservationHandler<Observation.Context> {
+    private static final Object SPAN = Span.class;
+
+    private final Path file;
+    private final long maxSize;
+    private final BlockingQueue<String> queue;
+    private final Counter exported;
+    private final Counter dropped;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("employee-tracing").setDaemon(true).build());
+
+    // ids and start of a span, kept in the observation context
+    record Span(String traceId, String spanId, String parentSpanId, boolean root, long startEpochNanos, long startNanos) {
+    }
+
+    SpanFileExporter(Path file, long maxSize, int queueSize, Counter exported, Counter dropped) {
+        this.file = file;
+        this.maxSize = maxSize;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.exported = exported;
+        this.dropped = dropped;
+        writer.submit(this::writeLoop);
+    }
+
+    /**
+     * Puts ids of a span continued from another service (traceparent header) into the context of a root observation.
+     */
+    static void setRemoteParent(Observation.Context context, String traceId, String parentSpanId) {
+        context.put(SPAN, new Span(traceId, parentSpanId, null, true, 0, 0));
+    }
+
+    static Span getSpan(Observation.ContextView context) {
+        return context.get(SPAN);
+    }
+
+    @Override
+    public boolean supportsContext(Observation.Context context) {
+        return true;
+    }
+
+    @Override
+    public void onStart(Observation.Context context) {
+        Span remote = context.get(SPAN);
+        ObservationView parentObservation = context.getParentObservation();
+        Span parent = remote != null || parentObservation == null ? remote : getSpan(parentObservation.getContextView());
+
+        context.put(SPAN, new Span(parent == null ? randomHex(2) : parent.traceId(), randomHex(1),
+                parent == null ? null : parent.spanId(), parent == null || parent == remote,
+                System.currentTimeMillis() * 1_000_000, System.nanoTime()));
+    }
+
+    @Override
+    public void onStop(Observation.Context context) {
+        Span span = context.get(SPAN);
+        if (span == null)
+            return;
+
+        JSONObject attributes = new JSONObject();
+        for (KeyValue keyValue : context.getAllKeyValues())
+            attributes.put(keyValue.getKey(), keyValue.getValue());
+
+        JSONObject json = new JSONObject()
+                .put("traceId", span.traceId())
+                .put("spanId", span.spanId())
+                .put("name", context.getContextualName() != null ? context.getContextualName() : context.getName())
+                .put("scope", context.getName())
+                .put("kind", span.root() ? "SERVER" : "INTERNAL")
+                .put("startTimeUnixNano", span.startEpochNanos())
+                .put("endTimeUnixNano", span.startEpochNanos() + System.nanoTime() - span.startNanos())
+                .put("attributes", attributes);
+        if (span.parentSpanId() != null)
+            json.put("parentSpanId", span.parentSpanId());
+        if (context.getError() != null)
+            json.put("status", new JSONObject().put("code", "ERROR").put("message", String.valueOf(context.getError())));
+
+        if (queue.offer(json.toString()))
+            exported.increment();
+        else
+            dropped.increment();
+    }
+
+    void close() {
+        writer.shutdownNow();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<String> lines = new ArrayList<>();
+        boolean running = true;
+
+        while (running) {
+            try {
+                lines.add(queue.take());
+            } catch (InterruptedException e) {
+                // shutdown: what is queued still goes to the file
+                running = false;
+            }
+            queue.drainTo(lines);
+
+            if (!lines.isEmpty())
+                write(lines);
+            lines.clear();
+        }
+    }
+
+    private void write(List<String> lines) {
+        try {
+            if (file.getParent() != null)
+                Files.createDirectories(file.getParent());
+            if (maxSize > 0 && Files.exists(file) && Files.size(file) >= maxSize)
+                Files.move(file, file.resolveSibling(file.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (String line : lines) {
+                    out.write(line);
+                    out.newLine();
+                }
+            }
+        } catch (IOException e) {
+            dropped.increment(lines.size());
+            log.warn("Can't write {} spans to {}: {}", lines.size(), file, e.toString());
+        }
+    }
+
+    // W3C trace context ids: 16 bytes for a trace, 8 for a span
+    private static String randomHex(int longs) {
+        StringBuilder out = new StringBuilder(longs * 16);
+        for (int i = 0; i < longs; i++)
+            out.append("%016x".formatted(ThreadLocalRandom.current().nextLong()));
+        return out.toString();
+    }
+}
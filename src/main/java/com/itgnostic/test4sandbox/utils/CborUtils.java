@@ -0,0 +1,69 @@
+package com.itgnostic.test4sandbox.utils;
+
+import com.itgnostic.test4sandbox.db.snapshot.SnapshotRecord;
+import com.itgnostic.test4sandbox.service.OperationResult;
+import com.itgnostic.test4sandbox.web.api.rest.model.RespEmployeeModel;
+import org.apache.logging.log4j.util.Strings;
+
+import java.io.IOException;
+import java.util.List;
+
+// CBOR (application/cbor) versions of JsonUtils answers: numeric ids, created as epoch ms
+public class CborUtils {
+
+    // same shape as JsonUtils.operationResultToJson, rows are written one by one
+    public static void writeOperationResult(CborWriter out, OperationResult operationResult, List<String> errors) throws IOException {
+        out.startMap();
+
+        if (operationResult.isSuccess()) {
+            out.write("result");
+
+            if (operationResult.getResultList().isEmpty())
+                out.write("success");
+            else {
+                out.startArray();
+                for (RespEmployeeModel e : operationResult.getResultList()) {
+                    if (EmployeeUtils.allReqFieldsOk(e))
+                        writeEmployee(out, e);
+                }
+                out.end();
+            }
+
+            if (operationResult.hasErrors())
+                out.write("warning").write(operationResult.getErrorDetails());
+        }
+        else if (!errors.isEmpty())
+            writeErrors(out.write("errors"), errors);
+
+        out.end();
+    }
+
+    public static void writeErrors(CborWriter out, List<String> errors) throws IOException {
+        out.startArray(errors.size());
+        for (String error : errors)
+            out.write(error);
+    }
+
+    public static void writeEmployee(CborWriter out, RespEmployeeModel e) throws IOException {
+        out.startMap(8)
+                .write("id").write(Long.parseLong(e.getId()))
+                .write("firstName").write(e.getFirstName())
+                .write("lastName").write(e.getLastName())
+                .write("fullName").write(e.getFullName())
+                .write("position").write(e.getPosition())
+                .write("supervisor").write(Strings.isBlank(e.getSupervisorId()) ? null : Long.parseLong(e.getSupervisorId()))
+                .write("supervisorFullName").write(e.getSupervisorFullName())
+                .write("created").write(e.getCreatedMillis());
+    }
+
+    // export rows: stored fields only, names are not resolved
+    public static void writeEmployee(CborWriter out, SnapshotRecord r) throws IOException {
+        out.startMap(6)
+                .write("id").write(r.getId())
+                .write("firstName").write(r.getFirstName())
+                .write("lastName").write(r.getLastName())
+                .write("position").write(r.getPosition())
+                .write("supervisor").write(r.getSupervisor())
+                .write("created").write(r.getCreated());
+    }
+}
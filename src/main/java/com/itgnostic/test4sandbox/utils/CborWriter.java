@@ -0,0 +1,151 @@
+package com.itgnostic.test4sandbox.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming writer of the CBOR subset (RFC 8949) used by the binary API: unsigned/negative integers,
+ * text strings, null, maps and arrays, also of indefinite length, so rows can be written one by one.
+ * Buffered; {@link #flush()} writes the buffer out.
+ */
+public class CborWriter {
+    private static final int MAJOR_UINT = 0;
+    private static final int MAJOR_NINT = 1;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int INDEFINITE = 31;
+    private static final int NULL = 0xf6;
+    private static final int BREAK = 0xff;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+
+    public CborWriter(OutputStream out) {
+        this(out, 8192);
+    }
+
+    public CborWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(16, bufferSize)];
+    }
+
+    public CborWriter startArray(int size) throws IOException {
+        writeHeader(MAJOR_ARRAY, size);
+        return this;
+    }
+
+    // items until end()
+    public CborWriter startArray() throws IOException {
+        writeByte(MAJOR_ARRAY << 5 | INDEFINITE);
+        return this;
+    }
+
+    public CborWriter startMap(int size) throws IOException {
+        writeHeader(MAJOR_MAP, size);
+        return this;
+    }
+
+    // key/value pairs until end()
+    public CborWriter startMap() throws IOException {
+        writeByte(MAJOR_MAP << 5 | INDEFINITE);
+        return this;
+    }
+
+    // closes an indefinite-length array or map
+    public CborWriter end() throws IOException {
+        writeByte(BREAK);
+        return this;
+    }
+
+    public CborWriter write(long value) throws IOException {
+        if (value >= 0)
+            writeHeader(MAJOR_UINT, value);
+        else
+            writeHeader(MAJOR_NINT, -1 - value);
+        return this;
+    }
+
+    public CborWriter write(Long value) throws IOException {
+        return value == null ? writeNull() : write(value.longValue());
+    }
+
+    public CborWriter write(String value) throws IOException {
+        if (value == null)
+            return writeNull();
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHeader(MAJOR_TEXT, bytes.length);
+        writeBytes(bytes);
+        return this;
+    }
+
+    public CborWriter writeNull() throws IOException {
+        writeByte(NULL);
+        return this;
+    }
+
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    private void writeHeader(int major, long value) throws IOException {
+        ensure(9);
+        int type = major << 5;
+
+        if (value < 24)
+            buffer[position++] = (byte) (type | value);
+        else if (value < 0x100) {
+            buffer[position++] = (byte) (type | 24);
+            buffer[position++] = (byte) value;
+        }
+        else if (value < 0x10000) {
+            buffer[position++] = (byte) (type | 25);
+            putBigEndian(value, 2);
+        }
+        else if (value < 0x100000000L) {
+            buffer[position++] = (byte) (type | 26);
+            putBigEndian(value, 4);
+        }
+        else {
+            buffer[position++] = (byte) (type | 27);
+            putBigEndian(value, 8);
+        }
+    }
+
+    private void putBigEndian(long value, int bytes) {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8)
+            buffer[position++] = (byte) (value >>> shift);
+    }
+
+    private void writeByte(int b) throws IOException {
+        ensure(1);
+        buffer[position++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            out.write(buffer, 0, position);
+            position = 0;
+
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.length - position < bytes) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.itgnostic.test4sandbox.utils;
+
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.format.DateTimeFormatter;
+
+// RFC 4180: CRLF line ends, a field with a comma, quote or line break is quoted and its quotes are doubled
+public class CsvUtils {
+    public static final String EMPLOYEE_HEADER =
+            "id,firstName,lastName,fullName,position,supervisor,supervisorFullName,created\r\n";
+
+    public static void writeEmployee(Writer out, EmployeeView e, DateTimeFormatter dt) throws IOException {
+        out.write(Long.toString(e.id()));
+        out.write(',');
+        out.write(escape(e.firstName()));
+        out.write(',');
+        out.write(escape(e.lastName()));
+        out.write(',');
+        out.write(escape(EmployeeUtils.getFullName(e)));
+        out.write(',');
+        out.write(escape(e.position()));
+        out.write(',');
+        out.write(e.supervisor() != null ? e.supervisor().toString() : "");
+        out.write(',');
+        out.write(escape(EmployeeUtils.getSupervisorFullName(e)));
+        out.write(',');
+        out.write(e.created() != null ? dt.format(e.created().toInstant()) : "");
+        out.write("\r\n");
+    }
+
+    // null is an empty field
+    public static String escape(String value) {
+        if (value == null)
+            return "";
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r')
+                return '"' + value.replace("\"", "\"\"") + '"';
+        }
+
+        return value;
+    }
+}
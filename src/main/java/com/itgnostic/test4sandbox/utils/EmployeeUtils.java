@@ -1,5 +1,6 @@
 package com.itgnostic.test4sandbox.utils;
 
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
 import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
 import com.itgnostic.test4sandbox.service.EmployeeService;
 import com.itgnostic.test4sandbox.service.OperationResult;
@@ -13,7 +14,7 @@ import static com.itgnostic.test4sandbox.common.Const.DT;
 
 public class EmployeeUtils {
     public static String getCreatedDate(EmployeeEntity e) {
-        return DT.format(e.getCreated());
+        return DT.format(e.getCreated().toInstant());
     }
 
     public static boolean someChanges(EmployeeEntity e,
@@ -52,6 +53,18 @@ public class EmployeeUtils {
         return "%s %s (%s)".formatted(e.getFirstName(), e.getLastName(), e.getId());
     }
 
+    // concatenation, not formatted(): called for every row of /employee/all
+    public static String getFullName(EmployeeView e) {
+        return e.firstName() + " " + e.lastName() + " (" + e.id() + ")";
+    }
+
+    // "" without a supervisor, as for entities
+    public static String getSupervisorFullName(EmployeeView e) {
+        return e.supervisor() != null && e.supervisorFirstName() != null
+                ? e.supervisorFirstName() + " " + e.supervisorLastName() + " (" + e.supervisor() + ")"
+                : "";
+    }
+
     public static String getSupervisorFullName(EmployeeEntity e, EmployeeService employeeService) {
         OperationResult supOperationResult = employeeService.get(e.getSupervisor());
         RespEmployeeModel supE = null;
@@ -70,6 +83,12 @@ public class EmployeeUtils {
                 && e.getCreated() != null;
     }
 
+    public static boolean allReqFieldsOk(EmployeeView e) {
+        return e != null && e.id() > 0
+                && Strings.isNotBlank(e.firstName()) && Strings.isNotBlank(e.lastName())
+                && e.created() != null;
+    }
+
     public static boolean allReqFieldsOk(RespEmployeeModel e) {
         return e != null && Strings.isNotBlank(e.getId())
                 && Strings.isNotBlank(e.getFirstName()) && Strings.isNotBlank(e.getLastName())
@@ -86,7 +105,25 @@ public class EmployeeUtils {
                     .position(e.getPosition())
                     .supervisorId(e.getSupervisor() != null ? e.getSupervisor().toString() : "")
                     .supervisorFullName(getSupervisorFullName(e, employeeService))
-                    .created(DT.format(e.getCreated()))
+                    .created(DT.format(e.getCreated().toInstant()))
+                    .createdMillis(e.getCreated().getTime())
+                    .build()
+                : new RespEmployeeModel();
+    }
+
+    // supervisor's name comes with the view, no lookup
+    public static RespEmployeeModel toRespEmployeeModel(EmployeeView e) {
+        return allReqFieldsOk(e)
+                ? RespEmployeeModel.builder()
+                    .id(Long.toString(e.id()))
+                    .firstName(e.firstName())
+                    .lastName(e.lastName())
+                    .fullName(getFullName(e))
+                    .position(e.position())
+                    .supervisorId(e.supervisor() != null ? e.supervisor().toString() : "")
+                    .supervisorFullName(getSupervisorFullName(e))
+                    .created(DT.format(e.created().toInstant()))
+                    .createdMillis(e.created().getTime())
                     .build()
                 : new RespEmployeeModel();
     }
@@ -4,29 +4,48 @@ import org.hibernate.SessionFactory;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.registry.StandardServiceRegistry;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.JdbcSettings;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
 
 public class HibernateUtils {
-    private static final SessionFactory sessionFactory = buildSessionFactory();
+    public static final String CONFIG_FILE = "hibernate.cfg.xml";
 
-    private static SessionFactory buildSessionFactory() {
-        try {
-            StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
-                    //.configure("META-INF/persistence.xml")
-                    .configure("hibernate.cfg.xml")
-                    .build();
+    /**
+     * @param dataSource connections (spring.datasource.* of active profile)
+     * @param settings   hibernate settings on top of hibernate.cfg.xml
+     */
+    public static SessionFactory buildSessionFactory(DataSource dataSource, Map<String, String> settings) {
+        StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
+                .configure(CONFIG_FILE)
+                .applySetting(JdbcSettings.JAKARTA_NON_JTA_DATASOURCE, dataSource)
+                .applySettings(new HashMap<>(settings))
+                .build();
 
+        try {
             return new MetadataSources(serviceRegistry)
                     .addAnnotatedClass(EmployeeUtils.class)
                     .addPackage("com.itgnostic.test4sandbox.db.entity")
                     .buildMetadata()
                     .buildSessionFactory();
         } catch (Exception ex) {
-            System.err.println("Initial SessionFactory creation failed. " + ex);
-            throw new ExceptionInInitializerError(ex);
+            StandardServiceRegistryBuilder.destroy(serviceRegistry);
+            throw new IllegalStateException("SessionFactory creation failed", ex);
         }
     }
 
-    public static SessionFactory getSessionFactory() {
-        return sessionFactory;
+    /**
+     * H2 builds a whole result before the first row is returned, a lazy one is read from the table
+     * as it goes. Set back to false before the connection returns to the pool.
+     */
+    public static void setLazyQueryExecution(Connection connection, boolean lazy) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LAZY_QUERY_EXECUTION " + lazy);
+        }
     }
 }
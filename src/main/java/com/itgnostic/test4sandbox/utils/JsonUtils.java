@@ -1,13 +1,24 @@
 package com.itgnostic.test4sandbox.utils;
 
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
+import com.itgnostic.test4sandbox.db.entity.EmployeeChangeEntity;
+import com.itgnostic.test4sandbox.service.EmployeeStatsService.EmployeeStats;
+import com.itgnostic.test4sandbox.service.EmployeeStatsService.OrgStats;
+import com.itgnostic.test4sandbox.service.EmployeeStatsService.Verification;
 import com.itgnostic.test4sandbox.service.OperationResult;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import static com.itgnostic.test4sandbox.common.Const.DT;
+
 public class JsonUtils {
 
     public static JSONArray collectionToJson(Collection<?> collection) {
@@ -68,4 +79,86 @@ public class JsonUtils {
         return out;
     }
 
+    // "last" is the seq to ask with next time
+    public static JSONObject changesToJson(List<EmployeeChangeEntity> changes, long since) {
+        JSONArray result = new JSONArray();
+        long last = since;
+
+        for (EmployeeChangeEntity c : changes) {
+            result.put(changeToJson(c));
+            last = Math.max(last, c.getSeq());
+        }
+
+        return new JSONObject().put("result", result).put("last", last);
+    }
+
+    public static JSONObject changeToJson(EmployeeChangeEntity c) {
+        return new JSONObject()
+                .put("seq", c.getSeq())
+                .put("id", c.getEmployeeId() == null ? "" : c.getEmployeeId().toString())
+                .put("operation", c.getOperation().name())
+                .put("fields", c.getFields() == null ? new JSONArray() : new JSONArray(c.getFields().split(",")))
+                .put("changed", DT.format(c.getChanged()));
+    }
+
+    // distributions are {"<depth or span>": employees}, span 0 - employees without subordinates
+    public static JSONObject orgStatsToJson(OrgStats stats) {
+        JSONObject depths = new JSONObject();
+        stats.depths().forEach((depth, count) -> depths.put(depth.toString(), count));
+        JSONObject spans = new JSONObject();
+        stats.spans().forEach((span, count) -> spans.put(span.toString(), count));
+
+        return new JSONObject()
+                .put("employees", stats.employees())
+                .put("roots", stats.roots())
+                .put("managers", stats.managers())
+                .put("unreachable", stats.unreachable())
+                .put("maxDepth", stats.maxDepth())
+                .put("avgSpan", Math.round(stats.avgSpan() * 100) / 100.0)
+                .put("depth", depths)
+                .put("span", spans)
+                .put("computed", DT.format(Instant.ofEpochMilli(stats.computed())));
+    }
+
+    // total and depth are null for an employee not reachable from a root
+    public static JSONObject employeeStatsToJson(EmployeeStats stats) {
+        return new JSONObject()
+                .put("id", stats.id())
+                .put("direct", stats.direct())
+                .put("total", stats.total() == null ? JSONObject.NULL : stats.total())
+                .put("depth", stats.depth() == null ? JSONObject.NULL : stats.depth());
+    }
+
+    // one line of NDJSON, fields as in the "result" of the other read endpoints
+    public static void writeEmployee(Writer out, EmployeeView e, DateTimeFormatter dt) throws IOException {
+        out.write("{\"id\":\"");
+        out.write(Long.toString(e.id()));
+        out.write("\",\"firstName\":");
+        JSONObject.quote(e.firstName(), out);
+        out.write(",\"lastName\":");
+        JSONObject.quote(e.lastName(), out);
+        out.write(",\"fullName\":");
+        JSONObject.quote(EmployeeUtils.getFullName(e), out);
+        out.write(",\"position\":");
+        JSONObject.quote(e.position(), out);
+        out.write(",\"supervisor\":\"");
+        out.write(e.supervisor() != null ? e.supervisor().toString() : "");
+        out.write("\",\"supervisorFullName\":");
+        JSONObject.quote(EmployeeUtils.getSupervisorFullName(e), out);
+        out.write(",\"created\":\"");
+        out.write(e.created() != null ? dt.format(e.created().toInstant()) : "");
+        out.write("\"}\n");
+    }
+
+    public static JSONObject verificationToJson(Verification verification) {
+        return new JSONObject()
+                .put("employees", verification.employees())
+                .put("consistent", verification.isConsistent())
+                .put("directMismatches", verification.directMismatches())
+                .put("totalMismatches", verification.totalMismatches())
+                .put("depthMismatches", verification.depthMismatches())
+                .put("repaired", verification.repaired())
+                .put("millis", verification.millis());
+    }
+
 }
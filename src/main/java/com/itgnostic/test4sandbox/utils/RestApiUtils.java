@@ -4,6 +4,7 @@ import org.apache.logging.log4j.util.Strings;
 import org.h2.util.StringUtils;
 
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -29,7 +30,7 @@ public class RestApiUtils {
 
     public static Set<Long> split2SetLong(String paramValue) {
         return Strings.isNotBlank(paramValue) && paramValue.matches("(\\d+,?)+")
-                ? Stream.of(paramValue.split(",")).mapToLong(Long::parseLong).boxed().collect(Collectors.toSet())
+                ? Stream.of(paramValue.split(",")).mapToLong(Long::parseLong).boxed().collect(Collectors.toCollection(LinkedHashSet::new))
                 : Collections.emptySet();
     }
 
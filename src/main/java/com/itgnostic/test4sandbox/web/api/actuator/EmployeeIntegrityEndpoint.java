@@ -0,0 +1,36 @@
+package com.itgnostic.test4sandbox.web.api.actuator;
+
+import com.itgnostic.test4sandbox.service.EmployeeIntegrityService;
+import com.itgnostic.test4sandbox.service.EmployeeIntegrityService.Report;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/integrity: GET - progress of the running integrity check or the result of the last one,
+ * POST {"repair": true|false} - starts a check (or returns the running one).
+ */
+@Component
+@Endpoint(id = "integrity")
+public class EmployeeIntegrityEndpoint {
+    private final EmployeeIntegrityService integrityService;
+
+    public EmployeeIntegrityEndpoint(EmployeeIntegrityService integrityService) {
+        this.integrityService = integrityService;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        Report report = integrityService.getReport();
+        return report == null ? Map.of("state", "not-run") : report.toMap();
+    }
+
+    @WriteOperation
+    public Map<String, Object> run(@Nullable Boolean repair) {
+        return integrityService.start(Boolean.TRUE.equals(repair)).toMap();
+    }
+}
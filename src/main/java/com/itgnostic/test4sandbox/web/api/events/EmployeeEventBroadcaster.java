@@ -0,0 +1,239 @@
+package com.itgnostic.test4sandbox.web.api.events;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.itgnostic.test4sandbox.db.entity.EmployeeChangeEntity;
+import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import com.itgnostic.test4sandbox.service.EmployeeChangeService;
+import com.itgnostic.test4sandbox.utils.JsonUtils;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes employee changes to Server-Sent Events clients.
+ * <p>
+ * One dispatcher thread reads the change log after every commit and puts the events into per-client
+ * bounded queues; a small sender pool writes them out. A client whose queue is full is too slow and
+ * gets disconnected (EventSource reconnects with Last-Event-ID and gets the missed changes replayed).
+ * Idle clients are async requests only: no thread is held for them.
+ */
+@Slf4j
+@Service
+public class EmployeeEventBroadcaster {
+    private static final String TOTAL_QUERY = "SELECT COUNT(e) FROM %s e".formatted(EmployeeEntity.class.getName());
+    private static final int READ_LIMIT = 1000;
+
+    private final EmployeeChangeService changeService;
+    private final SessionFactory sessionFactory;
+    private final int bufferSize;
+    private final long timeout;
+
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean dispatchPending = new AtomicBoolean();
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("employee-events").setDaemon(true).build());
+    private final ExecutorService senders;
+
+    // only touched by the dispatcher thread
+    private long lastSeq = -1;
+
+    public EmployeeEventBroadcaster(EmployeeChangeService changeService,
+                                    SessionFactory sessionFactory,
+                                    @Value("${employee.events.buffer:256}") int bufferSize,
+                                    @Value("${employee.events.senders:4}") int senders,
+                                    @Value("${employee.events.timeout:1800000}") long timeout) {
+        this.changeService = changeService;
+        this.sessionFactory = sessionFactory;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.timeout = timeout;
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senders),
+                new ThreadFactoryBuilder().setNameFormat("employee-events-send-%d").setDaemon(true).build());
+
+        changeService.addListener(this::changed);
+    }
+
+    /**
+     * @param lastEventId seq of the last event the client has seen (Last-Event-ID on reconnect), or null
+     */
+    public SseEmitter subscribe(Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Client client = new Client(emitter);
+
+        emitter.onCompletion(() -> clients.remove(client));
+        emitter.onTimeout(() -> clients.remove(client));
+        emitter.onError(e -> clients.remove(client));
+
+        // on the dispatcher thread: replay and registration can't interleave with a dispatch
+        dispatcher.execute(() -> {
+            initLastSeq();
+
+            if (lastEventId != null && lastEventId < lastSeq) {
+                List<EmployeeChangeEntity> missed = changeService.getChanges(lastEventId, READ_LIMIT);
+                if (missed.size() == READ_LIMIT) {
+                    // too far behind for a replay: let the client reload everything
+                    client.offer(SseEmitter.event().name("reset").data("{}").build());
+                }
+                else {
+                    long total = getTotal();
+                    missed.stream()
+                            .filter(c -> c.getSeq() <= lastSeq)
+                            .forEach(c -> client.offer(toEvent(c, total)));
+                }
+            }
+
+            clients.add(client);
+            client.offer(SseEmitter.event().comment("seq " + lastSeq).build());
+        });
+
+        return emitter;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    // keeps idle connections alive through proxies and finds dead ones; sends changes held back by a gap
+    // in the change log that is given up by now (rolled back)
+    @Scheduled(initialDelayString = "${employee.events.heartbeat:30000}", fixedDelayString = "${employee.events.heartbeat:30000}")
+    public void heartbeat() {
+        Set<DataWithMediaType> ping = SseEmitter.event().comment("ping").build();
+        clients.forEach(client -> client.offer(ping));
+        changed();
+    }
+
+    // before the web server stops, otherwise every open connection ends with an async timeout
+    @EventListener(ContextClosedEvent.class)
+    public void closeClients() {
+        clients.forEach(client -> client.emitter.complete());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    private void changed() {
+        if (dispatcher.isShutdown())
+            return;
+
+        // a burst of commits is read by one dispatch
+        if (dispatchPending.compareAndSet(false, true))
+            dispatcher.execute(this::dispatch);
+    }
+
+    private void dispatch() {
+        dispatchPending.set(false);
+
+        try {
+            if (clients.isEmpty()) {
+                lastSeq = changeService.getLastSeq();
+                return;
+            }
+
+            initLastSeq();
+            List<EmployeeChangeEntity> changes;
+            do {
+                changes = changeService.getChanges(lastSeq, READ_LIMIT);
+                if (changes.isEmpty())
+                    return;
+
+                long total = getTotal();
+                for (EmployeeChangeEntity change : changes) {
+                    Set<DataWithMediaType> event = toEvent(change, total);
+                    clients.forEach(client -> client.offer(event));
+                    lastSeq = change.getSeq();
+                }
+            } while (changes.size() == READ_LIMIT);
+        }
+        catch (RuntimeException e) {
+            log.error("Employee events dispatch failed", e);
+        }
+    }
+
+    private void initLastSeq() {
+        if (lastSeq < 0)
+            lastSeq = changeService.getLastSeq();
+    }
+
+    private long getTotal() {
+        try (Session session = sessionFactory.openSession()) {
+            return session.createQuery(TOTAL_QUERY, Long.class).getSingleResult();
+        }
+    }
+
+    // built once and shared by all clients, an event builder is not thread-safe
+    private static Set<DataWithMediaType> toEvent(EmployeeChangeEntity change, long total) {
+        return SseEmitter.event()
+                .id(String.valueOf(change.getSeq()))
+                .name("change")
+                .data(JsonUtils.changeToJson(change).put("total", total).toString())
+                .build();
+    }
+
+    private class Client {
+        private final SseEmitter emitter;
+        private final Queue<Set<DataWithMediaType>> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Client(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(Set<DataWithMediaType> event) {
+            if (closed)
+                return;
+
+            if (!buffer.offer(event)) {
+                log.warn("Employee events client is too slow, disconnecting");
+                close();
+                return;
+            }
+
+            if (sending.compareAndSet(false, true))
+                senders.execute(this::drain);
+        }
+
+        private void drain() {
+            try {
+                Set<DataWithMediaType> event;
+                while (!closed && (event = buffer.poll()) != null)
+                    emitter.send(event);
+            }
+            catch (IOException | IllegalStateException e) {
+                // client went away
+                close();
+            }
+            finally {
+                sending.set(false);
+            }
+
+            // an event offered between the last poll and the reset above
+            if (!closed && !buffer.isEmpty() && sending.compareAndSet(false, true))
+                senders.execute(this::drain);
+        }
+
+        private void close() {
+            closed = true;
+            clients.remove(this);
+            buffer.clear();
+            emitter.complete();
+        }
+    }
+}
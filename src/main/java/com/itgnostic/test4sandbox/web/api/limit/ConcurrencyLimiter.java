@@ -0,0 +1,98 @@
+package com.itgnostic.test4sandbox.web.api.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Adaptive limit of requests in flight (AIMD).
+ * <p>
+ * Latency of finished requests goes into a short and a long moving average. When the short one is
+ * {@code tolerance} times above the long one (the database slows down, requests queue up) the limit
+ * drops by 10%, at most once per {@code DECREASE_PERIOD}; while requests are fast and the limit is
+ * used, it grows by one. Requests over the limit are rejected right away instead of queuing.
+ */
+public class ConcurrencyLimiter {
+    private static final double SHORT_ALPHA = 0.1;
+    private static final double LONG_ALPHA = 0.01;
+    private static final long DECREASE_PERIOD = 100_000_000L; // ns
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final long minLatency;
+    private final LongSupplier clock;
+
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // doubles as raw long bits, updated with CAS
+    private final AtomicLong shortLatency = new AtomicLong(Double.doubleToLongBits(-1));
+    private final AtomicLong longLatency = new AtomicLong(Double.doubleToLongBits(-1));
+    private final AtomicLong lastDecrease = new AtomicLong();
+
+    /**
+     * @param minLatency ns, shorter averages never count as overload
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, long minLatency) {
+        this(initialLimit, minLimit, maxLimit, tolerance, minLatency, System::nanoTime);
+    }
+
+    ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, long minLatency, LongSupplier clock) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = tolerance;
+        this.minLatency = minLatency;
+        this.clock = clock;
+        this.limit = new AtomicInteger(Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit)));
+        this.lastDecrease.set(clock.getAsLong() - DECREASE_PERIOD);
+    }
+
+    public boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > limit.get()) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param latency ns the request took, negative - not measured (e.g. async requests)
+     */
+    public void release(long latency) {
+        int wasInFlight = inFlight.getAndDecrement();
+        if (latency < 0)
+            return;
+
+        double shortAvg = average(shortLatency, latency, SHORT_ALPHA);
+        double longAvg = average(longLatency, latency, LONG_ALPHA);
+
+        if (shortAvg > minLatency && shortAvg > longAvg * tolerance) {
+            long now = clock.getAsLong();
+            long last = lastDecrease.get();
+            if (now - last >= DECREASE_PERIOD && lastDecrease.compareAndSet(last, now))
+                limit.updateAndGet(l -> Math.max(minLimit, (int) (l * 0.9)));
+        }
+        else if (wasInFlight * 2 >= limit.get())
+            limit.updateAndGet(l -> Math.min(maxLimit, l + 1));
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private static double average(AtomicLong bits, long value, double alpha) {
+        while (true) {
+            long current = bits.get();
+            double avg = Double.longBitsToDouble(current);
+            double next = avg < 0 ? value : avg + alpha * (value - avg);
+
+            if (bits.compareAndSet(current, Double.doubleToLongBits(next)))
+                return next;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.itgnostic.test4sandbox.web.api.limit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.itgnostic.test4sandbox.errors.RestApiErrors.OVERLOADED;
+import static com.itgnostic.test4sandbox.errors.RestApiErrors.TOO_MANY_REQUESTS;
+
+/**
+ * REST API protection: a token bucket per client (remote address) and endpoint answers 429,
+ * an adaptive {@link ConcurrencyLimiter} answers 503 when requests get slow.
+ * Rejections and the current limit are in actuator metrics (employee.rate-limit.*).
+ */
+@Component
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitFilter extends OncePerRequestFilter {
+    private static final String API_PATH = "/rest/api/";
+
+    private final RateLimitProperties properties;
+    private final Cache<String, TokenBucket> buckets;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final MeterRegistry meterRegistry;
+
+    public RateLimitFilter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.buckets = CacheBuilder.newBuilder()
+                .maximumSize(properties.getMaxClients())
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build();
+
+        RateLimitProperties.Concurrency concurrency = properties.getConcurrency();
+        this.concurrencyLimiter = new ConcurrencyLimiter(concurrency.getInitialLimit(), concurrency.getMinLimit(),
+                concurrency.getMaxLimit(), concurrency.getTolerance(), TimeUnit.MILLISECONDS.toNanos(concurrency.getMinLatency()));
+
+        Gauge.builder("employee.rate-limit.concurrency.limit", concurrencyLimiter, ConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit of REST API requests in flight")
+                .register(meterRegistry);
+        Gauge.builder("employee.rate-limit.concurrency.in-flight", concurrencyLimiter, ConcurrencyLimiter::getInFlight)
+                .description("REST API requests in flight")
+                .register(meterRegistry);
+        Gauge.builder("employee.rate-limit.clients", buckets, Cache::size)
+                .description("Client/endpoint token buckets in memory")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.isEnabled() || !getPath(request).startsWith(API_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = getPath(request);
+        RateLimitProperties.Rule rule = properties.getEndpoints().getOrDefault(path, properties.getDefaults());
+
+        long wait = getBucket(request.getRemoteAddr() + " " + path, rule).tryAcquire();
+        if (wait > 0) {
+            rejected(path, "rate");
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, TimeUnit.NANOSECONDS.toSeconds(wait) + 1,
+                    TOO_MANY_REQUESTS.getErrorText().formatted(path));
+            return;
+        }
+
+        if (!properties.getConcurrency().isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        if (!concurrencyLimiter.tryAcquire()) {
+            rejected(path, "concurrency");
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1, OVERLOADED.getErrorText());
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        }
+        finally {
+            // long-poll / SSE requests only started here, their duration says nothing about the database
+            concurrencyLimiter.release(request.isAsyncStarted() ? -1 : System.nanoTime() - start);
+        }
+    }
+
+    private TokenBucket getBucket(String key, RateLimitProperties.Rule rule) {
+        try {
+            return buckets.get(key, () -> new TokenBucket(rule.getRate(), rule.getBurst()));
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void rejected(String path, String reason) {
+        Counter.builder("employee.rate-limit.rejected")
+                .description("REST API requests rejected by rate or concurrency limit")
+                // only configured paths as tags: any path can be requested
+                .tag("endpoint", properties.getEndpoints().containsKey(path) ? path : "other")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long retryAfter, String error) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader("Retry-After", String.valueOf(retryAfter));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write(new JSONObject().put("errors", new JSONArray(List.of(error))).toString());
+    }
+
+    private static String getPath(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+}
@@ -0,0 +1,39 @@
+package com.itgnostic.test4sandbox.web.api.limit;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// employee.rate-limit in application.yml
+@Getter @Setter
+@ConfigurationProperties(prefix = "employee.rate-limit")
+public class RateLimitProperties {
+    private boolean enabled = true;
+    // clients with own buckets kept in memory, the least recently seen are dropped first
+    private long maxClients = 10_000;
+    private Rule defaults = new Rule();
+    // path (without context path) -> rule
+    private Map<String, Rule> endpoints = new HashMap<>();
+    private Concurrency concurrency = new Concurrency();
+
+    @Getter @Setter
+    public static class Rule {
+        // requests per second
+        private double rate = 50;
+        private int burst = 100;
+    }
+
+    @Getter @Setter
+    public static class Concurrency {
+        private boolean enabled = true;
+        private int initialLimit = 20;
+        private int minLimit = 4;
+        private int maxLimit = 200;
+        private double tolerance = 2.0;
+        // ms, a short latency average below it never lowers the limit
+        private long minLatency = 10;
+    }
+}
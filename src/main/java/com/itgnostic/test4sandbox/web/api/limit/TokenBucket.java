@@ -0,0 +1,44 @@
+package com.itgnostic.test4sandbox.web.api.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket: {@code rate} tokens per second, up to {@code burst} at once.
+ * <p>
+ * Kept as a single "time when the bucket is full again" value (GCRA), so taking a token is one CAS.
+ */
+public class TokenBucket {
+    private final long interval;   // ns per token
+    private final long capacity;   // ns of tokens the bucket holds
+    private final LongSupplier clock;
+    private final AtomicLong fullAt;
+
+    public TokenBucket(double rate, int burst) {
+        this(rate, burst, System::nanoTime);
+    }
+
+    TokenBucket(double rate, int burst, LongSupplier clock) {
+        this.interval = (long) (1_000_000_000L / rate);
+        this.capacity = interval * Math.max(1, burst);
+        this.clock = clock;
+        this.fullAt = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * @return 0 if a token was taken, otherwise ns until one is available
+     */
+    public long tryAcquire() {
+        while (true) {
+            long now = clock.getAsLong();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + interval;
+
+            if (next - now > capacity)
+                return next - now - capacity;
+
+            if (fullAt.compareAndSet(current, next))
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.itgnostic.test4sandbox.web.api.rest;
+
+import com.itgnostic.test4sandbox.db.snapshot.EmployeeSnapshotService;
+import com.itgnostic.test4sandbox.service.EmployeeChangeService;
+import com.itgnostic.test4sandbox.service.EmployeeService;
+import com.itgnostic.test4sandbox.service.EmployeeStatsService;
+import com.itgnostic.test4sandbox.utils.CborUtils;
+import com.itgnostic.test4sandbox.utils.CborWriter;
+import com.itgnostic.test4sandbox.utils.JsonUtils;
+import jakarta.servlet.http.HttpServletRequest;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.itgnostic.test4sandbox.common.Const.MEDIA_TYPE_CBOR;
+import static com.itgnostic.test4sandbox.errors.DbErrors.DB_IMPORT_ERROR;
+import static com.itgnostic.test4sandbox.errors.RestApiErrors.BAD_PARAM;
+
+// rarely used: created on the first admin call, not at startup
+@Lazy
+@CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+@RestController
+@RequestMapping(value = "/rest/api/admin")
+public class AdminRestApiController {
+
+    @Autowired
+    private EmployeeService employeeService;
+    @Autowired
+    private EmployeeSnapshotService snapshotService;
+    @Autowired
+    private EmployeeChangeService changeService;
+    @Autowired
+    private EmployeeStatsService statsService;
+
+    @RequestMapping(value = "/export", method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> exportEmployees() {
+        StreamingResponseBody body = out -> snapshotService.save(Channels.newChannel(out));
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"employees.snapshot\"")
+                .body(body);
+    }
+
+    // rows as a CBOR stream: {"result": [_ {id, firstName, lastName, position, supervisor, created}, ...], "total": n}
+    @RequestMapping(value = "/export", method = RequestMethod.GET, produces = MEDIA_TYPE_CBOR)
+    public ResponseEntity<StreamingResponseBody> exportEmployeesCbor() {
+        StreamingResponseBody body = out -> {
+            CborWriter writer = new CborWriter(out);
+            writer.startMap().write("result").startArray();
+            long rows = snapshotService.scan(r -> CborUtils.writeEmployee(writer, r));
+            writer.end().write("total").write(rows).end().flush();
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(MEDIA_TYPE_CBOR))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"employees.cbor\"")
+                .body(body);
+    }
+
+    @RequestMapping(value = "/import", method = RequestMethod.POST, consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<String> importEmployees(HttpServletRequest request) {
+        long rows;
+        try {
+            rows = snapshotService.restore(Channels.newChannel(request.getInputStream()));
+        } catch (IOException | RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JSONObject()
+                    .put("errors", new JSONArray(List.of(DB_IMPORT_ERROR.getErrorText().formatted(e.getMessage()))))
+                    .toString());
+        }
+        finally {
+            employeeService.clearCache();
+        }
+
+        changeService.changed();
+
+        return ResponseEntity.ok(new JSONObject().put("result", "%d employees were imported".formatted(rows)).toString());
+    }
+
+    // replaces all employees with a synthetic org of "size" employees (shape from employee.seed.*), same seed - same org
+    @RequestMapping(value = "/generate", method = RequestMethod.POST)
+    public ResponseEntity<String> generateEmployees(@RequestParam(value = "size") String size,
+                                                    @RequestParam(value = "seed", required = false) String seed) {
+        List<String> errors = new ArrayList<>();
+        if (!size.matches("[1-9]\\d{0,9}"))
+            errors.add(BAD_PARAM.getErrorText().formatted("size", size));
+        if (seed != null && !seed.matches("\\d{1,18}"))
+            errors.add(BAD_PARAM.getErrorText().formatted("seed", seed));
+
+        if (!errors.isEmpty())
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(new JSONObject().put("errors", new JSONArray(errors)).toString());
+
+        long rows;
+        try {
+            rows = snapshotService.generate(Long.parseLong(size), seed == null ? System.nanoTime() : Long.parseLong(seed));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JSONObject()
+                    .put("errors", new JSONArray(List.of(DB_IMPORT_ERROR.getErrorText().formatted(e.getMessage()))))
+                    .toString());
+        }
+        finally {
+            employeeService.clearCache();
+        }
+
+        changeService.changed();
+
+        return ResponseEntity.ok(new JSONObject().put("result", "%d employees were generated".formatted(rows)).toString());
+    }
+
+    // full recompute of the org-chart stats, stored subtree sizes are fixed with repair=true
+    @RequestMapping(value = "/stats/verify", method = RequestMethod.POST)
+    public ResponseEntity<String> verifyStats(@RequestParam(value = "repair", defaultValue = "false") boolean repair) {
+        return ResponseEntity.ok(new JSONObject().put("result", JsonUtils.verificationToJson(statsService.verify(repair))).toString());
+    }
+}
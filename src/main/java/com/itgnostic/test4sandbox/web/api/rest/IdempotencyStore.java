@@ -0,0 +1,162 @@
+package com.itgnostic.test4sandbox.web.api.rest;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Striped;
+import com.itgnostic.test4sandbox.db.entity.IdempotencyKeyEntity;
+import com.itgnostic.test4sandbox.trace.CacheLookupEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+import static com.itgnostic.test4sandbox.errors.RestApiErrors.BAD_PARAM;
+import static com.itgnostic.test4sandbox.errors.RestApiErrors.IDEMPOTENCY_KEY_REUSED;
+
+/**
+ * Responses of POST/PUT requests sent with an {@code Idempotency-Key} header.
+ * A retry with the same key gets the stored response back and the request is not executed again;
+ * concurrent requests with the same key wait for the first one (striped locks).
+ * <p>
+ * Keys live in a bounded in-memory cache for {@code ttl} ms, with {@code persist} also in the
+ * idempotency_key table, so retries still work after a restart.
+ */
+@Slf4j
+@Component
+public class IdempotencyStore {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final String DELETE_EXPIRED_QUERY =
+            "DELETE FROM %s k WHERE k.created < :before".formatted(IdempotencyKeyEntity.class.getName());
+
+    private final SessionFactory sessionFactory;
+    private final boolean persist;
+    private final long ttl;
+    private final Cache<String, IdempotencyKeyEntity> cache;
+    private final Striped<Lock> locks = Striped.lazyWeakLock(256);
+
+    public IdempotencyStore(SessionFactory sessionFactory,
+                            @Value("${employee.idempotency.max-size:10000}") long maxSize,
+                            @Value("${employee.idempotency.ttl:86400000}") long ttl,
+                            @Value("${employee.idempotency.persist:false}") boolean persist) {
+        this.sessionFactory = sessionFactory;
+        this.persist = persist;
+        this.ttl = ttl;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * @param key         Idempotency-Key header value, blank - the request is just executed
+     * @param scope       method and path of the request
+     * @param requestBody what identifies the request payload (e.g. request model toString)
+     */
+    public ResponseEntity<String> execute(String key, String scope, Object requestBody, Supplier<ResponseEntity<String>> request) {
+        if (key == null || key.isBlank())
+            return request.get();
+
+        if (key.length() > MAX_KEY_LENGTH)
+            return error(HttpStatus.BAD_REQUEST, BAD_PARAM.getErrorText().formatted(HEADER, key));
+
+        String requestKey = scope + " " + key;
+        String fingerprint = Hashing.sha256().hashString(String.valueOf(requestBody), StandardCharsets.UTF_8).toString();
+
+        Lock lock = locks.get(requestKey);
+        lock.lock();
+        try {
+            IdempotencyKeyEntity stored = find(requestKey);
+            if (stored != null) {
+                return stored.getFingerprint().equals(fingerprint)
+                        ? ResponseEntity.status(stored.getStatus()).header(REPLAYED_HEADER, "true").body(stored.getBody())
+                        : error(HttpStatus.UNPROCESSABLE_ENTITY, IDEMPOTENCY_KEY_REUSED.getErrorText().formatted(key));
+            }
+
+            ResponseEntity<String> out = request.get();
+
+            // server errors are not stored: a retry may succeed
+            if (!out.getStatusCode().is5xxServerError())
+                store(new IdempotencyKeyEntity(requestKey, fingerprint, out.getStatusCode().value(), out.getBody()));
+
+            return out;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${employee.idempotency.cleanup-interval:600000}",
+            fixedDelayString = "${employee.idempotency.cleanup-interval:600000}")
+    public void deleteExpired() {
+        if (!persist)
+            return;
+
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            int deleted = session.createMutationQuery(DELETE_EXPIRED_QUERY)
+                    .setParameter("before", LocalDateTime.now().minus(ttl, ChronoUnit.MILLIS))
+                    .executeUpdate();
+            transaction.commit();
+
+            if (deleted > 0)
+                log.info("Deleted {} expired idempotency keys", deleted);
+        }
+    }
+
+    private IdempotencyKeyEntity find(String requestKey) {
+        IdempotencyKeyEntity out = cache.getIfPresent(requestKey);
+        CacheLookupEvent.emit("idempotency", out != null);
+        if (out != null || !persist)
+            return out;
+
+        try (Session session = sessionFactory.openSession()) {
+            out = session.get(IdempotencyKeyEntity.class, requestKey);
+        }
+
+        if (out == null || out.getCreated().isBefore(LocalDateTime.now().minus(ttl, ChronoUnit.MILLIS)))
+            return null;
+
+        cache.put(requestKey, out);
+        return out;
+    }
+
+    private void store(IdempotencyKeyEntity entity) {
+        cache.put(entity.getRequestKey(), entity);
+
+        if (!persist)
+            return;
+
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            // an expired row with the same key may still be there
+            session.merge(entity);
+            transaction.commit();
+        }
+        catch (RuntimeException e) {
+            // the response is already produced, the in-memory entry still covers retries
+            log.error("Can't persist idempotency key {}", entity.getRequestKey(), e);
+        }
+    }
+
+    private static ResponseEntity<String> error(HttpStatus status, String error) {
+        return ResponseEntity.status(status).body(new JSONObject().put("errors", new JSONArray(List.of(error))).toString());
+    }
+}
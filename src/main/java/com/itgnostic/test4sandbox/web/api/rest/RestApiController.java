@@ -1,35 +1,80 @@
 package com.itgnostic.test4sandbox.web.api.rest;
 
+import com.itgnostic.test4sandbox.db.dao.EmployeeDbService.DeleteMode;
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
 import com.itgnostic.test4sandbox.errors.RestApiErrors;
 import com.itgnostic.test4sandbox.errors.ValueErrors;
+import com.itgnostic.test4sandbox.web.api.events.EmployeeEventBroadcaster;
 import com.itgnostic.test4sandbox.web.api.rest.model.ReqEmployeeModel;
+import com.itgnostic.test4sandbox.web.api.rest.model.ReqReassignModel;
+import com.itgnostic.test4sandbox.service.EmployeeChangeService;
 import com.itgnostic.test4sandbox.service.EmployeeService;
+import com.itgnostic.test4sandbox.service.EmployeeStatsService;
+import com.itgnostic.test4sandbox.service.EmployeeStatsService.EmployeeStats;
 import com.itgnostic.test4sandbox.service.OperationResult;
+import com.itgnostic.test4sandbox.trace.EmployeeTracing;
+import com.itgnostic.test4sandbox.trace.SerializationEvent;
+import com.itgnostic.test4sandbox.utils.CborUtils;
+import com.itgnostic.test4sandbox.utils.CborWriter;
+import com.itgnostic.test4sandbox.utils.CsvUtils;
 import com.itgnostic.test4sandbox.utils.JsonUtils;
 import com.itgnostic.test4sandbox.utils.RestApiUtils;
 import org.apache.logging.log4j.util.Strings;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
 
+import static com.itgnostic.test4sandbox.common.Const.DT;
+import static com.itgnostic.test4sandbox.common.Const.MEDIA_TYPE_CBOR;
+import static com.itgnostic.test4sandbox.common.Const.MEDIA_TYPE_CSV;
+import static com.itgnostic.test4sandbox.errors.DbErrors.EMPLOYEE_NOT_FOUND;
 import static com.itgnostic.test4sandbox.errors.RestApiErrors.*;
 
 @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
 @RestController
 @RequestMapping(value = "/rest/api")
 public class RestApiController {
+    private static final int CHANGES_DEFAULT_LIMIT = 100;
+    private static final int CHANGES_MAX_LIMIT = 1000;
+    // below async request timeout (employee.web.async-timeout) and usual proxy read timeouts
+    private static final long CHANGES_MAX_WAIT_MS = 25_000;
+    // chars written to the response at once by /employee/all
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     private List<String> errors = new ArrayList<>();
 
     @Autowired
     private EmployeeService employeeService;
+    @Autowired
+    private EmployeeChangeService changeService;
+    @Autowired
+    private EmployeeEventBroadcaster eventBroadcaster;
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+    @Autowired
+    private EmployeeStatsService statsService;
+    @Autowired
+    private EmployeeTracing tracing;
 
     @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
     @RequestMapping(value = "/employee", method = RequestMethod.GET)
@@ -59,7 +104,12 @@ public class RestApiController {
 
     @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
     @RequestMapping(value = "/employee", method = RequestMethod.PUT)
-    public ResponseEntity<String> putEmployee(@RequestBody ReqEmployeeModel updEmployee) {
+    public ResponseEntity<String> putEmployee(@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                              @RequestBody ReqEmployeeModel updEmployee) {
+        return idempotencyStore.execute(idempotencyKey, "PUT /employee", updEmployee, () -> putEmployee(updEmployee));
+    }
+
+    private ResponseEntity<String> putEmployee(ReqEmployeeModel updEmployee) {
         Set<Long> subs = RestApiUtils.split2SetLong(updEmployee.getSubordinates());
         Long employeeId = RestApiUtils.parseLong(updEmployee.getId());
         Long supervisorId = RestApiUtils.parseLong(updEmployee.getSupervisor());
@@ -108,7 +158,13 @@ public class RestApiController {
 
     @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
     @RequestMapping(value = "/employee", method = RequestMethod.POST)
-    public ResponseEntity<String> postEmployee(@RequestBody ReqEmployeeModel newEmployee) {
+    public ResponseEntity<String> postEmployee(@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                               @RequestBody ReqEmployeeModel newEmployee) {
+        // a retried POST must not create the employee twice
+        return idempotencyStore.execute(idempotencyKey, "POST /employee", newEmployee, () -> postEmployee(newEmployee));
+    }
+
+    private ResponseEntity<String> postEmployee(ReqEmployeeModel newEmployee) {
         errors = new ArrayList<>();
 
         if (Strings.isBlank(newEmployee.getFirstName()))
@@ -134,34 +190,301 @@ public class RestApiController {
                 : badResponse(HttpStatus.NOT_FOUND);
     }
 
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/reassign", method = RequestMethod.POST)
+    public ResponseEntity<String> reassignEmployees(@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                                    @RequestBody ReqReassignModel reassign) {
+        return idempotencyStore.execute(idempotencyKey, "POST /employee/reassign", reassign, () -> reassignEmployees(reassign));
+    }
+
+    private ResponseEntity<String> reassignEmployees(ReqReassignModel reassign) {
+        errors = new ArrayList<>();
+
+        if (Strings.isBlank(reassign.getIds()) && Strings.isBlank(reassign.getFrom()))
+            errors.add(NO_PARAM_VALUE.getErrorText().formatted("ids"));
+        else if (Strings.isNotBlank(reassign.getIds()) && Strings.isNotBlank(reassign.getFrom()))
+            errors.add(BAD_PARAM.getErrorText().formatted("from", reassign.getFrom()));
+        else if (Strings.isNotBlank(reassign.getIds()) && !reassign.getIds().matches("(\\d+,?)+"))
+            errors.add(BAD_PARAM.getErrorText().formatted("ids", reassign.getIds()));
+        else if (Strings.isNotBlank(reassign.getFrom()) && !reassign.getFrom().matches("\\d+"))
+            errors.add(BAD_PARAM.getErrorText().formatted("from", reassign.getFrom()));
+
+        if (Strings.isNotBlank(reassign.getSupervisor()) && !reassign.getSupervisor().matches("\\d+"))
+            errors.add(BAD_PARAM.getErrorText().formatted("supervisor", reassign.getSupervisor()));
+
+        if (!errors.isEmpty())
+            return badResponse(HttpStatus.PRECONDITION_FAILED);
+
+        Set<Long> ids;
+        if (Strings.isNotBlank(reassign.getFrom())) {
+            long from = Long.parseLong(reassign.getFrom());
+            ids = employeeService.getSubordinates(from);
+
+            if (ids == null) {
+                errors.add(EMPLOYEE_NOT_FOUND.getErrorText().formatted(from));
+                return badResponse(HttpStatus.NOT_FOUND);
+            }
+            else if (ids.isEmpty())
+                return ResponseEntity.ok(new JSONObject().put("result", "0 employees were reassigned").toString());
+        }
+        else
+            ids = RestApiUtils.split2SetLong(reassign.getIds());
+
+        OperationResult result = employeeService.reassign(ids, RestApiUtils.parseLong(reassign.getSupervisor()));
+
+        if (result.hasErrors())
+            errors.add(result.getErrorDetails());
+
+        return errors.isEmpty()
+                ? ResponseEntity.ok(new JSONObject().put("result", "%d employees were reassigned".formatted(result.getAffected())).toString())
+                : badResponse(HttpStatus.CONFLICT);
+    }
+
     @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
     @RequestMapping(value = "/employee", method = RequestMethod.DELETE)
-    public ResponseEntity<String> delEmployee(@RequestParam(value = "id") String id) {
+    public ResponseEntity<String> delEmployee(@RequestParam(value = "id") String id,
+                                              @RequestParam(value = "mode", required = false) String mode) {
         errors = new ArrayList<>();
 
+        // orphan - subordinates lose the supervisor, reparent-to-grandparent, delete-subtree
+        DeleteMode deleteMode = mode == null ? DeleteMode.ORPHAN : DeleteMode.byParam(mode);
 
         if (id == null)
             errors.add(NO_PARAM.getErrorText().formatted("id"));
         else if (!id.matches("\\d+"))
             errors.add(BAD_PARAM.getErrorText().formatted("id", id));
+        if (deleteMode == null)
+            errors.add(BAD_PARAM.getErrorText().formatted("mode", mode));
 
         if (!errors.isEmpty())
             return badResponse(HttpStatus.PRECONDITION_FAILED);
 
         long[] _id = RestApiUtils.getLongParamsAsArray(id, true);
 
-        OperationResult result = employeeService.del(_id[0]);
+        OperationResult result = employeeService.del(_id[0], deleteMode);
         if (result.hasErrors())
             errors.add(result.getErrorDetails());
 
         return result.isSuccess()
-                ? ResponseEntity.ok(new JSONObject().put("result", "User with id '%d' was deleted".formatted(_id[0])).toString())
+                ? ResponseEntity.ok(new JSONObject()
+                        .put("result", "User with id '%d' was deleted".formatted(_id[0]))
+                        .put("deleted", result.getAffected()).toString())
                 : badResponse(HttpStatus.NOT_FOUND, result);
     }
 
     @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
     @RequestMapping(value = "/employee/list", method = RequestMethod.GET)
     public ResponseEntity<String> getEmployeesList(@RequestParam(value = "ids") String ids) {
+        OperationResult result = findEmployeesList(ids);
+
+        if (result == null)
+            return badResponse(HttpStatus.PRECONDITION_FAILED);
+
+        return result.isSuccess()
+                ? okResponse(result)
+                : badResponse(HttpStatus.NOT_FOUND, result);
+    }
+
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/list", method = RequestMethod.GET, produces = MEDIA_TYPE_CBOR)
+    public ResponseEntity<StreamingResponseBody> getEmployeesListCbor(@RequestParam(value = "ids") String ids) {
+        OperationResult result = findEmployeesList(ids);
+
+        if (result == null)
+            return cborResponse(HttpStatus.PRECONDITION_FAILED, null);
+
+        return cborResponse(result.isSuccess() ? HttpStatus.OK : HttpStatus.NOT_FOUND, result);
+    }
+
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/page", method = RequestMethod.GET)
+    public ResponseEntity<String> getEmployeesPage(@RequestParam(value = "p") String p, @RequestParam(value = "lim") String lim) {
+        OperationResult result = findEmployeesPage(p, lim);
+
+        if (result == null)
+            return badResponse(HttpStatus.PRECONDITION_FAILED);
+
+        return result.isSuccess()
+                ? okResponse(result)
+                : badResponse(HttpStatus.NOT_FOUND, result);
+    }
+
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/page", method = RequestMethod.GET, produces = MEDIA_TYPE_CBOR)
+    public ResponseEntity<StreamingResponseBody> getEmployeesPageCbor(@RequestParam(value = "p") String p, @RequestParam(value = "lim") String lim) {
+        OperationResult result = findEmployeesPage(p, lim);
+
+        if (result == null)
+            return cborResponse(HttpStatus.PRECONDITION_FAILED, null);
+
+        return cborResponse(result.isSuccess() ? HttpStatus.OK : HttpStatus.NOT_FOUND, result);
+    }
+
+    // every employee ordered by id, one JSON object per line, rows go out as they are read from the database
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/all", method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> getAllEmployees() {
+        return exportResponse(MediaType.APPLICATION_NDJSON, "employees.ndjson", null, JsonUtils::writeEmployee);
+    }
+
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/all", method = RequestMethod.GET, produces = MEDIA_TYPE_CSV)
+    public ResponseEntity<StreamingResponseBody> getAllEmployeesCsv() {
+        return exportResponse(new MediaType("text", "csv", StandardCharsets.UTF_8), "employees.csv",
+                CsvUtils.EMPLOYEE_HEADER, CsvUtils::writeEmployee);
+    }
+
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/total", method = RequestMethod.GET)
+    public ResponseEntity<String> getTotal() {
+        Long result = employeeService.getTotal();
+        return result != null && result >= 0
+                ? ResponseEntity.ok().body(new JSONObject().put("total", result).toString())
+                : badResponse(HttpStatus.NOT_FOUND);
+    }
+
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/supervisors", method = RequestMethod.GET)
+    public ResponseEntity<String> getPossibleSupervisors(@RequestParam(value = "id") String id) {
+        Long _id = RestApiUtils.parseLong(id);
+
+        errors = new ArrayList<>();
+        OperationResult result = employeeService.getPossibleSupervisors(_id);
+
+        return result.isSuccess() && !result.getResultList().isEmpty()
+                ? okResponse(result)
+                : badResponse(HttpStatus.NOT_FOUND);
+    }
+
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/changes", method = RequestMethod.GET)
+    public CompletableFuture<ResponseEntity<String>> getChanges(@RequestParam(value = "since") String since,
+                                                                @RequestParam(value = "lim", required = false) String lim,
+                                                                @RequestParam(value = "wait", required = false) String wait) {
+        errors = new ArrayList<>();
+
+        // every shard has a change log of its own, with sequence numbers of its own
+        if (employeeService.isSharded()) {
+            errors.add(SHARDED.getErrorText().formatted("The change log"));
+            return CompletableFuture.completedFuture(badResponse(HttpStatus.NOT_IMPLEMENTED));
+        }
+
+        if (Strings.isBlank(since))
+            errors.add(NO_PARAM.getErrorText().formatted("since"));
+        else if (!since.matches("\\d+"))
+            errors.add(BAD_PARAM.getErrorText().formatted("since", since));
+
+        if (Strings.isNotBlank(lim) && !lim.matches("\\d+"))
+            errors.add(BAD_PARAM.getErrorText().formatted("lim", lim));
+        if (Strings.isNotBlank(wait) && !wait.matches("\\d+"))
+            errors.add(BAD_PARAM.getErrorText().formatted("wait", wait));
+
+        if (!errors.isEmpty())
+            return CompletableFuture.completedFuture(badResponse(HttpStatus.PRECONDITION_FAILED));
+
+        long _since = Long.parseLong(since);
+        Long _lim = RestApiUtils.parseLong(lim);
+        Long _wait = RestApiUtils.parseLong(wait);
+
+        // long-poll: answer right away if there are changes, otherwise when they come or "wait" ms pass
+        return changeService.waitChanges(
+                        _since,
+                        _lim == null || _lim < 1 ? CHANGES_DEFAULT_LIMIT : (int) Math.min(_lim, CHANGES_MAX_LIMIT),
+                        _wait == null ? 0 : Math.min(_wait, CHANGES_MAX_WAIT_MS))
+                .thenApply(changes -> ResponseEntity.ok(JsonUtils.changesToJson(changes, _since).toString()));
+    }
+
+    // live updates: "change" events with id, changed fields and new total; event id is the change seq
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/events", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> getEvents(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        // events are read from the change log, see getChanges
+        if (employeeService.isSharded())
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+
+        return ResponseEntity.ok(eventBroadcaster.subscribe(
+                Strings.isNotBlank(lastEventId) && lastEventId.matches("\\d+") ? Long.parseLong(lastEventId) : null));
+    }
+
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/subordinates", method = RequestMethod.GET)
+    public ResponseEntity<String> getEmployeeSubordinates(@RequestParam(value = "id") String id,
+                                                          @RequestParam(value = "all", required = false) String all) {
+        errors = new ArrayList<>();
+
+        if (!id.matches("\\d+"))
+            errors.add(BAD_PARAM.getErrorText().formatted("id", id));
+        if (all != null && !all.matches("true|false"))
+            errors.add(BAD_PARAM.getErrorText().formatted("all", all));
+
+        if (!errors.isEmpty())
+            return badResponse(HttpStatus.PRECONDITION_FAILED);
+
+        // all - the whole subtree, otherwise direct subordinates only
+        OperationResult result = Boolean.parseBoolean(all)
+                ? employeeService.getDescendants(Long.parseLong(id))
+                : employeeService.getDirectSubordinates(Long.parseLong(id));
+
+        if (result.hasErrors())
+            errors.add(result.getErrorDetails());
+
+        return result.isSuccess()
+                ? okResponse(result)
+                : badResponse(HttpStatus.NOT_FOUND, result);
+    }
+
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/ancestors", method = RequestMethod.GET)
+    public ResponseEntity<String> getEmployeeAncestors(@RequestParam(value = "id") String id) {
+        errors = new ArrayList<>();
+
+        if (!id.matches("\\d+")) {
+            errors.add(BAD_PARAM.getErrorText().formatted("id", id));
+            return badResponse(HttpStatus.PRECONDITION_FAILED);
+        }
+
+        OperationResult result = employeeService.getAncestors(Long.parseLong(id));
+        if (result.hasErrors())
+            errors.add(result.getErrorDetails());
+
+        if (!result.isSuccess())
+            return badResponse(HttpStatus.NOT_FOUND, result);
+
+        // root first, depth is the stored count of supervisors above the employee, null - not reachable from a root
+        Integer depth = employeeService.getDepth(Long.parseLong(id));
+        return ResponseEntity.ok(toJson(result, json -> json.put("depth", depth == null ? JSONObject.NULL : depth)));
+    }
+
+    // headcount, depth and span-of-control distributions of the whole org
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/stats", method = RequestMethod.GET)
+    public ResponseEntity<String> getOrgStats() {
+        return ResponseEntity.ok(new JSONObject().put("result", JsonUtils.orgStatsToJson(statsService.getOrgStats())).toString());
+    }
+
+    // direct and total subordinates and depth of one employee
+    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
+    @RequestMapping(value = "/employee/{id}/stats", method = RequestMethod.GET)
+    public ResponseEntity<String> getEmployeeStats(@PathVariable(value = "id") String id) {
+        errors = new ArrayList<>();
+
+        if (!id.matches("\\d+")) {
+            errors.add(BAD_PARAM.getErrorText().formatted("id", id));
+            return badResponse(HttpStatus.PRECONDITION_FAILED);
+        }
+
+        long _id = Long.parseLong(id);
+        EmployeeStats stats = statsService.getEmployeeStats(_id);
+        if (stats == null) {
+            errors.add(EMPLOYEE_NOT_FOUND.getErrorText().formatted(_id));
+            return badResponse(HttpStatus.NOT_FOUND);
+        }
+
+        return ResponseEntity.ok(new JSONObject().put("result", JsonUtils.employeeStatsToJson(stats)).toString());
+    }
+
+    // null if params are bad, errors are in "errors"
+    private OperationResult findEmployeesList(String ids) {
         errors = new ArrayList<>();
         Set<Long> _ids = RestApiUtils.split2SetLong(ids);
 
@@ -173,21 +496,18 @@ public class RestApiController {
             errors.add(NO_PARAM_VALUE.getErrorText().formatted("ids"));
 
         if (!errors.isEmpty())
-            return badResponse(HttpStatus.PRECONDITION_FAILED);
+            return null;
 
         OperationResult result = employeeService.getList(_ids);
 
         if (result.hasErrors())
             errors.add(result.getErrorDetails());
 
-        return result.isSuccess()
-                ? okResponse(result)
-                : badResponse(HttpStatus.NOT_FOUND, result);
+        return result;
     }
 
-    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
-    @RequestMapping(value = "/employee/page", method = RequestMethod.GET)
-    public ResponseEntity<String> getEmployeesPage(@RequestParam(value = "p") String p, @RequestParam(value = "lim") String lim) {
+    // null if params are bad, errors are in "errors"
+    private OperationResult findEmployeesPage(String p, String lim) {
         errors = new ArrayList<>();
         Long page = null;
         Long limit = null;
@@ -206,45 +526,49 @@ public class RestApiController {
         else
             limit = Long.parseLong(lim);
 
-        if (page == null || lim == null)
-            return badResponse(HttpStatus.PRECONDITION_FAILED);
+        if (page == null || limit == null)
+            return null;
 
         OperationResult result = employeeService.get(page, limit);
         if (result.hasErrors())
             errors.add(result.getErrorDetails());
 
-        return result.isSuccess()
-                ? okResponse(result)
-                : badResponse(HttpStatus.NOT_FOUND, result);
+        return result;
     }
 
-    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
-    @RequestMapping(value = "/employee/total", method = RequestMethod.GET)
-    public ResponseEntity<String> getTotal() {
-        Long result = employeeService.getTotal();
-        return result != null && result >= 0
-                ? ResponseEntity.ok().body(new JSONObject().put("total", result).toString())
-                : badResponse(HttpStatus.NOT_FOUND);
+    // result null - only errors
+    private ResponseEntity<StreamingResponseBody> cborResponse(HttpStatus status, OperationResult result) {
+        List<String> responseErrors = List.copyOf(errors);
+        StreamingResponseBody body = out -> {
+            CborWriter writer = new CborWriter(out);
+            if (result == null)
+                CborUtils.writeErrors(writer.startMap(1).write("errors"), responseErrors);
+            else
+                CborUtils.writeOperationResult(writer, result, responseErrors);
+            writer.flush();
+        };
+
+        return ResponseEntity.status(status).contentType(MediaType.parseMediaType(MEDIA_TYPE_CBOR)).body(body);
     }
 
-    @CrossOrigin(origins = "https://localhost:3000", maxAge = 3600)
-    @RequestMapping(value = "/employee/supervisors", method = RequestMethod.GET)
-    public ResponseEntity<String> getPossibleSupervisors(@RequestParam(value = "id") String id) {
-        Long _id = RestApiUtils.parseLong(id);
+    private interface RowWriter {
+        void write(Writer out, EmployeeView e, DateTimeFormatter dt) throws IOException;
+    }
 
-        errors = new ArrayList<>();
-        OperationResult result = employeeService.getPossibleSupervisors(_id);
+    private ResponseEntity<StreamingResponseBody> exportResponse(MediaType type, String fileName, String header, RowWriter rowWriter) {
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE);
 
-        return result.isSuccess() && !result.getResultList().isEmpty()
-                ? okResponse(result)
-                : badResponse(HttpStatus.NOT_FOUND);
-    }
+            if (header != null)
+                writer.write(header);
+            employeeService.scanAll(e -> rowWriter.write(writer, e, DT));
+            writer.flush();
+        };
 
-    // TODO
-    // need?
-    @RequestMapping(value = "/employee/subordinates", method = RequestMethod.GET)
-    public ResponseEntity<String> getEmployeeSubordinates(@RequestParam(value = "id") String id) {
-        return null;
+        return ResponseEntity.ok()
+                .contentType(type)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"%s\"".formatted(fileName))
+                .body(body);
     }
 
     private ResponseEntity<String> badResponse(HttpStatus status) {
@@ -252,11 +576,26 @@ public class RestApiController {
     }
 
     private ResponseEntity<String> badResponse(HttpStatus status, OperationResult result) {
-        return ResponseEntity.status(status).body(JsonUtils.operationResultToJson(result, errors).toString());
+        return ResponseEntity.status(status).body(toJson(result, UnaryOperator.identity()));
     }
 
     private ResponseEntity<String> okResponse(OperationResult result) {
-        return ResponseEntity.ok().body(JsonUtils.operationResultToJson(result, errors).toString());
+        return ResponseEntity.ok().body(toJson(result, UnaryOperator.identity()));
+    }
+
+    // a span of its own in sampled requests and a flight recorder event: building the response may cost more than the query
+    private String toJson(OperationResult result, UnaryOperator<JSONObject> extra) {
+        SerializationEvent event = new SerializationEvent();
+        event.begin();
+
+        String out = tracing.observe("employee.json", "operationResultToJson",
+                () -> extra.apply(JsonUtils.operationResultToJson(result, errors)).toString(),
+                json -> result.getResultList().size());
+
+        event.end();
+        if (event.shouldCommit())
+            event.set("json", result.getResultList().size(), out.length()).commit();
+        return out;
     }
 
 }
@@ -0,0 +1,17 @@
+package com.itgnostic.test4sandbox.web.api.rest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReqReassignModel {
+    // comma separated ids of moved employees
+    String ids;
+    // or: move the whole team (direct subordinates) of this supervisor
+    String from;
+    // new supervisor, empty - top level
+    String supervisor;
+}
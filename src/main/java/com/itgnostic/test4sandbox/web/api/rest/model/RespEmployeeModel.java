@@ -20,4 +20,6 @@ public class RespEmployeeModel {
     String supervisorFullName;
     String supervisorId;
     String created;
+    // epoch ms of created, for the binary format
+    Long createdMillis;
 }
@@ -0,0 +1,71 @@
+package com.itgnostic.test4sandbox.web.api.trace;
+
+import com.itgnostic.test4sandbox.trace.EmployeeTracing;
+import io.micrometer.observation.Observation;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Root span of a REST API request, named after the route and the controller method that handled it.
+ * Sampled requests get a traceparent response header with the trace id to look up in the trace file.
+ * <p>
+ * Streamed bodies (/employee/all, CBOR) and long-polling are written after the handler returns, on
+ * another thread: the span ends with the handler.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class TracingFilter extends OncePerRequestFilter {
+    private static final String API_PATH = "/rest/api/";
+    private static final String TRACEPARENT = "traceparent";
+
+    private final EmployeeTracing tracing;
+
+    public TracingFilter(EmployeeTracing tracing) {
+        this.tracing = tracing;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !tracing.isEnabled() || !request.getRequestURI().startsWith(request.getContextPath() + API_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Observation observation = tracing.startTrace("employee.http", request.getHeader(TRACEPARENT));
+        if (observation.isNoop()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        response.setHeader(TRACEPARENT, EmployeeTracing.traceparent(observation));
+        Observation.Scope scope = observation.openScope();
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            scope.close();
+            Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            observation.contextualName(request.getMethod() + " " + (route != null ? route : request.getRequestURI()))
+                    .lowCardinalityKeyValue("http.method", request.getMethod())
+                    .lowCardinalityKeyValue("http.route", String.valueOf(route))
+                    .lowCardinalityKeyValue("http.status_code", String.valueOf(response.getStatus()));
+            if (request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handler)
+                observation.lowCardinalityKeyValue("handler",
+                        handler.getBeanType().getSimpleName() + "." + handler.getMethod().getName());
+            observation.stop();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.itgnostic.test4sandbox.db.dao.impl;
+
+import com.itgnostic.test4sandbox.db.dao.EmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
+import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import com.itgnostic.test4sandbox.utils.HibernateUtils;
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.itgnostic.test4sandbox.common.Const.DB_TABLE_NAME;
+import static org.junit.Assert.*;
+
+public class ShardedEmployeeDbServiceTest {
+    private static final int SHARDS = 3;
+
+    private final List<SessionFactory> sessionFactories = new ArrayList<>();
+    private ShardedEmployeeDbService db;
+
+    @Before
+    public void setUp() {
+        List<EmployeeDbServiceImpl> shards = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            SessionFactory sessionFactory = sessionFactory("sharded-" + i);
+            ShardedEmployeeDbService.prepareShard(sessionFactory, i, SHARDS);
+            sessionFactories.add(sessionFactory);
+            shards.add(new EmployeeDbServiceImpl(sessionFactory.openSession()));
+        }
+        db = new ShardedEmployeeDbService(shards);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        sessionFactories.forEach(SessionFactory::close);
+    }
+
+    @Test
+    public void routingTest() {
+        // the shards in turn, whoever the supervisor is: one tree in all shards
+        assertEquals(1, add("A", null));
+        assertEquals(2, add("B", 1L));
+        assertEquals(3, add("C", 1L));
+        assertEquals(4, add("B1", 2L));
+        assertEquals(5, add("B2", 4L));
+        assertEquals(6, add("D", null));
+
+        assertEquals("B2", db.get(5).getFirstName());
+        assertEquals(List.of(1L, 2L, 4L, 5L), db.getPath(5));
+        assertEquals(Integer.valueOf(3), db.getDepth(5));
+        assertEquals(Long.valueOf(6), db.getTotal());
+        assertEquals(Long.valueOf(6), db.getLastIndex());
+
+        // order of the ids asked, missing ones skipped
+        assertEquals(List.of(5L, 1L, 3L), db.getList(new long[]{5, 1, 100, 3}).stream().map(EmployeeEntity::getId).toList());
+        // supervisor names from the shard of the supervisor
+        EmployeeView b1 = db.getViews(List.of(6L, 4L)).get(1);
+        assertEquals(4L, b1.id());
+        assertEquals("B", b1.supervisorFirstName());
+        assertEquals("B1", db.getView(5).supervisorFirstName());
+    }
+
+    @Test
+    public void mergeTest() throws Exception {
+        for (int i = 0; i < 10; i++)
+            add("E" + i, null);
+
+        assertEquals(List.of(4L, 5L, 6L), db.get(1, 3).stream().map(EmployeeView::id).toList());
+        // deeper than MAX_PAGE_ROWS
+        assertNull(db.get(ShardedEmployeeDbService.MAX_PAGE_ROWS / 3, 3));
+
+        List<Long> scanned = new ArrayList<>();
+        assertEquals(10, db.scanViews(view -> scanned.add(view.id())));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), scanned);
+    }
+
+    @Test
+    public void crossShardTest() {
+        long a = add("A", null);
+        long b = add("B", a);
+        long c = add("C", b);
+        long d = add("D", c);
+        long e = add("E", a);
+
+        // every shard is asked for the rows below and beside
+        assertEquals(List.of(b, e), db.getSubordinates(a).stream().map(EmployeeView::id).toList());
+        assertEquals(List.of(b, c, d, e), db.getDescendants(a).stream().map(EmployeeView::id).toList());
+        assertEquals(List.of(a, e), db.getPossibleSupervisors(b).stream().map(EmployeeView::id).toList());
+
+        // moved with its subtree to another shard's supervisor
+        EmployeeEntity moved = db.get(c).clone();
+        moved.setSupervisor(e);
+        assertNotNull(db.modify(moved));
+        assertEquals(List.of(a, e, c, d), db.getPath(d));
+        assertEquals(List.of(c, d), db.getDescendants(e).stream().map(EmployeeView::id).toList());
+
+        // no cycles through other shards
+        assertNull(db.reassign(List.of(a), d));
+        assertEquals(Long.valueOf(1), db.reassign(List.of(c), b));
+        assertEquals(List.of(a, b, c, d), db.getPath(d));
+
+        assertEquals(Long.valueOf(1), db.del(b, EmployeeDbService.DeleteMode.REPARENT));
+        assertEquals(List.of(a, c, d), db.getPath(d));
+        assertEquals(Long.valueOf(2), db.del(c, EmployeeDbService.DeleteMode.SUBTREE));
+        assertEquals(List.of(e), db.getDescendants(a).stream().map(EmployeeView::id).toList());
+    }
+
+    @Test
+    public void hierarchyTest() {
+        // the same writes on one database and on the shards leave the same hierarchy columns
+        SessionFactory single = sessionFactory("single");
+        try (EmployeeDbServiceImpl plain = new EmployeeDbServiceImpl(single.openSession())) {
+            for (EmployeeDbService target : List.of(plain, db)) {
+                add(target, "R", null);
+                for (long i = 2; i <= 30; i++)
+                    add(target, "E" + i, (i - 2) / 3 + 1);
+
+                EmployeeEntity moved = target.get(4).clone();
+                moved.setSupervisor(9L);
+                target.modify(moved);
+                target.reassign(List.of(5L, 6L), 20L);
+                target.reassign(List.of(7L), null);
+                target.del(3, EmployeeDbService.DeleteMode.REPARENT);
+                target.del(8, EmployeeDbService.DeleteMode.SUBTREE);
+                target.del(11, EmployeeDbService.DeleteMode.ORPHAN);
+            }
+
+            Map<Long, String> expected = hierarchy(List.of(single));
+            assertEquals(expected, hierarchy(sessionFactories));
+
+            // rebuilt from the SUPERVISOR column alone
+            assertEquals(plain.rebuildPaths(true), db.rebuildPaths(true));
+            assertEquals(expected, hierarchy(sessionFactories));
+        } finally {
+            single.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shardCountChangeTest() {
+        for (int i = 0; i < SHARDS + 1; i++)
+            add("E" + i, null);
+        // 1 and 4 are in shard 0, with one shard less 4 would belong to shard 1
+        ShardedEmployeeDbService.prepareShard(sessionFactories.get(0), 0, SHARDS - 1);
+    }
+
+    private long add(String name, Long supervisor) {
+        return add(db, name, supervisor);
+    }
+
+    private static long add(EmployeeDbService target, String name, Long supervisor) {
+        EmployeeEntity e = new EmployeeEntity();
+        e.setFirstName(name);
+        e.setLastName(name);
+        e.setSupervisor(supervisor);
+        return target.add(e);
+    }
+
+    // SUPERVISOR, SUBORDINATES, PATH, DEPTH, TOTAL_SUBORDINATES by id
+    private static Map<Long, String> hierarchy(List<SessionFactory> databases) {
+        Map<Long, String> out = new TreeMap<>();
+        for (SessionFactory database : databases) {
+            try (Session session = database.openSession()) {
+                session.doWork(connection -> {
+                    try (Statement statement = connection.createStatement();
+                         ResultSet rs = statement.executeQuery("SELECT ID, SUPERVISOR, SUBORDINATES, PATH, DEPTH, "
+                                 + "TOTAL_SUBORDINATES FROM " + DB_TABLE_NAME)) {
+                        while (rs.next())
+                            out.put(rs.getLong(1), rs.getObject(2) + " " + Arrays.toString((Object[]) rs.getArray(3).getArray())
+                                    + " " + rs.getString(4) + " " + rs.getObject(5) + " " + rs.getObject(6));
+                    }
+                });
+            }
+        }
+        return out;
+    }
+
+    private static SessionFactory sessionFactory(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return HibernateUtils.buildSessionFactory(dataSource, Map.of("hibernate.show_sql", "false", "hibernate.hbm2ddl.auto", "create-drop"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.itgnostic.test4sandbox.db.entity;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class IdSetTest {
+
+    @Test
+    public void ofTest() {
+        IdSet set = IdSet.of(5, 1, 3, 5, 1);
+
+        assertEquals(3, set.size());
+        assertArrayEquals(new long[]{1, 3, 5}, set.toLongArray());
+        assertEquals(List.of(1L, 3L, 5L), new ArrayList<>(set));
+        assertSame(IdSet.EMPTY, IdSet.of());
+    }
+
+    @Test
+    public void copyOfTest() {
+        IdSet set = IdSet.copyOf(Arrays.asList(7L, null, 2L, 7L));
+
+        assertArrayEquals(new long[]{2, 7}, set.toLongArray());
+        assertSame(set, IdSet.copyOf(set));
+        assertSame(IdSet.EMPTY, IdSet.copyOf(null));
+        assertSame(IdSet.EMPTY, IdSet.copyOf(List.of()));
+    }
+
+    @Test
+    public void ofSortedArrayTest() {
+        long[] sorted = {1, 4, 9};
+        assertSame(sorted, IdSet.ofSortedArray(sorted).array());
+
+        // older rows may hold ids in any order
+        long[] unsorted = {9, 1, 4, 4};
+        assertArrayEquals(new long[]{1, 4, 9}, IdSet.ofSortedArray(unsorted).toLongArray());
+        assertArrayEquals(new long[]{9, 1, 4, 4}, unsorted);
+
+        assertSame(IdSet.EMPTY, IdSet.ofSortedArray(null));
+    }
+
+    @Test
+    public void entityTest() {
+        EmployeeEntity e = new EmployeeEntity();
+        e.setSubordinates(List.of(3L, 1L));
+        assertEquals(Set.of(1L, 3L), e.getSubordinates());
+
+        // entities share a set, a change makes a new one
+        EmployeeEntity other = new EmployeeEntity();
+        other.setSubordinates(e.getSubordinates().with(2));
+        assertEquals(Set.of(1L, 3L), e.getSubordinates());
+        assertEquals(Set.of(1L, 2L, 3L), other.getSubordinates());
+
+        e.setSubordinates(null);
+        assertTrue(e.getSubordinates().isEmpty());
+    }
+
+    @Test
+    public void containsTest() {
+        IdSet set = IdSet.of(10, 20, 30);
+
+        assertTrue(set.contains(20));
+        assertTrue(set.contains((Object) 20L));
+        assertFalse(set.contains(25));
+        // a set of Long: an Integer is not in it, as in HashSet<Long>
+        assertFalse(set.contains((Object) 20));
+    }
+
+    @Test
+    public void withWithoutTest() {
+        IdSet set = IdSet.of(10, 30);
+
+        assertArrayEquals(new long[]{10, 20, 30}, set.with(20).toLongArray());
+        assertArrayEquals(new long[]{5, 10, 30}, set.with(5).toLongArray());
+        assertArrayEquals(new long[]{10, 30, 40}, set.with(40).toLongArray());
+        assertSame(set, set.with(10));
+
+        assertArrayEquals(new long[]{30}, set.without(10).toLongArray());
+        assertSame(set, set.without(20));
+        assertSame(IdSet.EMPTY, IdSet.of(1).without(1));
+        // the original is not changed
+        assertArrayEquals(new long[]{10, 30}, set.toLongArray());
+    }
+
+    @Test
+    public void equalsTest() {
+        Set<Long> hashSet = new HashSet<>(List.of(3L, 1L, 2L));
+        IdSet set = IdSet.of(1, 2, 3);
+
+        assertEquals(hashSet, set);
+        assertEquals(set, hashSet);
+        assertEquals(hashSet.hashCode(), set.hashCode());
+        assertEquals(IdSet.of(3, 2, 1), set);
+        assertNotEquals(IdSet.of(1, 2), set);
+        assertEquals(Set.of(), IdSet.EMPTY);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutableTest() {
+        IdSet.of(1, 2).add(3L);
+    }
+}
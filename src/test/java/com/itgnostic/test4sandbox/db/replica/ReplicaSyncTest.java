@@ -0,0 +1,149 @@
+package com.itgnostic.test4sandbox.db.replica;
+
+import com.itgnostic.test4sandbox.db.dao.EmployeeDbService.DeleteMode;
+import com.itgnostic.test4sandbox.db.dao.impl.EmployeeDbServiceImpl;
+import com.itgnostic.test4sandbox.db.entity.EmployeeChangeEntity;
+import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import com.itgnostic.test4sandbox.utils.HibernateUtils;
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.itgnostic.test4sandbox.common.Const.DB_TABLE_NAME;
+import static org.junit.Assert.*;
+
+public class ReplicaSyncTest {
+    private SessionFactory primary;
+    private SessionFactory replica;
+    private EmployeeDbServiceImpl db;
+    private ReplicaSync sync;
+
+    @Before
+    public void setUp() {
+        primary = sessionFactory("replica-sync-primary");
+        replica = sessionFactory("replica-sync-replica");
+        db = new EmployeeDbServiceImpl(primary.openSession());
+        sync = new ReplicaSync(primary, replica);
+    }
+
+    @After
+    public void tearDown() {
+        primary.close();
+        replica.close();
+    }
+
+    @Test
+    public void copyAllTest() {
+        long root = add("A", null);
+        add("B", root);
+        add("C", root);
+
+        assertEquals(3, sync.sync());
+        assertEquals(3, rows(replica).size());
+        assertEquals(rows(primary), rows(replica));
+        // nothing new
+        assertEquals(0, sync.sync());
+    }
+
+    @Test
+    public void changesTest() {
+        long root = add("A", null);
+        long b = add("B", root);
+        long c = add("C", b);
+        long d = add("D", c);
+        sync.sync();
+
+        // a name, a new employee, a moved subtree (paths below and totals above change without a log entry)
+        EmployeeEntity e = db.get(root).clone();
+        e.setFirstName("A2");
+        db.modify(e);
+        long f = add("F", root);
+        db.reassign(List.of(c), f);
+        assertTrue(sync.sync() > 0);
+        assertEquals(rows(primary), rows(replica));
+
+        db.del(d, DeleteMode.ORPHAN);
+        db.del(b, DeleteMode.SUBTREE);
+        sync.sync();
+        assertEquals(rows(primary), rows(replica));
+    }
+
+    @Test
+    public void lateCommitTest() {
+        long root = add("A", null);
+        sync.sync();
+
+        // seq N is taken, N+1 commits first
+        try (Session late = primary.openSession()) {
+            late.beginTransaction();
+            EmployeeEntity n = new EmployeeEntity();
+            n.setFirstName("N");
+            n.setLastName("N");
+            late.persist(n);
+            EmployeeChangeEntity change = new EmployeeChangeEntity(n.getId(), EmployeeChangeEntity.Operation.ADD, null);
+            late.persist(change);
+            late.flush();
+
+            add("B", root);
+            assertEquals(change.getSeq() - 1, sync.getLastSeq());
+            // B and its supervisor
+            assertEquals(2, sync.sync());
+            assertEquals(2, rows(replica).size());
+            assertTrue(sync.hasGaps());
+            assertEquals(change.getSeq() + 1, sync.getLastSeq());
+
+            late.getTransaction().commit();
+        }
+
+        assertEquals(1, sync.sync());
+        assertFalse(sync.hasGaps());
+        assertEquals(rows(primary), rows(replica));
+    }
+
+    private long add(String name, Long supervisor) {
+        EmployeeEntity e = new EmployeeEntity();
+        e.setFirstName(name);
+        e.setLastName(name);
+        e.setSupervisor(supervisor);
+        return db.add(e);
+    }
+
+    private static SessionFactory sessionFactory(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return HibernateUtils.buildSessionFactory(dataSource, Map.of("hibernate.show_sql", "false", "hibernate.hbm2ddl.auto", "create-drop"));
+    }
+
+    private static List<String> rows(SessionFactory sessionFactory) {
+        try (Session session = sessionFactory.openSession()) {
+            return session.doReturningWork(connection -> {
+                List<String> out = new ArrayList<>();
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery("SELECT ID, CREATED_DATE, FIRST_NAME, LAST_NAME, A_POSITION, SUPERVISOR, "
+                             + "SUBORDINATES, PATH, DEPTH, TOTAL_SUBORDINATES FROM " + DB_TABLE_NAME + " ORDER BY ID")) {
+                    while (rs.next()) {
+                        StringBuilder row = new StringBuilder();
+                        for (int i = 1; i <= 10; i++) {
+                            Object value = rs.getObject(i);
+                            row.append(value instanceof Array array ? Arrays.toString((Object[]) array.getArray()) : value).append('|');
+                        }
+                        out.add(row.toString());
+                    }
+                }
+                return out;
+            });
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.itgnostic.test4sandbox.db.snapshot;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SnapshotWriterTest {
+    private static final List<SnapshotRecord> RECORDS = List.of(
+            new SnapshotRecord(1, 1714680064000L, "John", "Doe", "Manager", null),
+            new SnapshotRecord(2, 1714680064001L, "Jane", "Smith", "Assistant Manager", 1L),
+            new SnapshotRecord(3, 1714680064002L, "Alice", "Johnson", "Manager", 1L),
+            new SnapshotRecord(300000, 1714680064003L, "Ünïcødé", "名字", null, 2L));
+
+    @Test
+    public void writeReadTest() throws IOException {
+        byte[] bytes = write(RECORDS);
+        List<SnapshotRecord> read = read(bytes);
+
+        assertEquals(RECORDS.size(), read.size());
+        for (int i = 0; i < RECORDS.size(); i++) {
+            SnapshotRecord expected = RECORDS.get(i);
+            SnapshotRecord actual = read.get(i);
+
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getCreated(), actual.getCreated());
+            assertEquals(expected.getFirstName(), actual.getFirstName());
+            assertEquals(expected.getLastName(), actual.getLastName());
+            assertEquals(expected.getPosition(), actual.getPosition());
+            assertEquals(expected.getSupervisor(), actual.getSupervisor());
+        }
+    }
+
+    @Test
+    public void positionDictionaryTest() throws IOException {
+        List<SnapshotRecord> same = new ArrayList<>();
+        for (int i = 1; i <= 100; i++)
+            same.add(new SnapshotRecord(i, 0, "A", "B", "Very long position name", null));
+
+        // position text is written once, other rows have 1 byte reference
+        assertTrue(write(same).length < 100 * 10);
+    }
+
+    @Test
+    public void bigSnapshotTest() throws IOException {
+        List<SnapshotRecord> many = new ArrayList<>();
+        for (int i = 1; i <= 50_000; i++)
+            many.add(new SnapshotRecord(i, System.currentTimeMillis(), "First" + i, "Last" + i, "P" + (i % 10), i > 1 ? (long) i / 2 : null));
+
+        // more than one buffer for both writer and reader
+        assertEquals(many.size(), read(write(many)).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void badHeaderTest() throws IOException {
+        read(new byte[]{1, 2, 3, 4, 5});
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedTest() throws IOException {
+        byte[] bytes = write(RECORDS);
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        read(truncated);
+    }
+
+    private static byte[] write(List<SnapshotRecord> records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SnapshotWriter writer = new SnapshotWriter(Channels.newChannel(out))) {
+            for (SnapshotRecord r : records)
+                writer.write(r);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<SnapshotRecord> read(byte[] bytes) throws IOException {
+        SnapshotReader reader = new SnapshotReader(Channels.newChannel(new ByteArrayInputStream(bytes)));
+        List<SnapshotRecord> out = new ArrayList<>();
+
+        SnapshotRecord r;
+        while ((r = reader.next()) != null)
+            out.add(r);
+
+        return out;
+    }
+}
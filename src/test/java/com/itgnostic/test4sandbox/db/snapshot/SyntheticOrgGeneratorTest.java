@@ -0,0 +1,87 @@
+package com.itgnostic.test4sandbox.db.snapshot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SyntheticOrgGeneratorTest {
+
+    @Test
+    public void treeTest() {
+        List<SnapshotRecord> records = generate(new SyntheticOrgGenerator(20_000, 6, 8, 0.3, 1));
+        assertEquals(20_000, records.size());
+
+        Map<Long, Integer> levels = new HashMap<>();
+        Map<Long, Integer> teams = new HashMap<>();
+        for (SnapshotRecord r : records) {
+            assertEquals(levels.size() + 1, r.getId());
+            assertNotNull(r.getFirstName());
+            assertNotNull(r.getLastName());
+
+            if (r.getSupervisor() == null) {
+                assertEquals(1, r.getId());
+                levels.put(r.getId(), 0);
+            }
+            else {
+                // supervisors come first, so a restore can insert in this order
+                Integer supervisorLevel = levels.get(r.getSupervisor());
+                assertNotNull(supervisorLevel);
+                levels.put(r.getId(), supervisorLevel + 1);
+                teams.merge(r.getSupervisor(), 1, Integer::sum);
+            }
+        }
+
+        int maxLevel = levels.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+        assertTrue(maxLevel <= 6);
+        assertTrue(maxLevel >= 4);
+
+        double avgTeam = records.size() / (double) teams.size();
+        assertTrue(avgTeam > 4 && avgTeam < 16);
+        assertEquals("Chief Executive Officer", records.get(0).getPosition());
+    }
+
+    @Test
+    public void narrowTreeTest() {
+        // max depth is reached long before the size: teams get wider instead of deeper
+        List<SnapshotRecord> records = generate(new SyntheticOrgGenerator(5_000, 2, 2, 0.5, 7));
+        assertEquals(5_000, records.size());
+
+        Map<Long, Integer> levels = new HashMap<>();
+        for (SnapshotRecord r : records)
+            levels.put(r.getId(), r.getSupervisor() == null ? 0 : levels.get(r.getSupervisor()) + 1);
+
+        assertTrue(levels.values().stream().allMatch(l -> l <= 2));
+    }
+
+    @Test
+    public void sameSeedTest() {
+        List<SnapshotRecord> a = generate(new SyntheticOrgGenerator(1_000, 8, 5, 0.3, 3));
+        List<SnapshotRecord> b = generate(new SyntheticOrgGenerator(1_000, 8, 5, 0.3, 3));
+
+        for (int i = 0; i < a.size(); i++) {
+            assertEquals(a.get(i).getSupervisor(), b.get(i).getSupervisor());
+            assertEquals(a.get(i).getFirstName(), b.get(i).getFirstName());
+            assertEquals(a.get(i).getPosition(), b.get(i).getPosition());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badSizeTest() {
+        new SyntheticOrgGenerator(0, 8, 5, 0.3, 3);
+    }
+
+    private static List<SnapshotRecord> generate(SyntheticOrgGenerator generator) {
+        List<SnapshotRecord> out = new ArrayList<>();
+        SnapshotRecord r;
+        while ((r = generator.next()) != null)
+            out.add(r);
+
+        assertEquals(out.size(), generator.getRows());
+        return out;
+    }
+}
@@ -0,0 +1,139 @@
+package com.itgnostic.test4sandbox.load;
+
+import com.itgnostic.test4sandbox.db.dao.impl.EmployeeDbServiceImpl;
+import com.itgnostic.test4sandbox.db.shard.EmployeeShards;
+import com.itgnostic.test4sandbox.db.snapshot.EmployeeSnapshotService;
+import com.itgnostic.test4sandbox.utils.HibernateUtils;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.SessionFactory;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Time of {@link EmployeeDbServiceImpl#getList} and {@link EmployeeDbServiceImpl#getViews} by count of ids,
+ * one "IN (...)" query against chunks read one after another or in parallel (employee.list.*), H2 file
+ * database in a temp directory, no web layer:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) com.itgnostic.test4sandbox.load.ListBenchmark
+ * </pre>
+ * Options (--name=value):
+ * <ul>
+ * <li>size - employees of the synthetic org, 100000</li>
+ * <li>ids - counts of random ids per call, 10,1000,10000,100000</li>
+ * <li>configs - chunk-size x parallelism, 0 - one query for all ids: 0x1,500x1,250x4,500x4,1000x4,2000x4,500x8</li>
+ * <li>warmup, runs - calls per count of ids not counted and counted, 3 and 7; the median is printed</li>
+ * <li>limit - seconds: a first call slower than this isn't repeated, the larger counts of ids of the config
+ * neither, 10</li>
+ * </ul>
+ */
+public class ListBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        int size = Integer.parseInt(options.getOrDefault("size", "100000"));
+        int[] idCounts = Arrays.stream(options.getOrDefault("ids", "10,1000,10000,100000").split(","))
+                .mapToInt(count -> Integer.parseInt(count.trim()))
+                .toArray();
+        List<int[]> configs = Arrays.stream(options.getOrDefault("configs", "0x1,500x1,250x4,500x4,1000x4,2000x4,500x8").split(","))
+                .map(config -> config.trim().split("x"))
+                .map(config -> new int[]{Integer.parseInt(config[0]), Integer.parseInt(config[1])})
+                .toList();
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "3"));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "7"));
+        double limit = Double.parseDouble(options.getOrDefault("limit", "10")) * 1000;
+        int maxParallelism = configs.stream().mapToInt(config -> config[1]).max().orElse(1);
+
+        Path dir = Files.createTempDirectory("list-benchmark");
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl("jdbc:h2:file:" + dir.resolve("employees").toAbsolutePath());
+        hikariConfig.setUsername("sa");
+        hikariConfig.setMaximumPoolSize(maxParallelism + 2);
+
+        try (HikariDataSource dataSource = new HikariDataSource(hikariConfig);
+             SessionFactory sessionFactory = HibernateUtils.buildSessionFactory(dataSource,
+                     Map.of("hibernate.show_sql", "false", "hibernate.hbm2ddl.auto", "create"))) {
+            EmployeeShards shards = new EmployeeShards(sessionFactory, new StandardEnvironment(), new String[0], "sa", "", 1);
+            new EmployeeSnapshotService(sessionFactory, shards, false, dir.resolve("unused").toString(),
+                    0, 12, 8, 0.3, 42).generate(size, 42);
+
+            System.out.printf("%d CPUs, %d employees, median of %d calls, ms%n",
+                    Runtime.getRuntime().availableProcessors(), size, runs);
+            System.out.printf("%-9s %-10s", "read", "config");
+            for (int count : idCounts)
+                System.out.printf(" %10s", count + " ids");
+            System.out.println();
+
+            Random random = new Random(42);
+            List<List<Long>> idLists = Arrays.stream(idCounts)
+                    .mapToObj(count -> randomIds(random, size, count))
+                    .toList();
+
+            for (String read : List.of("getList", "getViews")) {
+                for (int[] config : configs) {
+                    int chunkSize = config[0] == 0 ? Integer.MAX_VALUE : config[0];
+                    try (EmployeeDbServiceImpl db = new EmployeeDbServiceImpl(sessionFactory.openSession(), chunkSize, config[1])) {
+                        Function<List<Long>, Integer> call = read.equals("getList")
+                                ? ids -> db.getList(ids).size()
+                                : ids -> db.getViews(ids).size();
+
+                        System.out.printf("%-9s %-10s", read, config[0] == 0 ? "one query" : config[0] + "x" + config[1]);
+                        boolean tooSlow = false;
+                        for (List<Long> ids : idLists) {
+                            tooSlow = tooSlow || time(call, ids) > limit;
+                            if (tooSlow)
+                                System.out.printf(" %10s", ">" + (long) (limit / 1000) + " s");
+                            else
+                                System.out.printf(" %10.2f", median(call, ids, warmup, runs));
+                        }
+                        System.out.println();
+                    }
+                }
+            }
+
+            shards.shutdown();
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    // distinct ids of the generated org, 1..size
+    private static List<Long> randomIds(Random random, int size, int count) {
+        Set<Long> ids = new LinkedHashSet<>();
+        while (ids.size() < Math.min(count, size))
+            ids.add(1L + random.nextInt(size));
+        return new ArrayList<>(ids);
+    }
+
+    private static double median(Function<List<Long>, Integer> call, List<Long> ids, int warmup, int runs) {
+        for (int i = 0; i < warmup; i++)
+            call.apply(ids);
+
+        double[] millis = new double[runs];
+        for (int i = 0; i < runs; i++)
+            millis[i] = time(call, ids);
+
+        Arrays.sort(millis);
+        return millis[runs / 2];
+    }
+
+    private static double time(Function<List<Long>, Integer> call, List<Long> ids) {
+        long start = System.nanoTime();
+        if (call.apply(ids) != ids.size())
+            throw new IllegalStateException("Not all employees found");
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -0,0 +1,429 @@
+package com.itgnostic.test4sandbox.load;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load test of the REST API with JDK HttpClient only, so it runs offline and without the build:
+ * <pre>
+ * java -Demployee.rate-limit.enabled=false -jar target/test4sandbox-0.0.1-SNAPSHOT.jar
+ * java src/test/java/com/itgnostic/test4sandbox/load/LoadTestRunner.java --generate=1000000 --clients=32 --duration=60
+ * </pre>
+ * Options (--name=value):
+ * <ul>
+ * <li>url - server, http://localhost:8080</li>
+ * <li>generate - replace all employees with a synthetic org of this size first (POST /rest/api/admin/generate)</li>
+ * <li>clients - threads sending requests one after another, 16</li>
+ * <li>rate - requests per second of all clients together, 0 - as fast as answered. With a rate, latency
+ * is counted from the planned send time, so a stalled server doesn't hide slow requests behind fewer sent ones</li>
+ * <li>warmup, duration - seconds, 10 and 60; warmup requests are not counted</li>
+ * <li>mix - scenario:weight list, see {@link #DEFAULT_MIX} for the scenarios</li>
+ * <li>max-id - employee ids are picked from 1..max-id, by default the total (ids of a generated org)</li>
+ * <li>hist-dir - per-scenario percentile distributions in HdrHistogram text format (.hgrm)</li>
+ * </ul>
+ * Write scenarios only touch employees added by the "add" scenario, so the org under test keeps its shape.
+ * 429 and 503 answers (rate and concurrency limits) are counted as rejected, other non-2xx - as errors.
+ */
+public class LoadTestRunner {
+    static final String DEFAULT_MIX = "get:25,page:8,list:8,list-cbor:2,total:4,subordinates:10,descendants:2,"
+            + "ancestors:10,employee-stats:10,stats:3,changes:5,supervisors:1,add:4,modify:4,reassign:2,delete:2";
+    private static final Pattern ID = Pattern.compile("\"id\":\"?(\\d+)");
+    private static final Pattern TOTAL = Pattern.compile("\"total\":(\\d+)");
+    private static final Pattern LAST = Pattern.compile("\"last\":(\\d+)");
+    private static final int LIST_SIZE = 20;
+    private static final int PAGE_SIZE = 20;
+
+    private final String api;
+    private final HttpClient client;
+    private final long maxId;
+    private final List<String> scenarios = new ArrayList<>();
+    private final double[] cumulativeWeights;
+
+    // employees added by this run: {id, supervisor}
+    private final Queue<long[]> added = new ConcurrentLinkedQueue<>();
+    private final AtomicLong lastChange = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        int clients = Integer.parseInt(options.getOrDefault("clients", "16"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        long warmup = Long.parseLong(options.getOrDefault("warmup", "10"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "60"));
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+        if (options.containsKey("generate")) {
+            long start = System.nanoTime();
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(URI.create(url + "/rest/api/admin/generate?seed=42&size=" + options.get("generate")))
+                            .POST(HttpRequest.BodyPublishers.noBody()).timeout(Duration.ofHours(1)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            System.out.printf("Generate: %d %s in %d ms%n", response.statusCode(), response.body(), (System.nanoTime() - start) / 1_000_000);
+            if (response.statusCode() != 200)
+                System.exit(1);
+        }
+
+        long maxId = options.containsKey("max-id")
+                ? Long.parseLong(options.get("max-id"))
+                : find(TOTAL, client.send(HttpRequest.newBuilder(URI.create(url + "/rest/api/employee/total")).build(),
+                        HttpResponse.BodyHandlers.ofString()).body());
+
+        LoadTestRunner runner = new LoadTestRunner(url, client, maxId, options.getOrDefault("mix", DEFAULT_MIX));
+        Map<String, Histogram> results = runner.run(clients, rate, warmup * 1000, duration * 1000);
+
+        runner.print(results, duration, System.out);
+        if (options.containsKey("hist-dir"))
+            writeDistributions(results, Path.of(options.get("hist-dir")));
+
+        System.exit(0);
+    }
+
+    LoadTestRunner(String url, HttpClient client, long maxId, String mix) {
+        this.api = url + "/rest/api";
+        this.client = client;
+        this.maxId = Math.max(1, maxId);
+
+        List<Double> weights = new ArrayList<>();
+        double sum = 0;
+        for (String entry : mix.split(",")) {
+            String[] nameWeight = entry.trim().split(":");
+            double weight = Double.parseDouble(nameWeight[1]);
+            if (weight <= 0)
+                continue;
+            if (!DEFAULT_MIX.matches("(.*,)?" + Pattern.quote(nameWeight[0]) + ":.*"))
+                throw new IllegalArgumentException("Unknown scenario " + nameWeight[0]);
+
+            scenarios.add(nameWeight[0]);
+            weights.add(sum += weight);
+        }
+
+        double total = sum;
+        cumulativeWeights = weights.stream().mapToDouble(w -> w / total).toArray();
+    }
+
+    /**
+     * @return histograms by scenario, merged from all clients
+     */
+    Map<String, Histogram> run(int clients, double rate, long warmupMs, long durationMs) throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + warmupMs * 1_000_000;
+        long end = measureFrom + durationMs * 1_000_000;
+        // each client sends every "interval" ns when the rate is set
+        long interval = rate > 0 ? (long) (clients * 1e9 / rate) : 0;
+
+        List<Map<String, Histogram>> perClient = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Map<String, Histogram> histograms = new HashMap<>();
+            perClient.add(histograms);
+
+            // clients start spread over one interval
+            long first = start + (interval * c) / clients;
+            Thread thread = new Thread(() -> runClient(histograms, first, interval, measureFrom, end), "load-client-" + c);
+            threads.add(thread);
+            thread.start();
+        }
+
+        System.out.printf("%d clients, %s, warmup %d s, measuring %d s, ids 1..%d%n",
+                clients, rate > 0 ? "%.0f req/s".formatted(rate) : "closed loop", warmupMs / 1000, durationMs / 1000, maxId);
+        for (Thread thread : threads)
+            thread.join();
+
+        Map<String, Histogram> out = new TreeMap<>();
+        for (Map<String, Histogram> histograms : perClient)
+            histograms.forEach((scenario, h) -> out.computeIfAbsent(scenario, s -> new Histogram()).add(h));
+        return out;
+    }
+
+    private void runClient(Map<String, Histogram> histograms, long first, long interval, long measureFrom, long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long planned = first;
+
+        while (true) {
+            long now = System.nanoTime();
+            if (interval > 0) {
+                if (planned > now)
+                    LockSupport.parkNanos(planned - now);
+            }
+            else
+                planned = now;
+
+            if (planned >= end)
+                return;
+
+            String scenario = pick(random.nextDouble());
+            int status;
+            try {
+                status = execute(scenario, random);
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            long latency = System.nanoTime() - planned;
+            if (planned >= measureFrom)
+                histograms.computeIfAbsent(scenario, s -> new Histogram()).record(latency / 1000, status);
+
+            planned += interval;
+        }
+    }
+
+    private int execute(String scenario, ThreadLocalRandom random) throws IOException, InterruptedException {
+        long id = 1 + random.nextLong(maxId);
+
+        switch (scenario) {
+            case "get":
+                return get("/employee?id=" + id, null).statusCode();
+            case "page":
+                return get("/employee/page?p=%d&lim=%d".formatted(random.nextLong(Math.max(1, maxId / PAGE_SIZE)), PAGE_SIZE), null).statusCode();
+            case "list":
+            case "list-cbor": {
+                StringJoiner ids = new StringJoiner(",");
+                for (int i = 0; i < LIST_SIZE; i++)
+                    ids.add(Long.toString(1 + random.nextLong(maxId)));
+                return get("/employee/list?ids=" + ids, scenario.equals("list-cbor") ? "application/cbor" : null).statusCode();
+            }
+            case "total":
+                return get("/employee/total", null).statusCode();
+            case "subordinates":
+                return get("/employee/subordinates?id=" + id, null).statusCode();
+            case "descendants":
+                return get("/employee/subordinates?all=true&id=" + id, null).statusCode();
+            case "ancestors":
+                return get("/employee/ancestors?id=" + id, null).statusCode();
+            case "employee-stats":
+                return get("/employee/%d/stats".formatted(id), null).statusCode();
+            case "stats":
+                return get("/employee/stats", null).statusCode();
+            case "supervisors":
+                return get("/employee/supervisors?id=" + id, null).statusCode();
+            case "changes": {
+                HttpResponse<String> response = get("/employee/changes?lim=100&since=" + lastChange.get(), null);
+                if (response.statusCode() == 200)
+                    lastChange.accumulateAndGet(find(LAST, response.body()), Math::max);
+                return response.statusCode();
+            }
+            case "add":
+                return add(id);
+            case "modify": {
+                long[] e = added.poll();
+                if (e == null)
+                    return add(id);
+
+                int status = send("PUT", "/employee", "{\"id\":\"%d\",\"firstName\":\"Load\",\"lastName\":\"Test\",\"position\":\"Tester %d\",\"supervisor\":\"%d\"}"
+                        .formatted(e[0], random.nextInt(1000), e[1])).statusCode();
+                added.offer(e);
+                return status;
+            }
+            case "reassign": {
+                long[] e = added.poll();
+                if (e == null)
+                    return add(id);
+
+                int status = send("POST", "/employee/reassign", "{\"ids\":\"%d\",\"supervisor\":\"%d\"}".formatted(e[0], id)).statusCode();
+                added.offer(status == 200 ? new long[]{e[0], id} : e);
+                return status;
+            }
+            case "delete": {
+                long[] e = added.poll();
+                if (e == null)
+                    return add(id);
+
+                HttpResponse<String> response = client.send(
+                        request("/employee?id=" + e[0], null).DELETE().build(), HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200)
+                    added.offer(e);
+                return response.statusCode();
+            }
+            default:
+                throw new IllegalStateException(scenario);
+        }
+    }
+
+    private int add(long supervisor) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "/employee",
+                "{\"firstName\":\"Load\",\"lastName\":\"Test\",\"position\":\"Tester\",\"supervisor\":\"%d\"}".formatted(supervisor));
+        if (response.statusCode() == 200)
+            added.offer(new long[]{find(ID, response.body()), supervisor});
+        return response.statusCode();
+    }
+
+    private HttpResponse<String> get(String path, String accept) throws IOException, InterruptedException {
+        return client.send(request(path, accept).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> send(String method, String path, String json) throws IOException, InterruptedException {
+        return client.send(request(path, null)
+                        .header("Content-Type", "application/json")
+                        .method(method, HttpRequest.BodyPublishers.ofString(json))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest.Builder request(String path, String accept) {
+        HttpRequest.Builder out = HttpRequest.newBuilder(URI.create(api + path)).timeout(Duration.ofSeconds(60));
+        return accept == null ? out : out.header("Accept", accept);
+    }
+
+    private String pick(double r) {
+        int i = Arrays.binarySearch(cumulativeWeights, r);
+        return scenarios.get(Math.min(i < 0 ? -i - 1 : i, scenarios.size() - 1));
+    }
+
+    void print(Map<String, Histogram> results, long durationSec, PrintStream out) {
+        Histogram all = new Histogram();
+        results.values().forEach(all::add);
+
+        out.printf("%n%-15s %9s %7s %7s %9s %9s %9s %9s %9s %9s %9s%n",
+                "scenario", "count", "errors", "reject", "req/s", "mean ms", "p50", "p90", "p99", "p99.9", "max");
+        results.forEach((scenario, h) -> printRow(scenario, h, durationSec, out));
+        printRow("all", all, durationSec, out);
+    }
+
+    private static void printRow(String scenario, Histogram h, long durationSec, PrintStream out) {
+        out.printf("%-15s %9d %7d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                scenario, h.count, h.errors, h.rejected, h.count / (double) durationSec, h.mean() / 1000,
+                h.percentile(0.5) / 1000.0, h.percentile(0.9) / 1000.0, h.percentile(0.99) / 1000.0,
+                h.percentile(0.999) / 1000.0, h.max / 1000.0);
+    }
+
+    private static void writeDistributions(Map<String, Histogram> results, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (Map.Entry<String, Histogram> e : results.entrySet()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(e.getKey() + ".hgrm")))) {
+                e.getValue().writeDistribution(out);
+            }
+        }
+        System.out.println("Distributions: " + dir.toAbsolutePath());
+    }
+
+    private static long find(Pattern pattern, String body) {
+        Matcher m = pattern.matcher(body);
+        if (!m.find())
+            throw new IllegalStateException("No %s in %s".formatted(pattern, body));
+        return Long.parseLong(m.group(1));
+    }
+
+    /**
+     * Latencies in microseconds, log-linear buckets: exact below 64, then 32 buckets per power of two (~3% error).
+     * One per client and scenario, merged at the end, so recording has no contention.
+     */
+    static class Histogram {
+        private static final int LINEAR = 64;
+        private static final int SUB_BUCKETS = 32;
+        private static final int MAX_EXPONENT = 40;
+
+        private final long[] counts = new long[LINEAR + (MAX_EXPONENT - 6 + 1) * SUB_BUCKETS];
+        long count, errors, rejected, sum, max;
+        double sumSquares;
+
+        void record(long micros, int status) {
+            long v = Math.max(0, Math.min(micros, (1L << (MAX_EXPONENT + 1)) - 1));
+            counts[index(v)]++;
+            count++;
+            sum += v;
+            sumSquares += (double) v * v;
+            max = Math.max(max, v);
+
+            if (status == 429 || status == 503)
+                rejected++;
+            else if (status < 200 || status >= 300)
+                errors++;
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] += other.counts[i];
+            count += other.count;
+            errors += other.errors;
+            rejected += other.rejected;
+            sum += other.sum;
+            sumSquares += other.sumSquares;
+            max = Math.max(max, other.max);
+        }
+
+        double mean() {
+            return count == 0 ? 0 : sum / (double) count;
+        }
+
+        double stdDeviation() {
+            return count == 0 ? 0 : Math.sqrt(Math.max(0, sumSquares / count - mean() * mean()));
+        }
+
+        /**
+         * @return upper bound of the bucket the quantile falls into, in microseconds
+         */
+        long percentile(double q) {
+            if (count == 0)
+                return 0;
+
+            long target = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target)
+                    return Math.min(highest(i), max);
+            }
+            return max;
+        }
+
+        // HdrHistogram percentile output: Value (ms), Percentile, TotalCount, 1/(1-Percentile)
+        void writeDistribution(PrintStream out) {
+            out.printf("%12s %14s %10s %14s%n%n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)");
+
+            long seen = 0;
+            for (int i = 0; i < counts.length && seen < count; i++) {
+                if (counts[i] == 0)
+                    continue;
+
+                seen += counts[i];
+                double q = seen / (double) count;
+                out.printf("%12.3f %2.12f %10d %14.2f%n",
+                        Math.min(highest(i), max) / 1000.0, q, seen, q < 1 ? 1 / (1 - q) : Double.POSITIVE_INFINITY);
+            }
+
+            out.printf("#[Mean    = %12.3f, StdDeviation   = %12.3f]%n", mean() / 1000, stdDeviation() / 1000);
+            out.printf("#[Max     = %12.3f, Total count    = %12d]%n", max / 1000.0, count);
+        }
+
+        static int index(long v) {
+            if (v < LINEAR)
+                return (int) v;
+
+            int exponent = 63 - Long.numberOfLeadingZeros(v);
+            int mantissa = (int) (v >>> (exponent - 5));
+            return LINEAR + (exponent - 6) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+        }
+
+        static long highest(int index) {
+            if (index < LINEAR)
+                return index;
+
+            int exponent = 6 + (index - LINEAR) / SUB_BUCKETS;
+            long mantissa = SUB_BUCKETS + (index - LINEAR) % SUB_BUCKETS;
+            return ((mantissa + 1) << (exponent - 5)) - 1;
+        }
+    }
+}
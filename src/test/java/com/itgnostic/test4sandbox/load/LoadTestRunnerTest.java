@@ -0,0 +1,39 @@
+package com.itgnostic.test4sandbox.load;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LoadTestRunnerTest {
+
+    @Test
+    public void histogramBucketsTest() {
+        for (long v : new long[]{0, 1, 63, 64, 65, 127, 128, 1000, 123_456, 10_000_000, (1L << 41) - 1}) {
+            int i = LoadTestRunner.Histogram.index(v);
+            assertTrue(v <= LoadTestRunner.Histogram.highest(i));
+            // value is within ~3% of the bucket upper bound
+            assertTrue(LoadTestRunner.Histogram.highest(i) - v <= Math.max(0, v / 32));
+            if (i > 0)
+                assertTrue(v > LoadTestRunner.Histogram.highest(i - 1));
+        }
+    }
+
+    @Test
+    public void histogramPercentilesTest() {
+        LoadTestRunner.Histogram a = new LoadTestRunner.Histogram();
+        LoadTestRunner.Histogram b = new LoadTestRunner.Histogram();
+        for (int v = 1; v <= 10_000; v++)
+            (v % 2 == 0 ? a : b).record(v, v % 100 == 0 ? 500 : v % 101 == 0 ? 429 : 200);
+
+        a.add(b);
+        assertEquals(10_000, a.count);
+        assertEquals(100, a.errors);
+        assertEquals(99, a.rejected);
+        assertEquals(10_000, a.max);
+        assertEquals(5000.5, a.mean(), 0.001);
+
+        assertEquals(5000, a.percentile(0.5), 5000 / 32.0);
+        assertEquals(9900, a.percentile(0.99), 9900 / 32.0);
+        assertEquals(10_000, a.percentile(1));
+    }
+}
@@ -0,0 +1,173 @@
+package com.itgnostic.test4sandbox.load;
+
+import com.itgnostic.test4sandbox.db.dao.EmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.impl.EmployeeDbServiceImpl;
+import com.itgnostic.test4sandbox.db.dao.impl.ShardedEmployeeDbService;
+import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import com.itgnostic.test4sandbox.utils.HibernateUtils;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.SessionFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write throughput of {@link ShardedEmployeeDbService} by count of shards, against one plain
+ * {@link EmployeeDbServiceImpl} for 1, H2 file databases in a temp directory, no web layer:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) com.itgnostic.test4sandbox.load.ShardBenchmark --shards=1,2,4,8
+ * </pre>
+ * Options (--name=value):
+ * <ul>
+ * <li>shards - counts of shards to run, 1,2,4,8</li>
+ * <li>threads - workers, each with sessions of its own on every shard, 8</li>
+ * <li>size - employees of the org added first, 20000: one root, as the application makes it (DbInit, generator),
+ * everyone else under a random employee added before</li>
+ * <li>warmup, duration - seconds, 5 and 20</li>
+ * <li>add-share - share of adds among the writes, the rest are renames, 0.5</li>
+ * <li>plain - one shard as a plain EmployeeDbServiceImpl, true; false - a ShardedEmployeeDbService of one shard</li>
+ * </ul>
+ */
+public class ShardBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        int threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        int size = Integer.parseInt(options.getOrDefault("size", "20000"));
+        long warmup = Long.parseLong(options.getOrDefault("warmup", "5"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "20"));
+        double addShare = Double.parseDouble(options.getOrDefault("add-share", "0.5"));
+        boolean plain = Boolean.parseBoolean(options.getOrDefault("plain", "true"));
+
+        System.out.printf("%d CPUs, %d threads, %d employees, %.0f%% adds%n",
+                Runtime.getRuntime().availableProcessors(), threads, size, addShare * 100);
+        System.out.printf("%6s %10s %10s %10s%n", "shards", "ops/s", "p50 ms", "p99 ms");
+
+        for (String count : options.getOrDefault("shards", "1,2,4,8").split(",")) {
+            Result result = run(Integer.parseInt(count.trim()), threads, size, warmup, duration, addShare, plain);
+            System.out.printf("%6s %10.0f %10.2f %10.2f%n", count.trim(), result.opsPerSecond, result.p50, result.p99);
+        }
+    }
+
+    private record Result(double opsPerSecond, double p50, double p99) {
+    }
+
+    private static Result run(int shardCount, int threads, int size, long warmup, long duration,
+                              double addShare, boolean plain) throws Exception {
+        Path dir = Files.createTempDirectory("shard-benchmark");
+        List<HikariDataSource> dataSources = new ArrayList<>();
+        List<SessionFactory> sessionFactories = new ArrayList<>();
+        List<EmployeeDbService> services = new ArrayList<>();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                HikariConfig config = new HikariConfig();
+                config.setJdbcUrl("jdbc:h2:file:" + dir.resolve("shard-" + i).toAbsolutePath());
+                config.setUsername("sa");
+                config.setMaximumPoolSize(threads + 2);
+
+                HikariDataSource dataSource = new HikariDataSource(config);
+                dataSources.add(dataSource);
+                SessionFactory sessionFactory = HibernateUtils.buildSessionFactory(dataSource,
+                        Map.of("hibernate.show_sql", "false", "hibernate.hbm2ddl.auto", "create"));
+                if (shardCount > 1 || !plain)
+                    ShardedEmployeeDbService.prepareShard(sessionFactory, i, shardCount);
+                sessionFactories.add(sessionFactory);
+            }
+
+            // same org for every shard count: the root first, then random supervisors among those added
+            List<Long> ids = Collections.synchronizedList(new ArrayList<>());
+            EmployeeDbService seeder = open(sessionFactories, services, plain);
+            Random random = new Random(42);
+            for (int i = 0; i < size; i++)
+                ids.add(seeder.add(employee("seed", i == 0 ? null : ids.get(random.nextInt(ids.size())))));
+
+            long start = System.nanoTime();
+            long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+            long end = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+            AtomicLong ops = new AtomicLong();
+            ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                EmployeeDbService db = open(sessionFactories, services, plain);
+                Random threadRandom = new Random(t);
+                futures.add(workers.submit(() -> {
+                    long[] own = new long[1 << 16];
+                    int count = 0;
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        long id = ids.get(threadRandom.nextInt(ids.size()));
+                        if (threadRandom.nextDouble() < addShare)
+                            ids.add(db.add(employee("add", id)));
+                        else {
+                            EmployeeEntity e = db.get(id).clone();
+                            e.setFirstName("renamed" + threadRandom.nextInt(1000));
+                            db.modify(e);
+                        }
+
+                        long done = System.nanoTime();
+                        if (now >= measureFrom) {
+                            ops.incrementAndGet();
+                            own[count++] = done - now;
+                            if (count == own.length) {
+                                latencies.add(own);
+                                own = new long[own.length];
+                                count = 0;
+                            }
+                        }
+                    }
+                    latencies.add(Arrays.copyOf(own, count));
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            return new Result(ops.get() / (double) duration,
+                    all.length == 0 ? 0 : all[all.length / 2] / 1e6,
+                    all.length == 0 ? 0 : all[(int) (all.length * 0.99)] / 1e6);
+        } finally {
+            workers.shutdownNow();
+            for (EmployeeDbService service : services)
+                service.close();
+            sessionFactories.forEach(SessionFactory::close);
+            dataSources.forEach(HikariDataSource::close);
+            try (var files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    // no sharding for one plain database, as the application runs without employee.shards.urls
+    private static EmployeeDbService open(List<SessionFactory> sessionFactories, List<EmployeeDbService> services,
+                                          boolean plain) {
+        List<EmployeeDbServiceImpl> shards = sessionFactories.stream()
+                .map(sessionFactory -> new EmployeeDbServiceImpl(sessionFactory.openSession()))
+                .toList();
+        EmployeeDbService out = shards.size() == 1 && plain ? shards.get(0) : new ShardedEmployeeDbService(shards);
+        services.add(out);
+        return out;
+    }
+
+    private static EmployeeEntity employee(String name, Long supervisor) {
+        EmployeeEntity e = new EmployeeEntity();
+        e.setFirstName(name);
+        e.setLastName(name);
+        e.setPosition("Engineer");
+        e.setSupervisor(supervisor);
+        return e;
+    }
+}
@@ -0,0 +1,201 @@
+package com.itgnostic.test4sandbox.load;
+
+import com.itgnostic.test4sandbox.db.dao.impl.EmployeeDbServiceImpl;
+import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import com.itgnostic.test4sandbox.db.shard.EmployeeShards;
+import com.itgnostic.test4sandbox.db.snapshot.EmployeeSnapshotService;
+import com.itgnostic.test4sandbox.utils.HibernateUtils;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.SessionFactory;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * H2 settings of the prod profile (application-prod.yml) against each other: writes and reads on a file
+ * database of a synthetic org, then the close with its compaction, then a restart on the compacted file,
+ * no web layer:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) com.itgnostic.test4sandbox.load.StorageBenchmark
+ * </pre>
+ * Options (--name=value):
+ * <ul>
+ * <li>configs - CACHE_SIZE (KB) : WRITE_DELAY (ms) : MAX_COMPACT_TIME (ms), one changed at a time around the
+ * defaults of the profile: 65536:1000:2000,16384:1000:2000,262144:1000:2000,65536:0:2000,65536:5000:2000,
+ * 65536:1000:0,65536:1000:10000</li>
+ * <li>size - employees of the synthetic org, 100000</li>
+ * <li>threads - workers, each with a session of its own, 8</li>
+ * <li>warmup, duration - seconds, 5 and 20</li>
+ * <li>read-share, add-share - reads by id and adds among the operations, the rest are renames, 0.5 and 0.25</li>
+ * <li>restart-reads - reads by random id right after the restart, 1000</li>
+ * <li>rounds - runs of all configs one after another, 2: the first round also warms up the JVM, the configs
+ * run first in it come out slower</li>
+ * </ul>
+ * Printed per config: operations per second and their p99, time of the close, file size before and after
+ * it, time from the restart to the first answer and of the reads after it.
+ */
+public class StorageBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        int size = Integer.parseInt(options.getOrDefault("size", "100000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        long warmup = Long.parseLong(options.getOrDefault("warmup", "5"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "20"));
+        double readShare = Double.parseDouble(options.getOrDefault("read-share", "0.5"));
+        double addShare = Double.parseDouble(options.getOrDefault("add-share", "0.25"));
+        int restartReads = Integer.parseInt(options.getOrDefault("restart-reads", "1000"));
+        int rounds = Integer.parseInt(options.getOrDefault("rounds", "2"));
+        String configs = options.getOrDefault("configs", "65536:1000:2000,16384:1000:2000,262144:1000:2000,"
+                + "65536:0:2000,65536:5000:2000,65536:1000:0,65536:1000:10000");
+
+        System.out.printf("%d CPUs, %d threads, %d employees, %.0f%% reads, %.0f%% adds%n",
+                Runtime.getRuntime().availableProcessors(), threads, size, readShare * 100, addShare * 100);
+        System.out.printf("%5s %-18s %8s %8s %9s %9s %9s %10s %11s%n",
+                "round", "cache:delay:compact", "ops/s", "p99 ms", "close ms", "MB before", "MB after", "restart ms", "reads ms");
+
+        for (int round = 1; round <= rounds; round++) {
+            for (String config : configs.split(",")) {
+                String[] values = config.trim().split(":");
+                String settings = ";CACHE_SIZE=%s;WRITE_DELAY=%s;MAX_COMPACT_TIME=%s".formatted(values[0], values[1], values[2]);
+                Result r = run(settings, size, threads, warmup, duration, readShare, addShare, restartReads);
+                System.out.printf("%5d %-18s %8.0f %8.2f %9d %9.1f %9.1f %10d %11d%n", round, config.trim(), r.opsPerSecond,
+                        r.p99, r.closeMillis, r.bytesBefore / 1e6, r.bytesAfter / 1e6, r.restartMillis, r.readsMillis);
+            }
+        }
+    }
+
+    private record Result(double opsPerSecond, double p99, long closeMillis, long bytesBefore, long bytesAfter,
+                          long restartMillis, long readsMillis) {
+    }
+
+    private static Result run(String settings, int size, int threads, long warmup, long duration,
+                              double readShare, double addShare, int restartReads) throws Exception {
+        Path dir = Files.createTempDirectory("storage-benchmark");
+        Path file = dir.resolve("employees.mv.db");
+        String url = "jdbc:h2:file:" + dir.resolve("employees").toAbsolutePath() + settings;
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+
+        try {
+            HikariDataSource dataSource = dataSource(url, threads + 2);
+            SessionFactory sessionFactory = HibernateUtils.buildSessionFactory(dataSource,
+                    Map.of("hibernate.show_sql", "false", "hibernate.hbm2ddl.auto", "create"));
+            EmployeeShards shards = new EmployeeShards(sessionFactory, new StandardEnvironment(), new String[0], "sa", "", 1);
+            new EmployeeSnapshotService(sessionFactory, shards, false, dir.resolve("unused").toString(),
+                    0, 12, 8, 0.3, 42).generate(size, 42);
+
+            long start = System.nanoTime();
+            long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+            long end = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+            AtomicLong ops = new AtomicLong();
+            ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+            List<EmployeeDbServiceImpl> services = new ArrayList<>();
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                EmployeeDbServiceImpl db = new EmployeeDbServiceImpl(sessionFactory.openSession());
+                services.add(db);
+                Random random = new Random(t);
+                futures.add(workers.submit(() -> {
+                    long[] own = new long[1 << 16];
+                    int count = 0;
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        long id = 1 + random.nextInt(size);
+                        double op = random.nextDouble();
+                        if (op < readShare)
+                            db.getView(id);
+                        else if (op < readShare + addShare)
+                            db.add(employee(id));
+                        else {
+                            EmployeeEntity e = db.get(id).clone();
+                            e.setFirstName("renamed" + random.nextInt(1000));
+                            db.modify(e);
+                        }
+
+                        long done = System.nanoTime();
+                        if (now >= measureFrom) {
+                            ops.incrementAndGet();
+                            own[count++] = done - now;
+                            if (count == own.length) {
+                                latencies.add(own);
+                                own = new long[own.length];
+                                count = 0;
+                            }
+                        }
+                    }
+                    latencies.add(Arrays.copyOf(own, count));
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+
+            // the database closes with its last connection, compacting for up to MAX_COMPACT_TIME
+            services.forEach(EmployeeDbServiceImpl::close);
+            shards.shutdown();
+            sessionFactory.close();
+            long bytesBefore = Files.size(file);
+            long closeStart = System.nanoTime();
+            dataSource.close();
+            long closeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - closeStart);
+            long bytesAfter = Files.size(file);
+
+            long restartStart = System.nanoTime();
+            long restartMillis;
+            long readsMillis;
+            try (HikariDataSource restarted = dataSource(url, 2);
+                 SessionFactory restartedFactory = HibernateUtils.buildSessionFactory(restarted,
+                         Map.of("hibernate.show_sql", "false", "hibernate.hbm2ddl.auto", "none"));
+                 EmployeeDbServiceImpl db = new EmployeeDbServiceImpl(restartedFactory.openSession())) {
+                db.getTotal();
+                restartMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - restartStart);
+
+                Random random = new Random(42);
+                long readsStart = System.nanoTime();
+                for (int i = 0; i < restartReads; i++)
+                    db.getView(1 + random.nextInt(size));
+                readsMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - readsStart);
+            }
+
+            return new Result(ops.get() / (double) duration,
+                    all.length == 0 ? 0 : all[(int) (all.length * 0.99)] / 1e6,
+                    closeMillis, bytesBefore, bytesAfter, restartMillis, readsMillis);
+        } finally {
+            workers.shutdownNow();
+            try (var files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static HikariDataSource dataSource(String url, int poolSize) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername("sa");
+        config.setMaximumPoolSize(poolSize);
+        return new HikariDataSource(config);
+    }
+
+    private static EmployeeEntity employee(Long supervisor) {
+        EmployeeEntity e = new EmployeeEntity();
+        e.setFirstName("add");
+        e.setLastName("add");
+        e.setPosition("Engineer");
+        e.setSupervisor(supervisor);
+        return e;
+    }
+}
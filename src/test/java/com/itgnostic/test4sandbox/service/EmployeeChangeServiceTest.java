@@ -0,0 +1,99 @@
+package com.itgnostic.test4sandbox.service;
+
+import com.itgnostic.test4sandbox.db.entity.EmployeeChangeEntity;
+import com.itgnostic.test4sandbox.db.entity.EmployeeChangeEntity.Operation;
+import com.itgnostic.test4sandbox.utils.HibernateUtils;
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EmployeeChangeServiceTest {
+    private SessionFactory sessionFactory;
+    private EmployeeChangeService changeService;
+
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:employee-changes;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        sessionFactory = HibernateUtils.buildSessionFactory(dataSource, Map.of("hibernate.show_sql", "false", "hibernate.hbm2ddl.auto", "create-drop"));
+        changeService = new EmployeeChangeService(sessionFactory);
+    }
+
+    @After
+    public void tearDown() {
+        changeService.shutdown();
+        sessionFactory.close();
+    }
+
+    @Test
+    public void lateCommitTest() {
+        long first = change(1L);
+        assertEquals(first, changeService.getLastSeq());
+        EmployeeChangeService.Cursor cursor = changeService.cursorAtEnd();
+
+        // seq N is taken, N+1 commits first
+        try (Session late = sessionFactory.openSession()) {
+            late.beginTransaction();
+            EmployeeChangeEntity n = new EmployeeChangeEntity(2L, Operation.MODIFY, List.of("firstName"));
+            late.persist(n);
+            late.flush();
+            long next = change(3L);
+            assertEquals(n.getSeq() + 1, next);
+
+            // since= readers don't go past N, the cursor goes on and waits for it
+            assertEquals(List.of(), changeService.getChanges(first, 10));
+            assertEquals(first, changeService.getLastSeq());
+            assertEquals(List.of(next), seqs(changeService.readNext(cursor, 10)));
+            assertTrue(cursor.hasGaps());
+            assertEquals(first, cursor.getWatermark());
+
+            late.getTransaction().commit();
+
+            assertEquals(List.of(n.getSeq(), next), seqs(changeService.getChanges(first, 10)));
+            assertEquals(next, changeService.getLastSeq());
+            assertEquals(List.of(n.getSeq()), seqs(changeService.readLate(cursor)));
+            assertFalse(cursor.hasGaps());
+            assertEquals(next, cursor.getWatermark());
+        }
+    }
+
+    @Test
+    public void cursorTest() {
+        EmployeeChangeService.Cursor cursor = new EmployeeChangeService.Cursor(10);
+        assertTrue(cursor.read(13, 0));
+        assertEquals(10, cursor.getWatermark());
+        assertFalse(cursor.read(13, 0));
+
+        assertTrue(cursor.read(12, 0));
+        assertEquals(10, cursor.getWatermark());
+        cursor.expire(EmployeeChangeService.GAP_TIMEOUT_MS + 1);
+        assertEquals(13, cursor.getWatermark());
+
+        // a jump is not a gap
+        assertTrue(cursor.read(13 + EmployeeChangeService.MAX_GAP + 1, 0));
+        assertFalse(cursor.hasGaps());
+    }
+
+    private long change(Long employeeId) {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            EmployeeChangeEntity change = new EmployeeChangeEntity(employeeId, Operation.ADD, null);
+            session.persist(change);
+            session.getTransaction().commit();
+            return change.getSeq();
+        }
+    }
+
+    private static List<Long> seqs(List<EmployeeChangeEntity> changes) {
+        return changes.stream().map(EmployeeChangeEntity::getSeq).toList();
+    }
+}
@@ -0,0 +1,99 @@
+package com.itgnostic.test4sandbox.trace;
+
+import com.itgnostic.test4sandbox.db.dao.EmployeeDbService;
+import com.itgnostic.test4sandbox.db.dao.impl.EmployeeDbServiceImpl;
+import com.itgnostic.test4sandbox.db.dao.impl.TracingEmployeeDbService;
+import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import com.itgnostic.test4sandbox.utils.HibernateUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EmployeeEventsTest {
+    private SessionFactory sessionFactory;
+    private EmployeeDbService db;
+
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:employee-events;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        sessionFactory = HibernateUtils.buildSessionFactory(dataSource, Map.of("hibernate.show_sql", "false", "hibernate.hbm2ddl.auto", "create-drop"));
+
+        EmployeeTracing tracing = new EmployeeTracing(new SimpleMeterRegistry(), false, 0, "spans.jsonl", 0, 1);
+        db = new TracingEmployeeDbService(new EmployeeDbServiceImpl(sessionFactory.openSession()), tracing);
+    }
+
+    @After
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void eventsTest() throws Exception {
+        long a = add("A");
+        add("B");
+
+        Path file = Files.createTempFile("employee", ".jfr");
+        try (Recording recording = new Recording(EmployeeFlightRecorder.getSettings())) {
+            recording.start();
+            db.getList(List.of(a, a + 1, 100L));
+            db.clear();
+            db.get(a);
+            db.get(a);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+
+        RecordedEvent list = events.stream().filter(e -> e.getEventType().getName().equals("com.itgnostic.employee.Query")
+                && e.getString("kind").equals("getList")).findFirst().orElseThrow();
+        assertEquals(2, list.getLong("rows"));
+        assertEquals(3, events.stream().filter(e -> e.getEventType().getName().equals("com.itgnostic.employee.Query")).count());
+
+        // the first get after clear() reads the database, the second one the session
+        List<Boolean> hits = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.itgnostic.employee.CacheLookup"))
+                .map(e -> e.getBoolean("hit"))
+                .toList();
+        assertEquals(List.of(false, true), hits);
+    }
+
+    @Test
+    public void disabledTest() throws Exception {
+        Path file = Files.createTempFile("employee", ".jfr");
+        // employee events are not in the JDK profiles
+        try (Recording recording = new Recording(jdk.jfr.Configuration.getConfiguration("default"))) {
+            recording.start();
+            db.get(add("A"));
+            recording.stop();
+            recording.dump(file);
+        }
+
+        assertTrue(RecordingFile.readAllEvents(file).stream()
+                .noneMatch(e -> e.getEventType().getName().startsWith("com.itgnostic.employee.")));
+        Files.delete(file);
+    }
+
+    private long add(String name) {
+        EmployeeEntity e = new EmployeeEntity();
+        e.setFirstName(name);
+        e.setLastName(name);
+        return db.add(e);
+    }
+}
@@ -0,0 +1,90 @@
+package com.itgnostic.test4sandbox.trace;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EmployeeTracingTest {
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("tracing");
+        file = dir.resolve("spans.jsonl");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void spansTest() throws IOException {
+        EmployeeTracing tracing = tracing(1);
+
+        Observation root = tracing.startTrace("employee.http", null);
+        assertFalse(root.isNoop());
+        try (Observation.Scope ignored = root.openScope()) {
+            assertEquals(List.of(1, 2, 3), tracing.observe("employee.service", "getList",
+                    () -> tracing.observe("employee.db", "getList", () -> List.of(1, 2, 3), List::size), List::size));
+        }
+        root.contextualName("GET /rest/api/employee/list").stop();
+        tracing.shutdown();
+
+        Map<String, JSONObject> spans = Files.readAllLines(file).stream()
+                .map(JSONObject::new)
+                .collect(Collectors.toMap(span -> span.getString("scope"), Function.identity()));
+        assertEquals(3, spans.size());
+
+        JSONObject http = spans.get("employee.http");
+        JSONObject service = spans.get("employee.service");
+        JSONObject db = spans.get("employee.db");
+        assertEquals("GET /rest/api/employee/list", http.getString("name"));
+        assertEquals("SERVER", http.getString("kind"));
+        assertFalse(http.has("parentSpanId"));
+        assertEquals(http.getString("spanId"), service.getString("parentSpanId"));
+        assertEquals(service.getString("spanId"), db.getString("parentSpanId"));
+        assertEquals(http.getString("traceId"), db.getString("traceId"));
+        assertEquals("3", db.getJSONObject("attributes").getString("rows"));
+        assertTrue(http.getLong("endTimeUnixNano") >= db.getLong("endTimeUnixNano"));
+        assertEquals("00-%s-%s-01".formatted(http.getString("traceId"), http.getString("spanId")), EmployeeTracing.traceparent(root));
+    }
+
+    @Test
+    public void samplingTest() {
+        EmployeeTracing tracing = tracing(0);
+
+        Observation root = tracing.startTrace("employee.http", null);
+        assertTrue(root.isNoop());
+        // not in a sampled request: just a call
+        assertEquals("x", tracing.observe("employee.db", "get", () -> "x"));
+        assertNull(EmployeeTracing.traceparent(root));
+
+        // the caller's sampling decision wins
+        String traceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+        Observation continued = tracing.startTrace("employee.http", "00-%s-00f067aa0ba902b7-01".formatted(traceId));
+        assertTrue(EmployeeTracing.traceparent(continued).startsWith("00-" + traceId + "-"));
+        continued.stop();
+        assertTrue(tracing.startTrace("employee.http", "00-%s-00f067aa0ba902b7-00".formatted(traceId)).isNoop());
+        tracing.shutdown();
+    }
+
+    private EmployeeTracing tracing(double probability) {
+        return new EmployeeTracing(new SimpleMeterRegistry(), true, probability, file.toString(), 0, 100);
+    }
+}
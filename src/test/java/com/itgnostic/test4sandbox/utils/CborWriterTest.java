@@ -0,0 +1,76 @@
+package com.itgnostic.test4sandbox.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HexFormat;
+
+import static org.junit.Assert.*;
+
+// expected bytes are examples from RFC 8949, appendix A
+public class CborWriterTest {
+
+    @Test
+    public void integersTest() throws IOException {
+        assertEquals("00", hex(w -> w.write(0)));
+        assertEquals("17", hex(w -> w.write(23)));
+        assertEquals("1818", hex(w -> w.write(24)));
+        assertEquals("1864", hex(w -> w.write(100)));
+        assertEquals("1903e8", hex(w -> w.write(1000)));
+        assertEquals("1a000f4240", hex(w -> w.write(1000000)));
+        assertEquals("1b000000e8d4a51000", hex(w -> w.write(1000000000000L)));
+        assertEquals("20", hex(w -> w.write(-1)));
+        assertEquals("3863", hex(w -> w.write(-100)));
+        assertEquals("3903e7", hex(w -> w.write(-1000)));
+        assertEquals("f6", hex(w -> w.write((Long) null)));
+    }
+
+    @Test
+    public void stringsTest() throws IOException {
+        assertEquals("60", hex(w -> w.write("")));
+        assertEquals("6161", hex(w -> w.write("a")));
+        assertEquals("6449455446", hex(w -> w.write("IETF")));
+        assertEquals("62c3bc", hex(w -> w.write("ü")));
+        assertEquals("63e6b0b4", hex(w -> w.write("水")));
+        assertEquals("f6", hex(w -> w.write((String) null)));
+    }
+
+    @Test
+    public void containersTest() throws IOException {
+        assertEquals("80", hex(w -> w.startArray(0)));
+        assertEquals("83010203", hex(w -> w.startArray(3).write(1).write(2).write(3)));
+        assertEquals("a201020304", hex(w -> w.startMap(2).write(1).write(2).write(3).write(4)));
+        assertEquals("9f018202039f0405ffff", hex(w -> w.startArray().write(1).startArray(2).write(2).write(3)
+                .startArray().write(4).write(5).end().end()));
+        // {_ "Fun": null, "Amt": -2}, the RFC example has true instead of null
+        assertEquals("bf6346756ef663416d7421ff", hex(w -> w.startMap().write("Fun").writeNull()
+                .write("Amt").write(-2).end()));
+    }
+
+    @Test
+    public void bufferOverflowTest() throws IOException {
+        String longText = "x".repeat(100);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CborWriter writer = new CborWriter(out, 16);
+        writer.startArray(3).write(longText).write(1000000).write("abc");
+        writer.flush();
+
+        byte[] bytes = out.toByteArray();
+        assertEquals(1 + 2 + 100 + 5 + 4, bytes.length);
+        assertEquals("83", HexFormat.of().formatHex(bytes, 0, 1));
+        assertEquals("1a000f424063616263", HexFormat.of().formatHex(bytes, 103, bytes.length));
+    }
+
+    private interface Writes {
+        void write(CborWriter writer) throws IOException;
+    }
+
+    private static String hex(Writes writes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CborWriter writer = new CborWriter(out);
+        writes.write(writer);
+        writer.flush();
+        return HexFormat.of().formatHex(out.toByteArray());
+    }
+}
@@ -0,0 +1,37 @@
+package com.itgnostic.test4sandbox.utils;
+
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+
+public class CsvUtilsTest {
+
+    @Test
+    public void escapeTest() {
+        assertEquals("", CsvUtils.escape(null));
+        assertEquals("Engineer", CsvUtils.escape("Engineer"));
+        assertEquals("\"Sales, EMEA\"", CsvUtils.escape("Sales, EMEA"));
+        assertEquals("\"The \"\"Boss\"\"\"", CsvUtils.escape("The \"Boss\""));
+        assertEquals("\"two\nlines\"", CsvUtils.escape("two\nlines"));
+    }
+
+    @Test
+    public void writeEmployeeTest() throws IOException {
+        DateTimeFormatter dt = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneId.systemDefault());
+        StringWriter out = new StringWriter();
+
+        CsvUtils.writeEmployee(out, new EmployeeView(2, "Ann", "Lee", "Sales, EMEA", 1L, "Bob", "Ray", new Date(0)), dt);
+        CsvUtils.writeEmployee(out, new EmployeeView(1, "Bob", "Ray", "CEO", null, null, null, new Date(0)), dt);
+
+        String created = dt.format(new Date(0).toInstant());
+        assertEquals("2,Ann,Lee,Ann Lee (2),\"Sales, EMEA\",1,Bob Ray (1)," + created + "\r\n"
+                + "1,Bob,Ray,Bob Ray (1),CEO,,," + created + "\r\n", out.toString());
+    }
+}
@@ -1,6 +1,8 @@
 package com.itgnostic.test4sandbox.utils;
 
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
 import com.itgnostic.test4sandbox.db.entity.EmployeeEntity;
+import com.itgnostic.test4sandbox.web.api.rest.model.RespEmployeeModel;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -30,7 +32,7 @@ public class EmployeeUtilsTest {
 
         // Actually may be not... but time is soooo clooose ^^
         assertEquals(now.getTime() == e.getCreated().getTime(),
-                DT.format(now).equals(EmployeeUtils.getCreatedDate(e)));
+                DT.format(now.toInstant()).equals(EmployeeUtils.getCreatedDate(e)));
     }
 
     @Test
@@ -44,6 +46,24 @@ public class EmployeeUtilsTest {
                 EMPLOYEE.getSupervisor(), null));
     }
 
+    @Test
+    public void viewToRespEmployeeModelTest() {
+        Date created = new Date();
+        RespEmployeeModel withSupervisor = EmployeeUtils.toRespEmployeeModel(
+                new EmployeeView(5, "Thomas", "Edison", "Inventor", 2L, "Nikola", "Tesla", created));
+
+        assertEquals("5", withSupervisor.getId());
+        assertEquals("Thomas Edison (5)", withSupervisor.getFullName());
+        assertEquals("2", withSupervisor.getSupervisorId());
+        assertEquals("Nikola Tesla (2)", withSupervisor.getSupervisorFullName());
+        assertEquals(DT.format(created.toInstant()), withSupervisor.getCreated());
 
+        RespEmployeeModel top = EmployeeUtils.toRespEmployeeModel(
+                new EmployeeView(1, "Nikola", "Tesla", null, null, null, null, created));
+        assertEquals("", top.getSupervisorId());
+        assertEquals("", top.getSupervisorFullName());
 
+        // not shown, as entities without required fields
+        assertNull(EmployeeUtils.toRespEmployeeModel(new EmployeeView(3, " ", "Tesla", null, null, null, null, created)).getId());
+    }
 }
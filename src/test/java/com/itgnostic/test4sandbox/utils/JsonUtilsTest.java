@@ -1,14 +1,24 @@
 package com.itgnostic.test4sandbox.utils;
 
+import com.itgnostic.test4sandbox.db.dao.EmployeeView;
+import com.itgnostic.test4sandbox.service.EmployeeStatsService.EmployeeStats;
+import com.itgnostic.test4sandbox.service.EmployeeStatsService.OrgStats;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 
@@ -33,4 +43,43 @@ public class JsonUtilsTest {
 
         assertTrue(jsonObject.similar(JsonUtils.mapToJson(MAP)));
     }
+
+    @Test
+    public void orgStatsToJsonTest() {
+        OrgStats stats = new OrgStats(4, 1, 2, 0, 2, 1.5,
+                new TreeMap<>(Map.of(0, 1L, 1, 2L, 2, 1L)), new TreeMap<>(Map.of(0, 2L, 1, 1L, 2, 1L)), 0);
+        JSONObject json = JsonUtils.orgStatsToJson(stats);
+
+        assertEquals(4, json.getLong("employees"));
+        assertEquals(2, json.getLong("managers"));
+        assertEquals(1.5, json.getDouble("avgSpan"), 0);
+        assertTrue(new JSONObject().put("0", 1).put("1", 2).put("2", 1).similar(json.getJSONObject("depth")));
+        assertTrue(new JSONObject().put("0", 2).put("1", 1).put("2", 1).similar(json.getJSONObject("span")));
+    }
+
+    @Test
+    public void employeeStatsToJsonTest() {
+        assertEquals(10, JsonUtils.employeeStatsToJson(new EmployeeStats(1, 2, 10L, 0)).getLong("total"));
+        // not reachable from a root
+        assertTrue(JsonUtils.employeeStatsToJson(new EmployeeStats(1, 0, null, null)).isNull("depth"));
+    }
+
+    @Test
+    public void writeEmployeeTest() throws IOException {
+        DateTimeFormatter dt = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneId.systemDefault());
+        StringWriter out = new StringWriter();
+        JsonUtils.writeEmployee(out, new EmployeeView(2, "Ann", "O\"Lee", "Engineer", 1L, "Bob", "Ray", new Date(0)), dt);
+
+        String line = out.toString();
+        assertTrue(line.endsWith("}\n"));
+        assertEquals(1, line.split("\n").length);
+
+        JSONObject json = new JSONObject(line);
+        assertEquals("2", json.getString("id"));
+        assertEquals("O\"Lee", json.getString("lastName"));
+        assertEquals("Ann O\"Lee (2)", json.getString("fullName"));
+        assertEquals("1", json.getString("supervisor"));
+        assertEquals("Bob Ray (1)", json.getString("supervisorFullName"));
+        assertEquals(dt.format(new Date(0).toInstant()), json.getString("created"));
+    }
 }
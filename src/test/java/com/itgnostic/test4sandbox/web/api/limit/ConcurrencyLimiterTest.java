@@ -0,0 +1,65 @@
+package com.itgnostic.test4sandbox.web.api.limit;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+    private static final long MS = 1_000_000L;
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void limitTest() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 2.0, MS, now::get);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+
+        limiter.release(-1);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void slowDownTest() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 4, 100, 2.0, MS, now::get);
+
+        // fast and busy: the limit grows
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 10; j++)
+                limiter.tryAcquire();
+            for (int j = 0; j < 10; j++)
+                limiter.release(5 * MS);
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 20);
+
+        // latency goes up: the limit drops, at most once per 100 ms
+        for (int i = 0; i < 50; i++) {
+            now.addAndGet(100 * MS);
+            limiter.tryAcquire();
+            limiter.release(50 * MS);
+        }
+        assertTrue(limiter.getLimit() < grown);
+        assertTrue(limiter.getLimit() >= 4);
+    }
+
+    @Test
+    public void fastRequestsNeverOverloadTest() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 4, 100, 2.0, 10 * MS, now::get);
+
+        limiter.tryAcquire();
+        limiter.release(MS / 10);
+        for (int i = 0; i < 50; i++) {
+            now.addAndGet(100 * MS);
+            limiter.tryAcquire();
+            limiter.release(MS);
+        }
+
+        assertEquals(20, limiter.getLimit());
+    }
+}
@@ -0,0 +1,54 @@
+package com.itgnostic.test4sandbox.web.api.limit;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong now = new AtomicLong(SECOND);
+
+    @Test
+    public void burstTest() {
+        TokenBucket bucket = new TokenBucket(10, 5, now::get);
+
+        for (int i = 0; i < 5; i++)
+            assertEquals(0, bucket.tryAcquire());
+
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > 0);
+        assertTrue(wait <= SECOND / 10);
+    }
+
+    @Test
+    public void refillTest() {
+        TokenBucket bucket = new TokenBucket(10, 5, now::get);
+        for (int i = 0; i < 5; i++)
+            bucket.tryAcquire();
+        assertNotEquals(0, bucket.tryAcquire());
+
+        now.addAndGet(SECOND / 10);
+        assertEquals(0, bucket.tryAcquire());
+        assertNotEquals(0, bucket.tryAcquire());
+
+        // a long pause refills up to the burst only
+        now.addAndGet(10 * SECOND);
+        for (int i = 0; i < 5; i++)
+            assertEquals(0, bucket.tryAcquire());
+        assertNotEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    public void slowRateTest() {
+        TokenBucket bucket = new TokenBucket(0.5, 1, now::get);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(2 * SECOND, bucket.tryAcquire());
+
+        now.addAndGet(2 * SECOND);
+        assertEquals(0, bucket.tryAcquire());
+    }
+}
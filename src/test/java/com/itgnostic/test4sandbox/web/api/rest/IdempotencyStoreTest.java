@@ -0,0 +1,88 @@
+package com.itgnostic.test4sandbox.web.api.rest;
+
+import com.itgnostic.test4sandbox.web.api.rest.model.ReqEmployeeModel;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class IdempotencyStoreTest {
+    private static final ReqEmployeeModel REQUEST = new ReqEmployeeModel(null, "John", "Doe", "Manager", null, null);
+
+    private final IdempotencyStore store = new IdempotencyStore(null, 100, 60_000, false);
+    private final AtomicInteger executed = new AtomicInteger();
+
+    @Test
+    public void replayTest() {
+        ResponseEntity<String> first = store.execute("k1", "POST /employee", REQUEST, this::execute);
+        ResponseEntity<String> retry = store.execute("k1", "POST /employee", REQUEST, this::execute);
+
+        assertEquals(1, executed.get());
+        assertEquals(first.getBody(), retry.getBody());
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertNull(first.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    @Test
+    public void noKeyTest() {
+        store.execute(null, "POST /employee", REQUEST, this::execute);
+        store.execute(" ", "POST /employee", REQUEST, this::execute);
+
+        assertEquals(2, executed.get());
+    }
+
+    @Test
+    public void otherRequestTest() {
+        store.execute("k1", "POST /employee", REQUEST, this::execute);
+        ResponseEntity<String> other = store.execute("k1", "POST /employee",
+                new ReqEmployeeModel(null, "Jane", "Doe", "Manager", null, null), this::execute);
+
+        assertEquals(1, executed.get());
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, other.getStatusCode());
+
+        // the same key for another endpoint is another request
+        store.execute("k1", "PUT /employee", REQUEST, this::execute);
+        assertEquals(2, executed.get());
+    }
+
+    @Test
+    public void serverErrorNotStoredTest() {
+        store.execute("k1", "POST /employee", REQUEST, () -> ResponseEntity.internalServerError().body("{}"));
+        store.execute("k1", "POST /employee", REQUEST, this::execute);
+
+        assertEquals(1, executed.get());
+    }
+
+    @Test
+    public void concurrentRetriesTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            Callable<String> retry = () -> {
+                start.await();
+                return store.execute("k1", "POST /employee", REQUEST, this::execute).getBody();
+            };
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                futures.add(executor.submit(retry));
+            start.countDown();
+
+            for (Future<String> future : futures)
+                assertEquals("{\"id\":\"1\"}", future.get(10, TimeUnit.SECONDS));
+            assertEquals(1, executed.get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ResponseEntity<String> execute() {
+        return ResponseEntity.ok("{\"id\":\"%d\"}".formatted(executed.incrementAndGet()));
+    }
+}